@@ -0,0 +1,22 @@
+/**
+ * A source of wall-clock time for the clock display. Implementations only
+ * report milliseconds since the epoch; turning that into hours, minutes and
+ * seconds is left to {@link TimeOfDay}, so that no implementation ever has to
+ * allocate to be read.
+ */
+public interface ClockSource {
+  /**
+   * Return the current time of this source
+   *
+   * @return milliseconds since 1970-01-01T00:00:00Z
+   */
+  long currentTimeMillis();
+
+  /**
+   * How fast this source runs, in its milliseconds per real millisecond: 1
+   * for one that follows real time, 0 for one that stands still
+   */
+  default double getRate() {
+    return 1;
+  }
+}
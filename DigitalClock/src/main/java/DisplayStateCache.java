@@ -0,0 +1,94 @@
+/**
+ * Remembers what the clock looked like on the previous frame. The lit segments
+ * are fully determined by the packed HHmmss time, so as long as the time does
+ * not change the segment mask and the draw list computed for it are reused as
+ * they are.
+ *
+ * The state consists of:
+ *
+ * <ul> <li>a 42-bit mask, in which bit 7*d+i is set if segment i of digit d
+ * (counting digits from the right) is lit</li> <li>a draw list: the indices
+ * 7*d+i of the lit segments, in increasing order</li> </ul>
+ *
+ * Hits (frames that reused the state) and misses (frames that had to rebuild
+ * it) are counted, to see how much redundant work is avoided.
+ */
+public class DisplayStateCache {
+  private int digits;
+  private int packedTime;
+  private long segmentMask;
+  private int[] drawList;
+  private int drawCount;
+  private long hits, misses;
+
+  public DisplayStateCache(int digits) {
+    if (digits * SegmentInfo.SEGMENTS > Long.SIZE)
+      throw new IllegalArgumentException("Too many digits for a segment mask: " + digits);
+    this.digits = digits;
+    this.packedTime = -1;
+    this.drawList = new int[digits * SegmentInfo.SEGMENTS];
+  }
+
+  /**
+   * Bring the state up to date for the given time
+   *
+   * @param packedTime the time as decimal digits, e.g. HHmmss
+   * @return true if the state changed since the last call, false if it was
+   * reused
+   */
+  public boolean update(int packedTime) {
+    if (packedTime == this.packedTime) {
+      hits++;
+      return false;
+    }
+    misses++;
+    this.packedTime = packedTime;
+
+    segmentMask = 0;
+    drawCount = 0;
+    int timeNow = packedTime;
+    for (int d = 0; d < digits; d++) {
+      long digitMask = Encoder.sevenSegmentMask(timeNow % 10);
+      segmentMask |= digitMask << (d * SegmentInfo.SEGMENTS);
+      timeNow = timeNow / 10;
+    }
+
+    //take the lowest set bit, then clear it
+    for (long mask = segmentMask; mask != 0; mask &= mask - 1) {
+      drawList[drawCount++] = Long.numberOfTrailingZeros(mask);
+    }
+    return true;
+  }
+
+  /**
+   * Forget the current state, so that the next update rebuilds it. Needed when
+   * whatever was derived from it (e.g. GPU buffers) has been lost.
+   */
+  public void invalidate() {
+    packedTime = -1;
+  }
+
+  public long getSegmentMask() {
+    return segmentMask;
+  }
+
+  /**
+   * The indices of the lit segments. Only the first getDrawCount() entries are
+   * valid.
+   */
+  public int[] getDrawList() {
+    return drawList;
+  }
+
+  public int getDrawCount() {
+    return drawCount;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+}
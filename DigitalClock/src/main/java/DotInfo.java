@@ -4,10 +4,11 @@ import com.jogamp.opengl.GLAutoDrawable;
 import org.joml.Matrix4f;
 import org.joml.Vector4f;
 import com.jogamp.opengl.GL;
+import util.GLStateCache;
 import util.IVertexData;
 import util.ObjectInstance;
 import util.PolygonMesh;
-import util.ShaderLocationsVault;
+import util.UniformHandle;
 
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -21,13 +22,13 @@ public class DotInfo {
     private Map<String, String> shaderToVertexAttribute = new HashMap<String, String>();
 
 
-    private Matrix4f modelview = new Matrix4f();
-    private FloatBuffer fb16 = Buffers.newDirectFloatBuffer(16);
+    //modelview of every dot of every colon, 16 floats each, built once by buildTransformTable()
+    private FloatBuffer transformTable;
 
     //radius of the dot
     private float radius = 25;
     private int SLICES = 50;
-    private  int noDots = 2;
+    public static final int DOTS = 2;
 
     //translation of the dots into a colon formation
     private static int[][] translationTable = {
@@ -43,6 +44,28 @@ public class DotInfo {
         return shaderToVertexAttribute;
     }
 
+    public FloatBuffer getTransformTable() {
+        return transformTable;
+    }
+
+    // compute the modelview of the 2 dots of a colon at each of the given horizontal offsets,
+    // called once at startup. The dot i of colon c is at matrix 2*c+i of the table
+    public void buildTransformTable(int[] colonOffsets) {
+        transformTable = Buffers.newDirectFloatBuffer(colonOffsets.length * DOTS * 16);
+        Matrix4f modelview = new Matrix4f();
+
+        for (int c = 0; c < colonOffsets.length; c++) {
+            for (int i = 0; i < DOTS; i++) {
+                //scale then translate
+                modelview.identity()
+                        .translate(translationTable[i][0]+colonOffsets[c],translationTable[i][1],translationTable[i][2])
+                        .scale(radius,radius,radius);
+
+                modelview.get(16 * (c * DOTS + i), transformTable);
+            }
+        }
+    }
+
     // drawing of the circle dot, called in method init()
     public DotInfo() {
 
@@ -102,25 +125,20 @@ public class DotInfo {
 
 
 
-    // draw 7 polygons into a "8" formation, called in method draw()
-    public void DotDrawable(GL3 gl, GLAutoDrawable gla, ObjectInstance obj, int offset, Matrix4f proj, ShaderLocationsVault shaderLocations){
-
-        gl.glUniformMatrix4fv(
-                shaderLocations.getLocation("projection"),
-                1, false, proj.get(fb16));
-
-        for (int i = 0; i < noDots; i++) {
+    // draw the dots of the colon at position colon of the transform table, called in method draw()
+    // the projection comes from the FrameConstants uniform block
+    // the modelview goes through the state cache, which skips it if it is already set
+    public void DotDrawable(GL3 gl, GLAutoDrawable gla, ObjectInstance obj, int colon, UniformHandle modelview, GLStateCache stateCache){
 
-            //scale then translate
-            modelview = new Matrix4f().translate(translationTable[i][0]+offset,translationTable[i][1],translationTable[i][2])
-                    .scale(radius,radius,radius);
+        for (int i = 0; i < DOTS; i++) {
 
-            gl.glUniformMatrix4fv(
-                    shaderLocations.getLocation("modelview"),
-                    1, false, modelview.get(fb16));
+            //upload the precomputed modelview straight from the table
+            transformTable.position(16 * (colon * DOTS + i));
+            stateCache.uniformMatrix4fv(gl, modelview.getLocation(), transformTable);
 
             obj.draw(gla);
         }
+        transformTable.position(0);
 
 
     }
@@ -1,19 +1,47 @@
 public class Encoder {
-    //encoder to map each segment to be on/off
-    private static final byte[] lookupEncoder = {0x7e, 0x30, 0x6d, 0x79, 0x33, 0x5b, 0x5f, 0x70, 0x7f, 0x7b};
-    private Boolean[] sevenSegmentEncoder = new Boolean[7];
-    public Boolean[] getSevenSegmentEncoder() {
-        return sevenSegmentEncoder;
-    }
-
-    public Encoder(int digit) {
-        // determine the segment from a-g to be on or off
-        sevenSegmentEncoder[0] = ((lookupEncoder[digit] & 0b1000000) != 0);
-        sevenSegmentEncoder[1] = ((lookupEncoder[digit] & 0b100000) != 0);
-        sevenSegmentEncoder[2] = ((lookupEncoder[digit] & 0b10000) != 0);
-        sevenSegmentEncoder[3] = ((lookupEncoder[digit] & 0b1000) != 0);
-        sevenSegmentEncoder[4] = ((lookupEncoder[digit] & 0b100) != 0);
-        sevenSegmentEncoder[5] = ((lookupEncoder[digit] & 0b10) != 0);
-        sevenSegmentEncoder[6] = ((lookupEncoder[digit] & 0b1) != 0);
-    }
-}
\ No newline at end of file
+    private static final char[] hexDigits = "0123456789ABCDEF".toCharArray();
+
+    //encoder to map each segment to be on/off, for the values 0-15
+    //segment a is bit 0, b is bit 1, ..., g is bit 6
+    private static final byte[] lookupEncoder = new byte[hexDigits.length];
+
+    static {
+        for (int i = 0; i < hexDigits.length; i++) {
+            lookupEncoder[i] = (byte) GlyphTable.SEVEN_SEGMENT.getMask(hexDigits[i]);
+        }
+    }
+
+    private GlyphTable glyphs;
+
+    public Encoder() {
+        this(GlyphTable.SEVEN_SEGMENT);
+    }
+
+    public Encoder(GlyphTable glyphs) {
+        this.glyphs = glyphs;
+    }
+
+    // the seven segment mask of a digit 0-9, or of a hex digit A-F given as 10-15
+    public static byte sevenSegmentMask(int digit) {
+        return lookupEncoder[digit];
+    }
+
+    // whether the given segment (0 for a, 1 for b, ...) is on in the mask
+    public static boolean isLit(int mask, int segment) {
+        return (mask & (1 << segment)) != 0;
+    }
+
+    public GlyphTable getGlyphTable() {
+        return glyphs;
+    }
+
+    // the mask of a character in this encoder's glyph table, 0 if it has no glyph for it
+    public int encode(char c) {
+        return glyphs.getMask(c);
+    }
+
+    // the mask of a value 0-15 shown as a (hex) digit in this encoder's glyph table
+    public int encodeDigit(int value) {
+        return glyphs.getMask(hexDigits[value]);
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * A clock source that always reports the same instant, until it is told
+ * otherwise. Useful for screenshots and for checking the display of a
+ * particular time.
+ */
+public class FixedClockSource implements ClockSource {
+  private long millis;
+
+  public FixedClockSource(long millis) {
+    this.millis = millis;
+  }
+
+  public void setTimeMillis(long millis) {
+    this.millis = millis;
+  }
+
+  @Override
+  public double getRate() {
+    return 0;
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return millis;
+  }
+}
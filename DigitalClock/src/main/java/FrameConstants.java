@@ -0,0 +1,97 @@
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL3;
+import org.joml.Matrix4f;
+import util.UniformBuffer;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The values that are the same for everything drawn in a frame, kept in the
+ * uniform block FrameConstants of the shaders:
+ *
+ * <pre>
+ * layout(std140) uniform FrameConstants
+ * {
+ *     mat4 projection;
+ *     vec4 viewport; //width and height of the window in pixels, then 0, 0
+ *     vec4 color; //multiplies the color of every vertex
+ *     float time; //the displayed time, in seconds since midnight
+ * };
+ * </pre>
+ *
+ * The setters only change a CPU-side copy; upload() sends it to the GPU, and
+ * only if something changed since the last upload. In practice that happens on
+ * a reshape and when the displayed time changes.
+ */
+public class FrameConstants {
+  public static final String BLOCK_NAME = "FrameConstants";
+  public static final int BINDING_POINT = 0;
+
+  //std140 offsets, in floats
+  private static final int PROJECTION = 0;
+  private static final int VIEWPORT = 16;
+  private static final int COLOR = 20;
+  private static final int TIME = 24;
+  private static final int SIZE = 28; //the block size is rounded up to a multiple of a vec4
+
+  private FloatBuffer data = Buffers.newDirectFloatBuffer(SIZE);
+  private UniformBuffer ubo;
+  private boolean dirty;
+
+  public FrameConstants() {
+    new Matrix4f().get(PROJECTION, data);
+    setColor(1, 1, 1, 1);
+  }
+
+  /**
+   * Create the uniform buffer on the GPU. Must be called before upload().
+   */
+  public void init(GL3 gl) {
+    ubo = new UniformBuffer(gl, SIZE * Buffers.SIZEOF_FLOAT, BINDING_POINT);
+    dirty = true;
+  }
+
+  public void setProjection(Matrix4f proj) {
+    proj.get(PROJECTION, data);
+    dirty = true;
+  }
+
+  public void setViewport(int width, int height) {
+    data.put(VIEWPORT, width);
+    data.put(VIEWPORT + 1, height);
+    dirty = true;
+  }
+
+  public void setColor(float r, float g, float b, float a) {
+    data.put(COLOR, r);
+    data.put(COLOR + 1, g);
+    data.put(COLOR + 2, b);
+    data.put(COLOR + 3, a);
+    dirty = true;
+  }
+
+  public void setTime(float secondsOfDay) {
+    data.put(TIME, secondsOfDay);
+    dirty = true;
+  }
+
+  /**
+   * Send the values to the GPU if any of them changed since the last upload
+   *
+   * @return true if an upload was necessary
+   */
+  public boolean upload(GL3 gl) {
+    if (!dirty) {
+      return false;
+    }
+    ubo.update(gl, data, SIZE * Buffers.SIZEOF_FLOAT);
+    dirty = false;
+    return true;
+  }
+
+  public void cleanup(GL3 gl) {
+    if (ubo != null) {
+      ubo.cleanup(gl);
+    }
+  }
+}
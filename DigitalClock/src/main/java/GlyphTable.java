@@ -0,0 +1,92 @@
+/**
+ * A table that maps characters to the segments that must be lit to show them on
+ * a segment display. Each glyph is an int mask in which bit i is set if segment
+ * i is lit, so a table can describe displays of up to 32 segments.
+ *
+ * Two tables are provided:
+ *
+ * <ul> <li>SEVEN_SEGMENT: the digits 0-9 and the hex digits A-F (upper or lower
+ * case), with segments a-g as bits 0-6.</li> <li>FOURTEEN_SEGMENT: the digits
+ * 0-9 and the letters A-Z (upper or lower case), with segments a-f as bits 0-5,
+ * the middle bars g1 and g2 as bits 6-7, the upper diagonal/vertical bars h, i,
+ * j as bits 8-10 and the lower ones l, m, n as bits 11-13.</li> </ul>
+ *
+ * Lookups go through a flat array indexed by the character, so they never
+ * allocate.
+ */
+public class GlyphTable {
+  public static final GlyphTable SEVEN_SEGMENT = new GlyphTable(7,
+          "0123456789ABCDEF",
+          new int[]{0x3f, 0x06, 0x5b, 0x4f, 0x66, 0x6d, 0x7d, 0x07, 0x7f, 0x6f,
+                  0x77, 0x7c, 0x39, 0x5e, 0x79, 0x71});
+
+  public static final GlyphTable FOURTEEN_SEGMENT = new GlyphTable(14,
+          "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+          new int[]{0x243f, 0x0406, 0x00db, 0x008f, 0x00e6, 0x00ed, 0x00fd, 0x0007, 0x00ff, 0x00ef,
+                  0x00f7, 0x128f, 0x0039, 0x120f, 0x0079, 0x0071, 0x00bd, 0x00f6, 0x1209, 0x001e,
+                  0x0c70, 0x0038, 0x0536, 0x0936, 0x003f, 0x00f3, 0x083f, 0x08f3, 0x00ed, 0x1201,
+                  0x003e, 0x2430, 0x2836, 0x2d00, 0x1500, 0x2409});
+
+  private static final int TABLE_SIZE = 128; //ASCII
+
+  private int segmentCount;
+  private int[] masks;
+  private boolean[] defined;
+
+  /**
+   * Create a glyph table
+   *
+   * @param segmentCount the number of segments of the display, at most 32
+   * @param characters   the characters that can be shown. Letters are also
+   *                     registered in the other case, unless that case is
+   *                     given separately.
+   * @param masks        the segment mask of each of the characters
+   * @throws IllegalArgumentException if the arguments do not describe a valid
+   *                                  table
+   */
+  public GlyphTable(int segmentCount, String characters, int[] masks) throws IllegalArgumentException {
+    if ((segmentCount <= 0) || (segmentCount > 32))
+      throw new IllegalArgumentException("A glyph table supports 1 to 32 segments, not " + segmentCount);
+    if (characters.length() != masks.length)
+      throw new IllegalArgumentException("Every character needs exactly one mask");
+
+    this.segmentCount = segmentCount;
+    this.masks = new int[TABLE_SIZE];
+    this.defined = new boolean[TABLE_SIZE];
+
+    //register the other case first, so that an explicit entry always wins
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < characters.length(); i++) {
+        char c = characters.charAt(i);
+        if (pass == 0) {
+          c = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+        }
+        if (c >= TABLE_SIZE)
+          throw new IllegalArgumentException("Only ASCII characters are supported: " + c);
+        if ((segmentCount < 32) && ((masks[i] >>> segmentCount) != 0))
+          throw new IllegalArgumentException("Mask of " + c + " uses more than " + segmentCount + " segments");
+
+        this.masks[c] = masks[i];
+        this.defined[c] = true;
+      }
+    }
+  }
+
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  public boolean hasGlyph(char c) {
+    return (c < TABLE_SIZE) && defined[c];
+  }
+
+  /**
+   * Return the segment mask for the given character, or 0 (all segments off) if
+   * this table cannot show it
+   */
+  public int getMask(char c) {
+    if (c >= TABLE_SIZE)
+      return 0;
+    return masks[c];
+  }
+}
@@ -4,10 +4,16 @@ import com.jogamp.opengl.awt.GLCanvas;
 import com.jogamp.opengl.util.AnimatorBase;
 import com.jogamp.opengl.util.FPSAnimator;
 import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 public class JOGLFrame extends JFrame {
   private View view;
   private GLCanvas canvas;
+  private RenderMode renderMode;
+  private AnimatorBase animator;
+  private SecondTickScheduler scheduler;
+  private Timer startupTimer; //asks for frames until the clock has started
   private int ORG_WINDOW_HEIGHT = 450, ORG_WINDOW_WIDTH = 750;
 
   public JOGLFrame(String title) {
@@ -18,6 +24,9 @@ public class JOGLFrame extends JFrame {
 
     //Our View class is the actual driver of the OpenGL stuff
     view = new View();
+    //read the shaders and build the geometry while the window and the GL context are made
+    view.startLoading();
+    renderMode = RenderMode.fromSystemProperty();
 
     GLProfile glp = GLProfile.getMaxProgrammable(true);
     GLCapabilities caps = new GLCapabilities(glp);
@@ -34,7 +43,8 @@ public class JOGLFrame extends JFrame {
 
           view.init(glAutoDrawable);
 
-          glAutoDrawable.getGL().setSwapInterval(0);
+          //only the continuous mode wants to run faster than the display refresh rate
+          glAutoDrawable.getGL().setSwapInterval(renderMode == RenderMode.CONTINUOUS ? 0 : 1);
 
         } catch (Exception e) {
           JOptionPane.showMessageDialog(JOGLFrame.this, e.getMessage(), "Error while loading", JOptionPane.ERROR_MESSAGE);
@@ -43,6 +53,17 @@ public class JOGLFrame extends JFrame {
 
       @Override
       public void dispose(GLAutoDrawable glAutoDrawable) { //called when the canvas is destroyed.
+        if (startupTimer != null) {
+          startupTimer.stop();
+        }
+        if (scheduler != null) {
+          scheduler.stop();
+        }
+        if (view.isPrintingStats()) {
+          long idleWakeups = (scheduler != null) ? scheduler.getIdleWakeups() : 0;
+          System.out.println("Frames rendered: " + view.getFramesRendered() + ", idle scheduler wakeups: " + idleWakeups);
+          System.out.println("Display state cache hits: " + view.getDisplayState().getHits() + ", misses: " + view.getDisplayState().getMisses());
+        }
 
          view.dispose(glAutoDrawable);
       }
@@ -51,7 +72,11 @@ public class JOGLFrame extends JFrame {
       public void display(GLAutoDrawable glAutoDrawable) { //called every time this window must be redrawn
         GL2GL3 gl = glAutoDrawable.getGL().getGL3();
 
-        view.draw(glAutoDrawable);
+        try {
+          view.draw(glAutoDrawable);
+        } catch (IllegalStateException e) {
+          JOptionPane.showMessageDialog(JOGLFrame.this, e.getMessage(), "Error while loading", JOptionPane.ERROR_MESSAGE);
+        }
        }
 
       @Override
@@ -61,10 +86,30 @@ public class JOGLFrame extends JFrame {
       }
     });
 
-    //Add an animator to the canvas
-    AnimatorBase animator = new FPSAnimator(canvas, 300);
-    animator.setUpdateFPSFrames(100, null);
-    animator.start();
+    if (renderMode == RenderMode.CONTINUOUS) {
+      //Add an animator to the canvas
+      animator = new FPSAnimator(canvas, 300);
+      animator.setUpdateFPSFrames(100, null);
+      animator.start();
+    } else {
+      //redraw only when the displayed second changes
+      scheduler = new SecondTickScheduler(canvas, view.getTimeOfDay().getClock());
+      scheduler.start();
+
+      //the clock is drawn as soon as the startup threads and the driver are done. Nothing else
+      //would ask for a frame until the next second, so poll about once per refresh until then
+      startupTimer = new Timer(16, new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+          if (view.isStarting()) {
+            canvas.display();
+          } else {
+            startupTimer.stop();
+          }
+        }
+      });
+      startupTimer.start();
+    }
   }
 
 
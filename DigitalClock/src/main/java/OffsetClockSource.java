@@ -0,0 +1,27 @@
+/**
+ * A clock source that runs a fixed amount ahead of (or behind, if negative)
+ * another clock source
+ */
+public class OffsetClockSource implements ClockSource {
+  private ClockSource base;
+  private long offsetMillis;
+
+  public OffsetClockSource(ClockSource base, long offsetMillis) {
+    this.base = base;
+    this.offsetMillis = offsetMillis;
+  }
+
+  public void setOffsetMillis(long offsetMillis) {
+    this.offsetMillis = offsetMillis;
+  }
+
+  @Override
+  public double getRate() {
+    return base.getRate();
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return base.currentTimeMillis() + offsetMillis;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * How the clock window is redrawn.
+ *
+ * <ul> <li>CONTINUOUS: an animator redraws as fast as it is allowed to, whether
+ * or not anything changed.</li> <li>ON_CHANGE: the window is redrawn only when
+ * the displayed second changes, or when the window itself asks for it
+ * (reshape, expose).</li> </ul>
+ *
+ * The mode is picked with the system property {@code clock.renderMode}, whose
+ * value is either "continuous" or "on-change" (the default).
+ */
+public enum RenderMode {
+  CONTINUOUS("continuous"),
+  ON_CHANGE("on-change");
+
+  public static final String PROPERTY = "clock.renderMode";
+
+  private String configName;
+
+  RenderMode(String configName) {
+    this.configName = configName;
+  }
+
+  public String getConfigName() {
+    return configName;
+  }
+
+  public static RenderMode fromConfigName(String name) throws IllegalArgumentException {
+    for (RenderMode mode : values()) {
+      if (mode.configName.equalsIgnoreCase(name.trim())) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException("Unknown render mode: " + name + ", must be \"continuous\" or \"on-change\"");
+  }
+
+  /**
+   * Return the mode selected through the system property, or ON_CHANGE if none
+   * is set
+   */
+  public static RenderMode fromSystemProperty() {
+    return fromConfigName(System.getProperty(PROPERTY, ON_CHANGE.configName));
+  }
+}
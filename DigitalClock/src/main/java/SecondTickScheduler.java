@@ -0,0 +1,99 @@
+import com.jogamp.opengl.GLAutoDrawable;
+
+/**
+ * Drives the "on-change" render mode. A background thread sleeps until the
+ * next second boundary of the clock source, and asks the drawable to display
+ * itself only if the displayed HH:mm:ss is different from the last time it did
+ * so. Reshape and expose events do not go through here: the canvas redraws
+ * itself for those.
+ *
+ * The wait is scaled by the rate of the clock source, so that a simulated
+ * clock running faster than real time still shows every second, and is never
+ * longer than one real second, so that a clock that stands still or is moved
+ * by hand is seen within a second.
+ *
+ * Every wakeup that does not lead to a redraw (e.g. an early one) is counted
+ * as an idle wakeup.
+ */
+public class SecondTickScheduler implements Runnable {
+  private static final long MILLIS_PER_SECOND = 1000L;
+
+  private GLAutoDrawable drawable;
+  private TimeOfDay timeOfDay; //our own copy, as TimeOfDay is not thread safe
+  private Thread thread;
+  private volatile boolean running;
+
+  private int lastDisplayedTime;
+  private volatile long framesScheduled, idleWakeups;
+
+  public SecondTickScheduler(GLAutoDrawable drawable, ClockSource clock) {
+    this.drawable = drawable;
+    this.timeOfDay = new TimeOfDay(clock);
+    this.lastDisplayedTime = -1;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    thread = new Thread(this, "clock-second-tick");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public synchronized void stop() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      timeOfDay.update();
+      int timeNow = timeOfDay.getPackedTime();
+
+      if (timeNow != lastDisplayedTime) {
+        lastDisplayedTime = timeNow;
+        framesScheduled++;
+        drawable.display();
+      } else {
+        idleWakeups++;
+      }
+
+      //sleep until the next second boundary of the clock, in real milliseconds
+      ClockSource clock = timeOfDay.getClock();
+      long now = clock.currentTimeMillis();
+      long wait = MILLIS_PER_SECOND - Math.floorMod(now, MILLIS_PER_SECOND);
+      double rate = clock.getRate();
+      if (rate > 0) {
+        wait = Math.min((long) Math.ceil(wait / rate), MILLIS_PER_SECOND);
+      } else {
+        wait = MILLIS_PER_SECOND;
+      }
+      try {
+        Thread.sleep(wait);
+      } catch (InterruptedException e) {
+        //stop() was called, the loop condition takes care of it
+      }
+    }
+  }
+
+  /**
+   * Number of redraws requested by this scheduler because the time changed
+   */
+  public long getFramesScheduled() {
+    return framesScheduled;
+  }
+
+  /**
+   * Number of wakeups on which the displayed time had not changed, so no
+   * redraw was requested
+   */
+  public long getIdleWakeups() {
+    return idleWakeups;
+  }
+}
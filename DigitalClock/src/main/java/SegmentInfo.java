@@ -4,10 +4,11 @@ import com.jogamp.opengl.GLAutoDrawable;
 import org.joml.Matrix4f;
 import org.joml.Vector4f;
 import com.jogamp.opengl.GL;
+import util.GLStateCache;
 import util.IVertexData;
 import util.ObjectInstance;
 import util.PolygonMesh;
-import util.ShaderLocationsVault;
+import util.UniformHandle;
 
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -20,11 +21,11 @@ public class SegmentInfo {
     private PolygonMesh mesh = new PolygonMesh(); //mesh for one segment
     private Map<String, String> shaderToVertexAttribute = new HashMap<String, String>();
 
-    private Matrix4f modelview = new Matrix4f();
-    private FloatBuffer fb16 = Buffers.newDirectFloatBuffer(16);
+    //modelview of every polygon of every digit, 16 floats each, built once by buildTransformTable()
+    private FloatBuffer transformTable;
 
     //no of polygons
-    private int noSegment = 7;
+    public static final int SEGMENTS = 7;
 
     //translation table for the 7 polygons into an "8" shape
     private static int[][] translationTable = {
@@ -48,6 +49,29 @@ public class SegmentInfo {
         return shaderToVertexAttribute;
     }
 
+    public FloatBuffer getTransformTable() {
+        return transformTable;
+    }
+
+    // compute the modelview of the 7 polygons of a digit at each of the given horizontal offsets,
+    // called once at startup. The polygon i of digit d is at matrix 7*d+i of the table
+    public void buildTransformTable(int[] digitOffsets) {
+        int noDigits = digitOffsets.length;
+        transformTable = Buffers.newDirectFloatBuffer(noDigits * SEGMENTS * 16);
+        Matrix4f modelview = new Matrix4f();
+
+        for (int d = 0; d < noDigits; d++) {
+            for (int i = 0; i < SEGMENTS; i++) {
+                //rotate then translate
+                modelview.identity()
+                        .translate(translationTable[i][0] + digitOffsets[d], translationTable[i][1], translationTable[i][2])
+                        .rotate((float) Math.toRadians(rotationTable[i]), 0, 0, 1);
+
+                modelview.get(16 * (d * SEGMENTS + i), transformTable);
+            }
+        }
+    }
+
     // drawing of the circle dot, called in method init()
     public SegmentInfo() {
 
@@ -106,29 +130,30 @@ public class SegmentInfo {
     }
 
 
-    //draw circles into a colon formation, called in method draw()
-    public void SegmentDrawable(GL3 gl, GLAutoDrawable gla, ObjectInstance obj, Boolean[] sevenSegmentEncoder, int offset, Matrix4f proj, ShaderLocationsVault shaderLocations) {
+    //draw the polygons in the draw list, each entry being an index 7*digit+polygon
+    //into the transform table, called in method draw()
+    //the projection comes from the FrameConstants uniform block
+    //the modelview goes through the state cache, which skips it if it is already set
+    public void SegmentDrawable(GL3 gl, GLAutoDrawable gla, ObjectInstance obj, int[] drawList, int drawCount, UniformHandle modelview, GLStateCache stateCache) {
 
-        gl.glUniformMatrix4fv(
-                shaderLocations.getLocation("projection"),
-                1, false, proj.get(fb16));
+        for (int i = 0; i < drawCount; i++) {
+            //upload the precomputed modelview straight from the table
+            transformTable.position(16 * drawList[i]);
+            stateCache.uniformMatrix4fv(gl, modelview.getLocation(), transformTable);
 
-        for (int i = 0; i < noSegment; i++) {
-            if (sevenSegmentEncoder[i]) {
-                modelview = new Matrix4f();
 
-                //rotate then translate
-                modelview = modelview.translate(translationTable[i][0] + offset, translationTable[i][1], translationTable[i][2])
-                        .rotate((float) Math.toRadians(rotationTable[i]), 0, 0, 1);
+            obj.draw(gla);
+        }
+        transformTable.position(0);
 
-                gl.glUniformMatrix4fv(
-                        shaderLocations.getLocation("modelview"),
-                        1, false, modelview.get(fb16));
+    }
 
+    //write whether each polygon of the transform table is lit into the instance visibility
+    //buffer, bit 7*digit+polygon of the mask being set if it is, called in method draw()
+    public void SegmentVisibility(FloatBuffer visibility, long segmentMask, int count) {
 
-                obj.draw(gla);
-            }
+        for (int i = 0; i < count; i++) {
+            visibility.put(i, (int) (segmentMask >>> i) & 1);
         }
-
     }
 }
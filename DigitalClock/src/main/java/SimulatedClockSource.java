@@ -0,0 +1,44 @@
+/**
+ * A clock source that starts at a given instant and then runs at an arbitrary
+ * rate relative to real time (e.g. 60 to watch an hour go by in a minute). It
+ * can also be advanced by hand, which is handy to step through midnight or a
+ * daylight saving change.
+ */
+public class SimulatedClockSource implements ClockSource {
+  private long startMillis;
+  private long startNanos; //real time at which this clock was at startMillis
+  private double rate;
+
+  public SimulatedClockSource(long startMillis, double rate) {
+    this.startMillis = startMillis;
+    this.startNanos = System.nanoTime();
+    this.rate = rate;
+  }
+
+  /**
+   * Change the rate of this clock from now on, without a jump in its time
+   */
+  public void setRate(double rate) {
+    long now = currentTimeMillis();
+    startNanos = System.nanoTime();
+    startMillis = now;
+    this.rate = rate;
+  }
+
+  /**
+   * Move this clock forward (or backward, if negative) by the given amount
+   */
+  public void advance(long millis) {
+    startMillis += millis;
+  }
+
+  @Override
+  public double getRate() {
+    return rate;
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return startMillis + (long) ((System.nanoTime() - startNanos) * rate / 1000000.0);
+  }
+}
@@ -0,0 +1,9 @@
+/**
+ * A clock source that follows the system clock
+ */
+public class SystemClockSource implements ClockSource {
+  @Override
+  public long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+}
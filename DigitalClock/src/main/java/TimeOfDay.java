@@ -0,0 +1,101 @@
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * This class turns the milliseconds of a {@link ClockSource} into the local
+ * hours, minutes and seconds shown by the clock.
+ *
+ * It is meant to be read every frame, so it never allocates on that path: the
+ * local time is plain arithmetic on the epoch milliseconds plus a cached zone
+ * offset. The offset is looked up (which does allocate) only when the time
+ * leaves the interval between the two daylight saving transitions it was
+ * computed for, or when the zone is changed.
+ */
+public class TimeOfDay {
+  private static final long MILLIS_PER_SECOND = 1000L;
+  private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+  private ClockSource clock;
+  private ZoneRules rules;
+
+  //the cached offset holds for every instant in [offsetValidFrom, offsetValidUntil)
+  private long offsetMillis;
+  private long offsetValidFrom, offsetValidUntil;
+
+  private int hours, minutes, seconds;
+
+  public TimeOfDay(ClockSource clock) {
+    this(clock, ZoneId.systemDefault());
+  }
+
+  public TimeOfDay(ClockSource clock, ZoneId zone) {
+    this.clock = clock;
+    setZone(zone);
+  }
+
+  public ClockSource getClock() {
+    return clock;
+  }
+
+  /**
+   * Change the time zone in which the time is shown. The offset is looked up
+   * again the next time this is updated.
+   */
+  public void setZone(ZoneId zone) {
+    rules = zone.getRules();
+    offsetValidFrom = Long.MAX_VALUE;
+    offsetValidUntil = Long.MIN_VALUE;
+  }
+
+  /**
+   * Read the clock source and refresh the hours, minutes and seconds
+   */
+  public void update() {
+    long now = clock.currentTimeMillis();
+
+    if ((now < offsetValidFrom) || (now >= offsetValidUntil)) {
+      computeOffset(now);
+    }
+
+    long localSeconds = Math.floorDiv(now + offsetMillis, MILLIS_PER_SECOND);
+    int secondOfDay = (int) Math.floorMod(localSeconds, SECONDS_PER_DAY);
+
+    hours = secondOfDay / 3600;
+    minutes = (secondOfDay / 60) % 60;
+    seconds = secondOfDay % 60;
+  }
+
+  public int getHours() {
+    return hours;
+  }
+
+  public int getMinutes() {
+    return minutes;
+  }
+
+  public int getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * Return the time of the last update as the six decimal digits HHmmss, e.g.
+   * 93005 for 09:30:05
+   */
+  public int getPackedTime() {
+    return hours * 10000 + minutes * 100 + seconds;
+  }
+
+  private void computeOffset(long now) {
+    Instant instant = Instant.ofEpochMilli(now);
+    offsetMillis = rules.getOffset(instant).getTotalSeconds() * MILLIS_PER_SECOND;
+
+    //a transition exactly at this instant already applies, so look just past it
+    ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+    ZoneOffsetTransition next = rules.nextTransition(instant);
+
+    offsetValidFrom = (previous != null) ? previous.toEpochSecond() * MILLIS_PER_SECOND : Long.MIN_VALUE;
+    offsetValidUntil = (next != null) ? next.toEpochSecond() * MILLIS_PER_SECOND : Long.MAX_VALUE;
+  }
+}
@@ -1,90 +1,90 @@
-import org.joml.Vector4f;
+import util.VertexLayout;
+
+import java.nio.FloatBuffer;
 
 /**
  * This is an extension of the VertexAttrib with one extra attribute: color as a
  * 4-tuple
+ *
+ * Both are kept in one array of 8 floats, position first, and are read and
+ * written by slot without allocating. The string methods go through the
+ * slots.
  */
 public class VertexAttribWithColor implements util.IVertexData {
-  private Vector4f position, color;
+  public static final int POSITION = 0, COLOR = 1;
+  public static final VertexLayout LAYOUT = new VertexLayout(new String[]{"position", "color"}, new int[]{4, 4});
+
+  private final float[] data = {0, 0, 0, 1, 0, 0, 0, 1};
 
 
   @Override
   public boolean hasData(String attribName) {
-    switch (attribName) {
-      case "position":
-      case "color":
-        return true;
-      default:
-        return false;
-    }
+    return LAYOUT.hasAttribute(attribName);
   }
 
   @Override
   public float[] getData(String attribName) throws IllegalArgumentException {
-    float[] result;
-    switch (attribName) {
-      case "position":
-        result = new float[4];
-        result[0] = position.x;
-        result[1] = position.y;
-        result[2] = position.z;
-        result[3] = position.w;
-        return result;
-      case "color":
-        result = new float[4];
-        result[0] = color.x;
-        result[1] = color.y;
-        result[2] = color.z;
-        result[3] = color.w;
-        return result;
-      default:
-        throw new IllegalArgumentException("No attribute: " + attribName + " found!");
-    }
+    float[] result = new float[4];
+    getData(slot(attribName, "No attribute: " + attribName + " found!"), result, 0);
+    return result;
   }
 
   @Override
   public void setData(String attribName, float[] data) throws IllegalArgumentException {
-    switch (attribName) {
-      case "position":
-        position = new Vector4f(0, 0, 0, 1);
-        switch (data.length) {
-          case 4:
-            position.w = data[3];
-          case 3:
-            position.z = data[2];
-          case 2:
-            position.y = data[1];
-          case 1:
-            position.x = data[0];
-            break;
-          default:
-            throw new IllegalArgumentException("Too much data for attribute: " + attribName);
-        }
-        break;
-      case "color":
-        color = new Vector4f(0, 0, 0, 1);
-        switch (data.length) {
-          case 4:
-            color.w = data[3];
-          case 3:
-            color.z = data[2];
-          case 2:
-            color.y = data[1];
-          case 1:
-            color.x = data[0];
-            break;
-          default:
-            throw new IllegalArgumentException("Too much data for attribute: " + attribName);
-        }
-        break;
-
-      default:
-        throw new IllegalArgumentException("Attribute: " + attribName + " unsupported!");
-    }
+    setData(slot(attribName, "Attribute: " + attribName + " unsupported!"), data, 0, data.length);
   }
 
   @Override
   public String[] getAllAttributes() {
     return new String[]{"position", "color"};
   }
+
+  @Override
+  public VertexLayout getLayout() {
+    return LAYOUT;
+  }
+
+  @Override
+  public int getData(int slot, float[] out, int offset) throws IllegalArgumentException {
+    System.arraycopy(data, start(slot), out, offset, 4);
+    return 4;
+  }
+
+  @Override
+  public int getData(int slot, FloatBuffer out) throws IllegalArgumentException {
+    out.put(data, start(slot), 4);
+    return 4;
+  }
+
+  /**
+   * Set 1 to 4 floats of an attribute. The ones not given are 0, except the
+   * 4th which is 1.
+   */
+  @Override
+  public void setData(int slot, float[] values, int offset, int count) throws IllegalArgumentException {
+    int start = start(slot);
+    if (count < 1)
+      throw new IllegalArgumentException("No data for attribute: " + LAYOUT.getName(slot));
+    if (count > 4)
+      throw new IllegalArgumentException("Too much data for attribute: " + LAYOUT.getName(slot));
+    System.arraycopy(values, offset, data, start, count);
+    for (int i = count; i < 3; i++) {
+      data[start + i] = 0;
+    }
+    if (count < 4)
+      data[start + 3] = 1;
+  }
+
+  private static int start(int slot) throws IllegalArgumentException {
+    if ((slot != POSITION) && (slot != COLOR))
+      throw new IllegalArgumentException("No attribute in slot " + slot);
+    return 4 * slot;
+  }
+
+  private static int slot(String attribName, String message) throws IllegalArgumentException {
+    int slot = LAYOUT.getSlot(attribName);
+    if (slot < 0)
+      throw new IllegalArgumentException(message);
+    return slot;
+  }
 }
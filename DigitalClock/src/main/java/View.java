@@ -1,52 +1,320 @@
 import com.jogamp.opengl.*;
 import util.*;
+import com.jogamp.common.nio.Buffers;
 import org.joml.Matrix4f;
-import java.text.SimpleDateFormat;
-import java.util.*;
+
+import java.nio.FloatBuffer;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class View {
+  private static final String FRAGMENT_SHADER = "shaders/default.frag";
+
   private int WINDOW_WIDTH, WINDOW_HEIGHT, ORTHO_VERTICAL = 900, ORTHO_HORIZONTAL = 1500;
   private Matrix4f proj;
   private ObjectInstance digitObj, dotObj;
+  private GeometryArena arena; //holds digitObj and dotObj, unless drawing instanced
   private ShaderLocationsVault shaderLocations;
+  private UniformHandle modelviewUniform; //set for every segment and dot, unless drawing instanced
+
+  private DotInfo dotInfo;
+  private SegmentInfo segmentInfo;
+
+  private TimeOfDay timeOfDay;
+  private DisplayStateCache displayState = new DisplayStateCache(6);
+  private long framesRendered;
+
+  //horizontal position of each digit, from right to left, and of each colon
+  private int[] digitOffsets = new int[6];
+  private int[] colonOffsets = new int[2];
+
+  //draw all segments (and all dots) with one instanced draw call each, or one
+  //draw call per segment (and per dot). Chosen with the system property clock.instanced
+  private boolean instanced;
+  private FloatBuffer segmentVisibility, dotVisibility;
+
+  //projection, viewport, time and color, shared by all draw calls through a uniform buffer
+  private FrameConstants frameConstants = new FrameConstants();
 
-  private DotInfo dotInfo = new DotInfo();
-  private SegmentInfo segmentInfo = new SegmentInfo();
+  //skips binds and uniform uploads that would not change anything. With the system
+  //property clock.glStats=true, its counters are printed after every frame
+  private GLStateCache stateCache = new GLStateCache();
+  private boolean printGLStats = Boolean.parseBoolean(System.getProperty("clock.glStats", "false"));
+  //with the system property clock.stats=true, the startup timeline is printed after the first
+  //frame, and the frame counts when the window closes
+  private boolean printStats = Boolean.parseBoolean(System.getProperty("clock.stats", "false"));
 
 
   ShaderProgram program;
+  //linked shader programs from earlier launches, in the directory given by the system
+  //property clock.shaderCache. An empty directory name turns the cache off
+  private ShaderCache shaderCache;
+
+  //startup: the shader sources are read, and the meshes built and packed into vertex and
+  //index data, on threads of their own from startLoading() on, or from init() at the latest.
+  //init() starts compiling the shaders, and every frame until the first one showing the clock
+  //checks whether all of that is done yet, drawing only the background until it is
+  private StartupTimeline timeline = new StartupTimeline();
+  private FutureTask<String[]> shaderSources;
+  private FutureTask<Geometry> geometry;
+  private boolean loading, started, startupFailed;
 
 
   public View() {
+    this(new SystemClockSource());
+  }
+
+  public View(ClockSource clock) {
+    timeOfDay = new TimeOfDay(clock);
     proj = new Matrix4f();
     proj.identity();
 
     digitObj = null;
     shaderLocations = null;
     WINDOW_WIDTH = WINDOW_HEIGHT = 0;
+
+    //add spacing between each digit, and an extra space between HH:mm:ss
+    int offset = 975; int offsetDiff = 410;
+    int separateSpace = 50;
+    boolean separate = false;
+    for (int i=0;i<6;i++) {
+      digitOffsets[i] = offset;
+
+      //determine spacing for the next digit
+      offset -=offsetDiff;
+      if (separate) {
+        offset -=separateSpace;
+      }
+      separate = !separate;
+    }
+
+    //offset for the colons
+    offset = -525; offsetDiff = 850;
+    for (int i=0; i<2; i++) {
+      colonOffsets[i] = offset;
+      offset += offsetDiff;
+    }
+
+    instanced = Boolean.parseBoolean(System.getProperty("clock.instanced", "true"));
+    String shaderCacheDirectory = System.getProperty("clock.shaderCache",
+            Paths.get(System.getProperty("user.home"), ".digitalclock", "shaders").toString());
+    if (!shaderCacheDirectory.isEmpty()) {
+      shaderCache = new ShaderCache(Paths.get(shaderCacheDirectory));
+    }
+    segmentVisibility = Buffers.newDirectFloatBuffer(6 * SegmentInfo.SEGMENTS);
+    dotVisibility = Buffers.newDirectFloatBuffer(2 * DotInfo.DOTS);
+    for (int i=0; i<2 * DotInfo.DOTS; i++) {
+      dotVisibility.put(i, 1); //dots are always visible
+    }
+
+    shaderSources = new FutureTask<String[]>(new Callable<String[]>() {
+      @Override
+      public String[] call() throws Exception {
+        timeline.begin("shader sources");
+        String[] sources = {ShaderCache.readSource(vertexShaderFile()), ShaderCache.readSource(FRAGMENT_SHADER)};
+        timeline.end("shader sources");
+        return sources;
+      }
+    });
+    geometry = new FutureTask<Geometry>(new Callable<Geometry>() {
+      @Override
+      public Geometry call() {
+        timeline.begin("geometry");
+        Geometry g = new Geometry(instanced, digitOffsets, colonOffsets);
+        timeline.end("geometry");
+        return g;
+      }
+    });
+  }
+
+  /**
+   * Start reading the shader sources and building the geometry on threads of their own, so
+   * that they are done by the time there is an OpenGL context. Called by init() unless it
+   * was called before; a View that is never drawn, e.g. in a test, starts no threads.
+   */
+  public synchronized void startLoading() {
+    if (loading) {
+      return;
+    }
+    loading = true;
+    startThread(shaderSources, "clock-startup-shaders");
+    startThread(geometry, "clock-startup-geometry");
+  }
+
+  private String vertexShaderFile() {
+    return instanced ? "shaders/instanced.vert" : "shaders/default.vert";
+  }
+
+  private static void startThread(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Everything about the segments and the dots that does not need OpenGL: their meshes,
+   * their transform tables, and their vertex and index data, ready to be uploaded
+   */
+  private static class Geometry {
+    final SegmentInfo segmentInfo = new SegmentInfo();
+    final DotInfo dotInfo = new DotInfo();
+    MeshCache segmentMesh, dotMesh; //if drawing instanced
+    GeometryArena arena; //otherwise
+    ObjectInstance digitObj, dotObj;
+
+    Geometry(boolean instanced, int[] digitOffsets, int[] colonOffsets) {
+      //the digits and colons never move, so all their modelviews are computed once here
+      segmentInfo.buildTransformTable(digitOffsets);
+      dotInfo.buildTransformTable(colonOffsets);
+
+      if (instanced) {
+        segmentMesh = MeshCache.build(segmentInfo.getMesh(), attributes(segmentInfo.getShaderToVertexAttribute().values()));
+        dotMesh = MeshCache.build(dotInfo.getMesh(), attributes(dotInfo.getShaderToVertexAttribute().values()));
+      } else {
+        //the segment and the dot share one vertex and one index buffer, so the whole clock
+        //is drawn after a single VAO bind
+        arena = new GeometryArena(segmentInfo.getShaderToVertexAttribute());
+        digitObj = arena.add(segmentInfo.getMesh(), "triangles");
+        dotObj = arena.add(dotInfo.getMesh(), "triangles");
+        arena.prepare();
+      }
+    }
+
+    private static String[] attributes(Collection<String> names) {
+      return names.toArray(new String[0]);
+    }
   }
 
   public void init(GLAutoDrawable gla) throws Exception {
     GL3 gl = gla.getGL().getGL3();
+    startLoading();
+    timeline.begin("GL init");
+
+    frameConstants.init(gl);
+
+    //start compiling our shader program, unless the cache has it already. Look at the
+    //ShaderProgram class for details on how this is done
+    //if any of this fails there is no program to draw with, so the startup has failed
+    boolean ok = false;
+    try {
+      String[] sources;
+      try {
+        sources = shaderSources.get();
+      } catch (ExecutionException e) {
+        throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+      }
+      timeline.begin("shader program");
+      ShaderProgram p = new ShaderProgram();
+      p.startProgram(gl, vertexShaderFile(), sources[0], FRAGMENT_SHADER, sources[1], shaderCache);
+      program = p;
+      ok = true;
+    } finally {
+      if (!ok)
+        startupFailed = true;
+    }
+
+    timeline.end("GL init");
+  }
 
+  /**
+   * Whether the system property clock.stats asks for startup and frame counts to be printed
+   */
+  public boolean isPrintingStats() {
+    return printStats;
+  }
 
-    //compile and make our shader program. Look at the ShaderProgram class for details on how this is done
-    program = new ShaderProgram();
-    program.createProgram(gl, "shaders/default.vert", "shaders/default.frag");
+  /**
+   * Whether the clock is still starting up, so that only the background is drawn. Until
+   * it is done, every frame should be followed by another one.
+   */
+  public boolean isStarting() {
+    return !started && !startupFailed;
+  }
 
-    shaderLocations = program.getAllShaderVariables(gl);
+  /**
+   * The part of the startup that needs OpenGL and the results of the startup threads:
+   * finish the shader program, then upload the geometry with it
+   *
+   * @return true once done, false if the shader program or the geometry is not ready yet
+   * @throws IllegalStateException if the shader program or the geometry could not be made, or
+   *                               the program lacks the frame constants block
+   */
+  private boolean finishStartup(GL3 gl) throws IllegalStateException {
+    if (program == null) {
+      startupFailed = true;
+      throw new IllegalStateException("The shader program was never started");
+    }
+    if (!program.isProgramReady(gl) || !geometry.isDone()) {
+      return false;
+    }
 
-    //create a segment object
-    digitObj = new ObjectInstance(gl, program, shaderLocations, segmentInfo.getShaderToVertexAttribute(), segmentInfo.getMesh(), "triangles");
+    if (!program.finishProgram(gl)) {
+      startupFailed = true;
+      throw new IllegalStateException("The shader program failed to compile or link");
+    }
+    timeline.end("shader program");
+
+    Geometry g;
+    try {
+      g = geometry.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      startupFailed = true;
+      throw new IllegalStateException("Could not build the clock: " + e.getCause(), e.getCause());
+    }
 
-    //create a segment object
-    dotObj = new ObjectInstance(gl, program, shaderLocations, dotInfo.getShaderToVertexAttribute(), dotInfo.getMesh(), "triangles");
+    timeline.begin("GL upload");
+    segmentInfo = g.segmentInfo;
+    dotInfo = g.dotInfo;
+    shaderLocations = program.getAllShaderVariables(gl);
+    modelviewUniform = shaderLocations.getUniform("modelview");
 
+    if (!program.bindUniformBlock(gl, FrameConstants.BLOCK_NAME, FrameConstants.BINDING_POINT)) {
+      startupFailed = true;
+      throw new IllegalStateException("The shader program has no uniform block " + FrameConstants.BLOCK_NAME);
+    }
 
-    program.disable(gl);
+    if (instanced) {
+      //create a segment object
+      digitObj = new ObjectInstance(gl, shaderLocations, segmentInfo.getShaderToVertexAttribute(), g.segmentMesh, "triangles");
+
+      //create a dot object
+      dotObj = new ObjectInstance(gl, shaderLocations, dotInfo.getShaderToVertexAttribute(), g.dotMesh, "triangles");
+
+      int transforms = shaderLocations.getAttribute("vModelview").getLocation();
+      int visibility = shaderLocations.getAttribute("vVisible").getLocation();
+      digitObj.initInstancing(gl, transforms, visibility, 6 * SegmentInfo.SEGMENTS);
+      dotObj.initInstancing(gl, transforms, visibility, 2 * DotInfo.DOTS);
+
+      //upload the transform tables once, only the segment visibility changes from frame to frame
+      digitObj.setInstanceTransforms(gl, segmentInfo.getTransformTable(), 6 * SegmentInfo.SEGMENTS);
+      dotObj.setInstanceTransforms(gl, dotInfo.getTransformTable(), 2 * DotInfo.DOTS);
+      dotObj.setInstanceVisibility(gl, dotVisibility, 2 * DotInfo.DOTS);
+    } else {
+      arena = g.arena;
+      digitObj = g.digitObj;
+      dotObj = g.dotObj;
+      arena.upload(gl, shaderLocations);
+      arena.setStateCache(stateCache);
+    }
+    program.setStateCache(stateCache);
+    digitObj.setStateCache(stateCache);
+    dotObj.setStateCache(stateCache);
+    //the new buffers know nothing of the last time shown
+    displayState.invalidate();
+
+    //all of the above talked to OpenGL directly
+    stateCache.invalidate();
+    timeline.end("GL upload");
+    started = true;
+    return true;
   }
 
-
   public void draw(GLAutoDrawable gla) {
     GL3 gl = gla.getGL().getGL3();
 
@@ -54,48 +322,78 @@ public class View {
     gl.glClearColor(0, 0, 0, 0);
     //clear the background
     gl.glClear(gl.GL_COLOR_BUFFER_BIT);
+    if (!started && (startupFailed || !finishStartup(gl))) {
+      //nothing to draw the clock with yet
+      gl.glFlush();
+      return;
+    }
     //enable the shader program
     program.enable(gl);
 
-    ///////////////////////// Draw digits /////////////////////////
+    //get the current time, and work out which segments it lights unless that is what the last frame showed
+    boolean changed = displayState.update(getTimeNow());
+    if (changed) {
+      frameConstants.setTime(timeOfDay.getHours() * 3600 + timeOfDay.getMinutes() * 60 + timeOfDay.getSeconds());
+    }
+    //a no-op unless the time changed or the window was reshaped
+    frameConstants.upload(gl);
 
-    //get the current time
-    int timeNow = getTimeNow();
+    if (instanced) {
+      drawInstanced(gl, gla, changed);
+    } else {
+      drawPerObject(gl, gla);
+    }
 
-    //draw from right to left
-    //add spacing between each digit, and an extra space between HH:mm:ss
-    int offset = 975; int offsetDiff = 410;
-    int separateSpace = 50;
-    Boolean separate = false;
+    gl.glFlush();
+    //disable the program
+    program.disable(gl);
+    framesRendered++;
+
+    if ((framesRendered == 1) && printStats) {
+      timeline.mark("first frame");
+      //warm if the shader program came from the cache
+      String startup = ((shaderCache != null) && (shaderCache.getWarmPrograms() > 0)) ? "warm" : "cold";
+      System.out.println("Startup (" + startup + "): first frame after " + timeline.getEnd("first frame") / 1000000.0 + " ms");
+      System.out.println(timeline);
+      if (shaderCache != null) {
+        System.out.println(shaderCache);
+      }
+    }
 
+    if (printGLStats) {
+      System.out.println("Frame " + framesRendered + ": " + stateCache);
+      stateCache.resetCounters();
+    }
+  }
 
-    for (int i=0;i<6;i++) { // pad any zeros for hours if the time is less than 10:00:00
-      Encoder code = new Encoder(timeNow % 10);
-      segmentInfo.SegmentDrawable(gl, gla, digitObj, code.getSevenSegmentEncoder(), offset, proj, shaderLocations);
-      timeNow = timeNow / 10;
+  //one draw call for every lit segment and every dot
+  private void drawPerObject(GL3 gl, GLAutoDrawable gla) {
+    ///////////////////////// Draw digits /////////////////////////
 
-      //determine spacing for the next digit
-      offset -=offsetDiff;
-      if (separate) {
-        offset -=separateSpace;
-      }
-      separate = !separate;
-    }
+    //draw the lit segments, from right to left
+    segmentInfo.SegmentDrawable(gl, gla, digitObj, displayState.getDrawList(), displayState.getDrawCount(), modelviewUniform, stateCache);
      //////////////////////////////////////////////////////////////
 
 
     ////////////////////////// Draw dot ///////////////////////////
-    //offset for the colons
-    offset = -525; offsetDiff = 850;
       for (int i=0; i<2; i++){ //draw 2 colons
-          dotInfo.DotDrawable(gl, gla, dotObj, offset, proj, shaderLocations);
-          offset += offsetDiff;
+          dotInfo.DotDrawable(gl, gla, dotObj, i, modelviewUniform, stateCache);
       }
     //////////////////////////////////////////////////////////////
 
-    gl.glFlush();
-    //disable the program
-    program.disable(gl);
+    arena.unbind(gl);
+  }
+
+  //one instanced draw call for all segments, unlit ones are hidden, and one for all dots
+  private void drawInstanced(GL3 gl, GLAutoDrawable gla, boolean changed) {
+    //the visibility flags on the GPU are still right if the time has not changed
+    if (changed) {
+      segmentInfo.SegmentVisibility(segmentVisibility, displayState.getSegmentMask(), 6 * SegmentInfo.SEGMENTS);
+      digitObj.setInstanceVisibility(gl, segmentVisibility, 6 * SegmentInfo.SEGMENTS);
+    }
+    digitObj.drawInstanced(gla, 6 * SegmentInfo.SEGMENTS);
+
+    dotObj.drawInstanced(gla, 2 * DotInfo.DOTS);
   }
 
   public void reshape(GLAutoDrawable gla, int x, int y, int width, int height, int  ORG_WINDOW_WIDTH, int ORG_WINDOW_HEIGHT) {
@@ -121,17 +419,49 @@ public class View {
       proj = new Matrix4f().ortho2D(-ORTHO_HORIZONTAL, ORTHO_HORIZONTAL, -ORTHO_HORIZONTAL / newWindowRatio, ORTHO_HORIZONTAL / newWindowRatio);
     }
 
+    //sent to the GPU with the next frame
+    frameConstants.setProjection(proj);
+    frameConstants.setViewport(width, height);
   }
 
   public void dispose(GLAutoDrawable gla) {
+    if (!started) {
+      frameConstants.cleanup(gla.getGL().getGL3());
+      return;
+    }
     digitObj.cleanup(gla);
+    dotObj.cleanup(gla);
+    if (arena != null) {
+      arena.cleanup(gla);
+    }
+    frameConstants.cleanup(gla.getGL().getGL3());
+  }
+
+  public long getFramesRendered() {
+    return framesRendered;
+  }
+
+  public DisplayStateCache getDisplayState() {
+    return displayState;
+  }
+
+  public TimeOfDay getTimeOfDay() {
+    return timeOfDay;
+  }
+
+  //the horizontal position of each digit, from right to left
+  public int[] getDigitOffsets() {
+    return digitOffsets.clone();
+  }
+
+  //the horizontal position of each colon, from left to right
+  public int[] getColonOffsets() {
+    return colonOffsets.clone();
   }
 
+  //returns the current time as the digits HHmmss, without allocating
   public int getTimeNow(){
-    Calendar cal = Calendar.getInstance();
-    SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-    String timeNow = sdf.format(cal.getTime()).replace(":","");
-    int result = Integer.parseInt(timeNow);
-    return result;
+    timeOfDay.update();
+    return timeOfDay.getPackedTime();
   }
 }
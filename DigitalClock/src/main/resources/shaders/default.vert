@@ -2,12 +2,18 @@
 
 layout(location=0) in vec4 vPosition;
 layout(location=1) in vec4 vColor;
-uniform mat4 projection;
+layout(std140) uniform FrameConstants
+{
+    mat4 projection;
+    vec4 viewport; //width and height of the window in pixels
+    vec4 color; //multiplies the color of every vertex
+    float time; //the displayed time, in seconds since midnight
+};
 uniform mat4 modelview;
 out vec4 outColor;
 
 void main()
 {
     gl_Position = projection * modelview * vPosition;
-    outColor = vColor;
+    outColor = vColor * color;
 }
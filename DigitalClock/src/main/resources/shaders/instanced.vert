@@ -0,0 +1,25 @@
+#version 330
+
+layout(location=0) in vec4 vPosition;
+layout(location=1) in vec4 vColor;
+//per-instance attributes: the modelview takes up locations 2 to 5
+layout(location=2) in mat4 vModelview;
+layout(location=6) in float vVisible;
+layout(std140) uniform FrameConstants
+{
+    mat4 projection;
+    vec4 viewport; //width and height of the window in pixels
+    vec4 color; //multiplies the color of every vertex
+    float time; //the displayed time, in seconds since midnight
+};
+out vec4 outColor;
+
+void main()
+{
+    //a hidden instance collapses into a single point outside the view volume, so nothing is drawn
+    if (vVisible < 0.5)
+        gl_Position = vec4(2.0, 2.0, 2.0, 1.0);
+    else
+        gl_Position = projection * vModelview * vPosition;
+    outColor = vColor * color;
+}
@@ -0,0 +1,39 @@
+import com.jogamp.opengl.GLAutoDrawable;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the scheduler asks for a frame for every second of a clock that
+ * runs faster than real time
+ */
+public class SecondTickSchedulerTest {
+  @Test
+  public void fastClockShowsEverySecond() throws InterruptedException {
+    final AtomicInteger displays = new AtomicInteger();
+    GLAutoDrawable drawable = (GLAutoDrawable) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{GLAutoDrawable.class}, new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("display"))
+                  displays.incrementAndGet();
+                return null;
+              }
+            });
+
+    //a minute of clock time for every real second
+    SecondTickScheduler scheduler = new SecondTickScheduler(drawable, new SimulatedClockSource(1500000000000L, 60));
+    scheduler.start();
+    Thread.sleep(1000);
+    scheduler.stop();
+
+    //about 60, but the test machine may be slow
+    assertTrue("frames asked for: " + displays.get(), displays.get() >= 20);
+    assertTrue("frames asked for: " + displays.get(), displays.get() <= 70);
+  }
+}
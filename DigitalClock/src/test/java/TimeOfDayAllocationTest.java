@@ -0,0 +1,114 @@
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that reading the time every frame allocates nothing, with the
+ * allocated-bytes counter of the current thread
+ */
+public class TimeOfDayAllocationTest {
+  private static final int CALLS = 1000000;
+
+  private com.sun.management.ThreadMXBean threads;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Test
+  public void viewTimeNowDoesNotAllocate() {
+    View view = new View(new SystemClockSource());
+    //the first calls look up the zone offset, which does allocate
+    int sum = readTime(view, CALLS);
+
+    long before = allocatedBytes();
+    sum += readTime(view, CALLS);
+    long after = allocatedBytes();
+
+    assertEquals("bytes allocated by " + CALLS + " calls (" + sum + ")", 0, after - before - counterOverhead());
+  }
+
+  @Test
+  public void timeOfDayDoesNotAllocate() {
+    //a zone with daylight saving, 500 s before it changes at 2017-03-26T01:00Z, from
+    //02:00 CET to 03:00 CEST. The warm-up crosses the change, which looks up the new offset
+    SimulatedClockSource clock = new SimulatedClockSource(1490490000000L - 500000, 0);
+    TimeOfDay time = new TimeOfDay(clock, ZoneId.of("Europe/Berlin"));
+    time.update();
+    assertEquals(1, time.getHours());
+    int sum = step(clock, time, CALLS);
+    assertEquals(3, time.getHours());
+
+    long before = allocatedBytes();
+    sum += step(clock, time, CALLS);
+    long after = allocatedBytes();
+
+    assertEquals("bytes allocated by " + CALLS + " updates (" + sum + ")", 0, after - before - counterOverhead());
+  }
+
+  @Test
+  public void fixedClockDoesNotAllocate() {
+    FixedClockSource clock = new FixedClockSource(1500000000000L);
+    TimeOfDay time = new TimeOfDay(clock, ZoneId.of("UTC"));
+    int sum = 0;
+    for (int i = 0; i < CALLS; i++) {
+      clock.setTimeMillis(1500000000000L + 1000L * (i % 86400));
+      time.update();
+      sum += time.getPackedTime();
+    }
+
+    long before = allocatedBytes();
+    for (int i = 0; i < CALLS; i++) {
+      clock.setTimeMillis(1500000000000L + 1000L * (i % 86400));
+      time.update();
+      sum += time.getPackedTime();
+    }
+    long after = allocatedBytes();
+
+    assertEquals("bytes allocated by " + CALLS + " updates (" + sum + ")", 0, after - before - counterOverhead());
+  }
+
+  /**
+   * Update the time once per simulated millisecond, for the given number of
+   * milliseconds
+   */
+  private static int step(SimulatedClockSource clock, TimeOfDay time, int millis) {
+    int sum = 0;
+    for (int i = 0; i < millis; i++) {
+      clock.advance(1);
+      time.update();
+      sum += time.getPackedTime() + time.getHours() + time.getMinutes() + time.getSeconds();
+    }
+    return sum;
+  }
+
+  private static int readTime(View view, int calls) {
+    int sum = 0;
+    for (int i = 0; i < calls; i++) {
+      sum += view.getTimeNow();
+    }
+    return sum;
+  }
+
+  private long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * What reading the counter allocates by itself, if anything
+   */
+  private long counterOverhead() {
+    long first = allocatedBytes();
+    long second = allocatedBytes();
+    return second - first;
+  }
+}
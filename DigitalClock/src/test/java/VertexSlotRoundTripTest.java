@@ -0,0 +1,164 @@
+import org.junit.Test;
+import util.IVertexData;
+import util.VertexLayout;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that writing and reading a vertex by slot gives the same floats as
+ * the string methods, for VertexAttribWithColor and for the default slot
+ * methods of IVertexData
+ */
+public class VertexSlotRoundTripTest {
+  private static final String[] NAMES = {"position", "color"};
+
+  /**
+   * A vertex with only the string methods, so that the slot methods are the
+   * defaults of IVertexData
+   */
+  private static class MapVertex implements IVertexData {
+    private final Map<String, float[]> data = new HashMap<String, float[]>();
+
+    @Override
+    public boolean hasData(String attribName) {
+      return data.containsKey(attribName);
+    }
+
+    @Override
+    public float[] getData(String attribName) throws IllegalArgumentException {
+      float[] values = data.get(attribName);
+      if (values == null)
+        throw new IllegalArgumentException("No attribute: " + attribName + " found!");
+      return values.clone();
+    }
+
+    @Override
+    public void setData(String attribName, float[] values) throws IllegalArgumentException {
+      if (!Arrays.asList(NAMES).contains(attribName))
+        throw new IllegalArgumentException("Attribute: " + attribName + " unsupported!");
+      data.put(attribName, values.clone());
+    }
+
+    @Override
+    public String[] getAllAttributes() {
+      return NAMES.clone();
+    }
+  }
+
+  @Test
+  public void vertexAttribWithColorSlotsMatchStrings() {
+    Random random = new Random(24);
+    for (int i = 0; i < 1000; i++) {
+      VertexAttribWithColor bySlot = new VertexAttribWithColor();
+      VertexAttribWithColor byName = new VertexAttribWithColor();
+      for (int slot = 0; slot < NAMES.length; slot++) {
+        float[] values = randomValues(random, 1 + random.nextInt(4));
+        int offset = random.nextInt(3);
+        float[] padded = new float[offset + values.length + 2];
+        System.arraycopy(values, 0, padded, offset, values.length);
+
+        assertEquals(slot, VertexAttribWithColor.LAYOUT.getSlot(NAMES[slot]));
+        bySlot.setData(slot, padded, offset, values.length);
+        byName.setData(NAMES[slot], values);
+      }
+      assertSameVertex(byName, bySlot);
+    }
+  }
+
+  @Test
+  public void defaultSlotMethodsMatchStrings() {
+    Random random = new Random(25);
+    for (int i = 0; i < 1000; i++) {
+      MapVertex bySlot = new MapVertex();
+      MapVertex byName = new MapVertex();
+      int[] sizes = new int[NAMES.length];
+      for (int slot = 0; slot < NAMES.length; slot++) {
+        sizes[slot] = 1 + random.nextInt(4);
+        //the default layout only knows the attributes that have data
+        bySlot.setData(NAMES[slot], new float[sizes[slot]]);
+      }
+      assertEquals(new VertexLayout(NAMES, sizes), bySlot.getLayout());
+
+      for (int slot = 0; slot < NAMES.length; slot++) {
+        float[] values = randomValues(random, sizes[slot]);
+        int offset = random.nextInt(3);
+        float[] padded = new float[offset + values.length + 2];
+        System.arraycopy(values, 0, padded, offset, values.length);
+
+        assertEquals(NAMES[slot], bySlot.getAttributeName(slot));
+        bySlot.setData(slot, padded, offset, values.length);
+        byName.setData(NAMES[slot], values);
+      }
+      assertSameVertex(byName, bySlot);
+    }
+  }
+
+  @Test
+  public void emptyDataIsRejected() {
+    VertexAttribWithColor vertex = new VertexAttribWithColor();
+    for (int slot = 0; slot < NAMES.length; slot++) {
+      try {
+        vertex.setData(slot, new float[4], 0, 0);
+        fail("No data was accepted for " + NAMES[slot]);
+      } catch (IllegalArgumentException e) {
+        //expected
+      }
+      try {
+        vertex.setData(NAMES[slot], new float[0]);
+        fail("No data was accepted for " + NAMES[slot]);
+      } catch (IllegalArgumentException e) {
+        //expected
+      }
+    }
+    //nothing was changed
+    assertArrayEquals(new float[]{0, 0, 0, 1}, vertex.getData("position"), 0);
+    assertArrayEquals(new float[]{0, 0, 0, 1}, vertex.getData("color"), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooMuchDataIsRejected() {
+    new VertexAttribWithColor().setData(VertexAttribWithColor.COLOR, new float[5], 0, 5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingSlotIsRejected() {
+    new VertexAttribWithColor().getData(2, new float[4], 0);
+  }
+
+  /**
+   * The same floats through getData(String), getData(int, float[], int) and
+   * getData(int, FloatBuffer)
+   */
+  private static void assertSameVertex(IVertexData expected, IVertexData actual) {
+    for (int slot = 0; slot < NAMES.length; slot++) {
+      float[] byName = expected.getData(NAMES[slot]);
+      assertArrayEquals(NAMES[slot], byName, actual.getData(NAMES[slot]), 0);
+
+      float[] array = new float[byName.length + 1];
+      assertEquals(byName.length, actual.getData(slot, array, 1));
+      assertArrayEquals(NAMES[slot], byName, Arrays.copyOfRange(array, 1, array.length), 0);
+
+      FloatBuffer buffer = FloatBuffer.allocate(byName.length + 1);
+      buffer.put(0);
+      assertEquals(byName.length, actual.getData(slot, buffer));
+      assertEquals(byName.length + 1, buffer.position());
+      assertArrayEquals(NAMES[slot], byName, Arrays.copyOfRange(buffer.array(), 1, byName.length + 1), 0);
+    }
+  }
+
+  private static float[] randomValues(Random random, int count) {
+    float[] values = new float[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = (float) random.nextGaussian();
+    }
+    return values;
+  }
+}
@@ -0,0 +1,154 @@
+package util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a truncated or garbled mesh cache file is refused with an
+ * IOException, and rebuilt by loadOrBuild()
+ */
+public class MeshCacheTest {
+  private static final VertexFormat FORMAT = VertexFormat.of(new String[]{"position", "normal"}, new int[]{4, 4});
+  private static final String[] ATTRIBUTES = {"position", "normal"};
+  private static final String OBJ = "v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\nf 1 2 3\nf 2 4 3\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void truncatedFilesAreRefused() throws IOException {
+    byte[] valid = validFile();
+    for (int length = 0; length < valid.length; length++) {
+      assertRefused(Arrays.copyOf(valid, length));
+    }
+  }
+
+  @Test
+  public void garbledHeadersAreRefused() throws IOException {
+    byte[] valid = validFile();
+    int headerSize = ByteBuffer.wrap(valid).order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+    Random random = new Random(13);
+    for (int i = 0; i < 2000; i++) {
+      byte[] garbled = valid.clone();
+      //leave the magic and the version, so that the rest is read
+      int changes = 1 + random.nextInt(4);
+      for (int c = 0; c < changes; c++) {
+        garbled[8 + random.nextInt(headerSize - 8)] = (byte) random.nextInt(256);
+      }
+      try {
+        MeshCache.load(write(garbled));
+      } catch (IOException e) {
+        //refused, which is fine
+      }
+    }
+  }
+
+  @Test
+  public void negativeCountsAreRefused() throws IOException {
+    byte[] valid = validFile();
+    //the vertex count, the attribute count and the name length of the first attribute
+    int vertexCount = 16 + MeshCache.HASH_SIZE + 8, attributeCount = 16 + MeshCache.HASH_SIZE + 20 + 32;
+    byte[] garbled = valid.clone();
+    ByteBuffer.wrap(garbled).order(ByteOrder.LITTLE_ENDIAN).putInt(vertexCount, -1);
+    assertRefused(garbled);
+    garbled = valid.clone();
+    ByteBuffer.wrap(garbled).order(ByteOrder.LITTLE_ENDIAN).putInt(attributeCount, -1);
+    assertRefused(garbled);
+    garbled = valid.clone();
+    ByteBuffer.wrap(garbled).order(ByteOrder.LITTLE_ENDIAN).putShort(attributeCount + 12, (short) -5);
+    assertRefused(garbled);
+  }
+
+  @Test
+  public void corruptCacheIsRebuilt() throws IOException {
+    Path obj = folder.newFile("quad.obj").toPath();
+    Files.write(obj, OBJ.getBytes(StandardCharsets.US_ASCII));
+    Path directory = folder.newFolder("cache").toPath();
+    MeshCache built = MeshCache.loadOrBuild(FORMAT.producer(), obj, directory, ATTRIBUTES, false);
+
+    Path cacheFile = directory.resolve("quad.obj" + MeshCache.EXTENSION);
+    byte[] garbled = Files.readAllBytes(cacheFile);
+    //an attribute count far larger than the header
+    ByteBuffer.wrap(garbled).order(ByteOrder.LITTLE_ENDIAN).putInt(16 + MeshCache.HASH_SIZE + 20 + 32, 1000000);
+    Files.write(cacheFile, garbled);
+
+    MeshCache rebuilt = MeshCache.loadOrBuild(FORMAT.producer(), obj, directory, ATTRIBUTES, false);
+    assertEquals(built.getVertexCount(), rebuilt.getVertexCount());
+    assertEquals(built.getIndexCount(), rebuilt.getIndexCount());
+    assertEquals(Arrays.asList(ATTRIBUTES), Arrays.asList(rebuilt.getAttributes()));
+  }
+
+  @Test
+  public void concurrentExportsLeaveOneWholeFile() throws Exception {
+    final PolygonMesh<LayoutVertex> mesh = ObjImporter.importFile(FORMAT.producer(),
+            new java.io.ByteArrayInputStream(OBJ.getBytes(StandardCharsets.US_ASCII)), false);
+    final Path directory = folder.newFolder("concurrent").toPath();
+    final Path file = directory.resolve("quad.obj" + MeshCache.EXTENSION);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Object>> writes = new ArrayList<Future<Object>>();
+      for (int i = 0; i < 16; i++) {
+        writes.add(pool.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws IOException {
+            MeshCacheExporter.exportFile(mesh, ATTRIBUTES, new byte[MeshCache.HASH_SIZE], file);
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> write : writes) {
+        write.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(mesh.getVertexCount(), MeshCache.load(file).getVertexCount());
+    //no temporary files are left behind
+    assertEquals(1, directory.toFile().list().length);
+  }
+
+  private byte[] validFile() throws IOException {
+    PolygonMesh<LayoutVertex> mesh = ObjImporter.importFile(FORMAT.producer(),
+            new java.io.ByteArrayInputStream(OBJ.getBytes(StandardCharsets.US_ASCII)), false);
+    Path file = folder.newFile().toPath();
+    MeshCacheExporter.exportFile(mesh, ATTRIBUTES, new byte[MeshCache.HASH_SIZE], file);
+    MeshCache.load(file);
+    return Files.readAllBytes(file);
+  }
+
+  private Path write(byte[] contents) throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, contents);
+    return file;
+  }
+
+  private void assertRefused(byte[] contents) throws IOException {
+    Path file = write(contents);
+    try {
+      MeshCache.load(file);
+      fail("A corrupt mesh cache of " + contents.length + " bytes was loaded");
+    } catch (IOException e) {
+      //expected
+    }
+  }
+}
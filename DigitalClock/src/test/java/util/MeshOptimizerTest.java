@@ -0,0 +1,200 @@
+package util;
+
+import com.jogamp.opengl.GL;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that MeshOptimizer keeps every triangle with its winding, and that
+ * the vertex cache order does not make the ACMR worse
+ */
+public class MeshOptimizerTest {
+  private static final int GRID = 40;
+
+  @Test
+  public void optimizeKeepsTrianglesAndLowersAcmr() {
+    PackedPolygonMesh mesh = shuffledGrid(new Random(18));
+    List<String> before = trianglesByPosition(mesh, mesh.getPrimitives());
+
+    MeshOptimizer.Report report = MeshOptimizer.optimize(mesh, false);
+    assertEquals(before, trianglesByPosition(mesh, mesh.getPrimitives()));
+    assertTrue(report.toString(), report.getAcmrAfter() <= report.getAcmrBefore());
+    assertEquals(report.getAcmrAfter(),
+            MeshOptimizer.acmr(mesh.getPrimitives(), mesh.getVertexCount(), MeshOptimizer.ACMR_CACHE_SIZE), 0);
+    //the duplicated vertices were welded
+    assertEquals((GRID + 1) * (GRID + 1), mesh.getVertexCount());
+  }
+
+  @Test
+  public void cacheOrderKeepsTrianglesAndLowersAcmr() {
+    PackedPolygonMesh mesh = shuffledGrid(new Random(19));
+    MeshOptimizer.weld(mesh);
+    int[] triangles = mesh.getPrimitives();
+    int[] ordered = MeshOptimizer.optimizeVertexCache(triangles, mesh.getVertexCount());
+
+    assertEquals(trianglesByIndex(triangles), trianglesByIndex(ordered));
+    assertTrue(MeshOptimizer.acmr(ordered, mesh.getVertexCount(), MeshOptimizer.ACMR_CACHE_SIZE)
+            <= MeshOptimizer.acmr(triangles, mesh.getVertexCount(), MeshOptimizer.ACMR_CACHE_SIZE));
+  }
+
+  @Test
+  public void stripExpandsToTheSameTriangles() {
+    for (long seed = 0; seed < 20; seed++) {
+      PackedPolygonMesh mesh = shuffledGrid(new Random(seed));
+      MeshOptimizer.weld(mesh);
+      int[] triangles = mesh.getPrimitives();
+      //some triangles on their own, which need degenerate joins
+      triangles = Arrays.copyOf(triangles, triangles.length - 3 * (int) seed);
+
+      int[] strip = MeshOptimizer.toTriangleStrip(triangles, mesh.getVertexCount());
+      assertEquals("seed " + seed, trianglesByIndex(triangles), trianglesByIndex(expandStrip(strip)));
+    }
+  }
+
+  @Test
+  public void stripOptimizedMeshDrawsTheSameTriangles() {
+    PackedPolygonMesh mesh = shuffledGrid(new Random(20));
+    List<String> before = trianglesByPosition(mesh, mesh.getPrimitives());
+
+    MeshOptimizer.optimize(mesh, true);
+    assertEquals(GL.GL_TRIANGLE_STRIP, mesh.getPrimitiveType());
+    assertEquals(before, trianglesByPosition(mesh, expandStrip(mesh.getPrimitives())));
+  }
+
+  @Test
+  public void weldMergesSignedZerosAndNaNs() {
+    float nan = Float.intBitsToFloat(0x7fc00001), otherNan = Float.intBitsToFloat(0x7f800123);
+    float[] positions = {
+            0, 1, 2,
+            -0.0f, 1, 2, //the same as the first
+            nan, 1, 2,
+            otherNan, 1, 2, //a NaN as well, so the same as the one before
+            0, 1, 2.0000002f}; //not the same as anything
+    PackedPolygonMesh mesh = new PackedPolygonMesh(5);
+    mesh.setAttribute("position", 3, positions);
+    mesh.setPrimitives(new int[]{0, 1, 2, 2, 3, 4});
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+
+    assertEquals(3, MeshOptimizer.weld(mesh));
+    assertArrayEquals(new int[]{0, 0, 1, 1, 1, 2}, mesh.getPrimitives());
+    float[] welded = mesh.getAttribute("position");
+    assertEquals(0.0f, welded[0], 0);
+    assertTrue(Float.isNaN(welded[3]));
+    assertEquals(2.0000002f, welded[8], 0);
+  }
+
+  @Test
+  public void fetchOrderFollowsFirstUse() {
+    PackedPolygonMesh mesh = new PackedPolygonMesh(6);
+    mesh.setAttribute("position", 1, new float[]{10, 11, 12, 13, 14, 15});
+    //vertex 1 is never used
+    mesh.setPrimitives(new int[]{4, 2, 5, 5, 2, 0, 3, 0, 2});
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+
+    MeshOptimizer.optimizeVertexFetch(mesh);
+    assertArrayEquals(new int[]{0, 1, 2, 2, 1, 3, 4, 3, 1}, mesh.getPrimitives());
+    assertArrayEquals(new float[]{14, 12, 15, 10, 13, 11}, mesh.getAttribute("position"), 0);
+  }
+
+  /**
+   * A grid of quads, two triangles each, with its triangles and the corners
+   * of each triangle in random order. Every vertex is written once per
+   * triangle using it, so that welding has something to do.
+   */
+  private static PackedPolygonMesh shuffledGrid(Random random) {
+    List<int[]> triangles = new ArrayList<int[]>();
+    for (int y = 0; y < GRID; y++) {
+      for (int x = 0; x < GRID; x++) {
+        int a = y * (GRID + 1) + x, b = a + 1, c = a + GRID + 1, d = c + 1;
+        triangles.add(new int[]{a, b, d});
+        triangles.add(new int[]{a, d, c});
+      }
+    }
+    Collections.shuffle(triangles, random);
+
+    float[] positions = new float[9 * triangles.size()];
+    int[] primitives = new int[3 * triangles.size()];
+    for (int t = 0; t < triangles.size(); t++) {
+      int rotation = random.nextInt(3);
+      for (int k = 0; k < 3; k++) {
+        int corner = triangles.get(t)[(k + rotation) % 3];
+        int v = 3 * t + k;
+        positions[3 * v] = corner % (GRID + 1);
+        positions[3 * v + 1] = corner / (GRID + 1);
+        //-0 for some of them, which is still the same vertex
+        positions[3 * v + 2] = random.nextBoolean() ? 0.0f : -0.0f;
+        primitives[v] = v;
+      }
+    }
+
+    PackedPolygonMesh mesh = new PackedPolygonMesh(3 * triangles.size());
+    mesh.setAttribute("position", 3, positions);
+    mesh.setPrimitives(primitives);
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+    return mesh;
+  }
+
+  /**
+   * The triangles a strip draws, with their winding, leaving out the
+   * degenerate ones
+   */
+  private static int[] expandStrip(int[] strip) {
+    IntArrayList triangles = new IntArrayList(3 * strip.length);
+    for (int i = 0; i + 2 < strip.length; i++) {
+      int a = strip[i], b = strip[i + 1], c = strip[i + 2];
+      if ((a == b) || (b == c) || (a == c))
+        continue;
+      //every other triangle of a strip is drawn with its first two vertices swapped
+      if (i % 2 == 0)
+        triangles.add(a, b, c);
+      else
+        triangles.add(b, a, c);
+    }
+    return triangles.toArray();
+  }
+
+  /**
+   * Each triangle rotated to start at its smallest index, which keeps its
+   * winding, sorted
+   */
+  private static List<String> trianglesByIndex(int[] triangles) {
+    List<String> result = new ArrayList<String>();
+    for (int t = 0; t < triangles.length / 3; t++) {
+      int[] corners = Arrays.copyOfRange(triangles, 3 * t, 3 * t + 3);
+      int first = 0;
+      for (int k = 1; k < 3; k++) {
+        if (corners[k] < corners[first])
+          first = k;
+      }
+      result.add(corners[first] + " " + corners[(first + 1) % 3] + " " + corners[(first + 2) % 3]);
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  /**
+   * The same as trianglesByIndex, with each vertex replaced by its grid
+   * number, so that meshes with different vertices can be compared
+   */
+  private static List<String> trianglesByPosition(PackedPolygonMesh mesh, int[] triangles) {
+    float[] positions = mesh.getAttribute("position");
+    int[] corners = new int[triangles.length];
+    for (int i = 0; i < triangles.length; i++) {
+      int v = triangles[i];
+      corners[i] = (int) positions[3 * v + 1] * (GRID + 1) + (int) positions[3 * v];
+    }
+    return trianglesByIndex(corners);
+  }
+}
@@ -0,0 +1,84 @@
+package util;
+
+import com.jogamp.opengl.GL;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that simplifying a flat grid keeps its area and does not fold any
+ * triangle over
+ */
+public class MeshSimplifierTest {
+  private static final float[] RATIOS = {0.5f, 0.1f, 0.01f};
+
+  @Test
+  public void flatGridKeepsItsArea() {
+    int size = 60;
+    PackedPolygonMesh mesh = grid(size);
+    int[][] lods = MeshSimplifier.buildLods(mesh, RATIOS);
+    float[] positions = mesh.getAttribute("position");
+
+    assertEquals(RATIOS.length + 1, lods.length);
+    double area = (size - 1) * (size - 1);
+    for (int level = 0; level < lods.length; level++) {
+      int[] triangles = lods[level];
+      if (level > 0) {
+        assertTrue("level " + level + " has " + triangles.length / 3 + " triangles",
+                triangles.length < lods[level - 1].length);
+      }
+      double sum = 0;
+      for (int t = 0; t < triangles.length / 3; t++) {
+        double a = signedArea(positions, triangles, t);
+        //no triangle is folded over, so none faces the other way
+        assertTrue("level " + level + ", triangle " + t + ": " + a, a > 0);
+        sum += a;
+      }
+      assertEquals("area of level " + level, area, sum, 1e-6 * area);
+    }
+  }
+
+  /**
+   * A flat grid of size x size vertices in the z = 0 plane, facing +z
+   */
+  static PackedPolygonMesh grid(int size) {
+    float[] positions = new float[3 * size * size];
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        positions[3 * (y * size + x)] = x;
+        positions[3 * (y * size + x) + 1] = y;
+      }
+    }
+    int[] triangles = new int[6 * (size - 1) * (size - 1)];
+    int i = 0;
+    for (int y = 0; y < size - 1; y++) {
+      for (int x = 0; x < size - 1; x++) {
+        int p = y * size + x;
+        triangles[i++] = p;
+        triangles[i++] = p + 1;
+        triangles[i++] = p + size + 1;
+        triangles[i++] = p;
+        triangles[i++] = p + size + 1;
+        triangles[i++] = p + size;
+      }
+    }
+    return mesh(positions, triangles);
+  }
+
+  private static PackedPolygonMesh mesh(float[] positions, int[] triangles) {
+    PackedPolygonMesh mesh = new PackedPolygonMesh(positions.length / 3);
+    mesh.setAttribute("position", 3, positions);
+    mesh.setPrimitives(triangles);
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+    return mesh;
+  }
+
+  private static double signedArea(float[] positions, int[] triangles, int t) {
+    int a = 3 * triangles[3 * t], b = 3 * triangles[3 * t + 1], c = 3 * triangles[3 * t + 2];
+    double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1];
+    double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1];
+    return 0.5 * (ux * vy - uy * vx);
+  }
+}
@@ -0,0 +1,183 @@
+package util;
+
+import com.jogamp.opengl.GL;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports a mesh of a few million triangles sequentially and in parallel,
+ * checks that both files are the same, and imports them again with
+ * FastObjImporter. A smaller mesh is also read back with the original,
+ * Scanner based ObjImporter.
+ */
+public class ObjExportRoundTripTest {
+  private static final int VERTICES = 1000000;
+  private static final int TRIANGLES = 3000000;
+  //small enough for the original importer, which is much slower, to read in a few seconds
+  private static final int SMALL_VERTICES = 5000;
+  private static final int SMALL_TRIANGLES = 15000;
+  private static final VertexFormat FORMAT = VertexFormat.of(new String[]{"position", "normal", "texcoord"},
+          new int[]{4, 4, 4});
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void exportsTheSameFileInParallelAndReadsItBackExactly() throws IOException {
+    PackedPolygonMesh mesh = generateMesh(new Random(20), VERTICES, TRIANGLES);
+
+    Path sequential = folder.newFile("sequential.obj").toPath();
+    Path parallel = folder.newFile("parallel.obj").toPath();
+    assertTrue(ObjExporter.exportFile(mesh, new BufferedOutputStream(Files.newOutputStream(sequential)), false));
+    assertTrue(ObjExporter.exportFile(mesh, new BufferedOutputStream(Files.newOutputStream(parallel)), true));
+    assertSameContents(sequential, parallel);
+
+    InputStream in = new BufferedInputStream(Files.newInputStream(sequential));
+    PackedPolygonMesh imported;
+    try {
+      imported = FastObjImporter.importPackedFile(in, false);
+    } finally {
+      in.close();
+    }
+    assertSameMesh(mesh, imported);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      assertSameMesh(mesh, FastObjImporter.importPackedFileParallel(parallel, false, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void originalImporterReadsTheExportBack() throws IOException {
+    PackedPolygonMesh mesh = generateMesh(new Random(21), SMALL_VERTICES, SMALL_TRIANGLES);
+    Path file = folder.newFile("small.obj").toPath();
+    assertTrue(ObjExporter.exportFile(mesh, new BufferedOutputStream(Files.newOutputStream(file)), true));
+
+    InputStream in = new BufferedInputStream(Files.newInputStream(file));
+    PolygonMesh<LayoutVertex> imported;
+    try {
+      imported = ObjImporter.importFile(FORMAT.producer(), in, false);
+    } finally {
+      in.close();
+    }
+
+    assertEquals(mesh.getVertexCount(), imported.getVertexCount());
+    float[] vertices = FORMAT.interleave(imported.getVertexAttributes());
+    int stride = FORMAT.getStride();
+    int position = FORMAT.getLayout().getOffset(FORMAT.getLayout().getSlot("position"));
+    int normal = FORMAT.getLayout().getOffset(FORMAT.getLayout().getSlot("normal"));
+    int texcoord = FORMAT.getLayout().getOffset(FORMAT.getLayout().getSlot("texcoord"));
+    float[] positions = new float[4 * SMALL_VERTICES], normals = new float[4 * SMALL_VERTICES];
+    float[] texcoords = new float[4 * SMALL_VERTICES];
+    for (int i = 0; i < SMALL_VERTICES; i++) {
+      System.arraycopy(vertices, i * stride + position, positions, 4 * i, 4);
+      System.arraycopy(vertices, i * stride + normal, normals, 4 * i, 4);
+      System.arraycopy(vertices, i * stride + texcoord, texcoords, 4 * i, 4);
+    }
+    assertSameBits("position", mesh.getAttribute("position"), positions);
+    assertSameBits("texcoord", mesh.getAttribute("texcoord"), texcoords);
+    assertArrayEquals(mesh.getAttribute("normal"), normals, 1e-6f);
+
+    int[] primitives = new int[imported.getPrimitives().size()];
+    for (int i = 0; i < primitives.length; i++) {
+      primitives[i] = imported.getPrimitives().get(i);
+    }
+    assertArrayEquals(mesh.getPrimitives(), primitives);
+  }
+
+  /**
+   * Random positions, texture coordinates and unit normals, and random
+   * triangles between them. The 4th floats are those the importer gives
+   */
+  private static PackedPolygonMesh generateMesh(Random random, int vertices, int triangles) {
+    float[] positions = new float[4 * vertices];
+    float[] texcoords = new float[4 * vertices];
+    float[] normals = new float[4 * vertices];
+    for (int i = 0; i < vertices; i++) {
+      positions[4 * i] = 2000 * random.nextFloat() - 1000;
+      positions[4 * i + 1] = (float) random.nextGaussian();
+      positions[4 * i + 2] = random.nextInt(100000) / 100.0f;
+      positions[4 * i + 3] = 1;
+      texcoords[4 * i] = random.nextFloat();
+      texcoords[4 * i + 1] = random.nextFloat();
+      texcoords[4 * i + 2] = 0;
+      texcoords[4 * i + 3] = 1;
+      float x = (float) random.nextGaussian(), y = (float) random.nextGaussian(), z = (float) random.nextGaussian();
+      float length = (float) Math.sqrt(x * x + y * y + z * z);
+      normals[4 * i] = x / length;
+      normals[4 * i + 1] = y / length;
+      normals[4 * i + 2] = z / length;
+    }
+    int[] primitives = new int[3 * triangles];
+    for (int i = 0; i < primitives.length; i++) {
+      primitives[i] = random.nextInt(vertices);
+    }
+
+    PackedPolygonMesh mesh = new PackedPolygonMesh(vertices);
+    mesh.setAttribute("position", 4, positions);
+    mesh.setAttribute("normal", 4, normals);
+    mesh.setAttribute("texcoord", 4, texcoords);
+    mesh.setPrimitives(primitives);
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+    return mesh;
+  }
+
+  private static void assertSameMesh(PackedPolygonMesh expected, PackedPolygonMesh actual) {
+    assertEquals(expected.getVertexCount(), actual.getVertexCount());
+    assertSameBits("position", expected.getAttribute("position"), actual.getAttribute("position"));
+    assertSameBits("texcoord", expected.getAttribute("texcoord"), actual.getAttribute("texcoord"));
+    assertArrayEquals(expected.getPrimitives(), actual.getPrimitives());
+    //normals are normalized again when read, which may change the last bit
+    assertArrayEquals(expected.getAttribute("normal"), actual.getAttribute("normal"), 1e-6f);
+  }
+
+  private static void assertSameBits(String attribute, float[] expected, float[] actual) {
+    assertEquals(attribute, expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i]))
+        assertEquals(attribute + " " + i, Float.toString(expected[i]), Float.toString(actual[i]));
+    }
+  }
+
+  private static void assertSameContents(Path expected, Path actual) throws IOException {
+    assertEquals(Files.size(expected), Files.size(actual));
+    InputStream a = new BufferedInputStream(Files.newInputStream(expected));
+    InputStream b = new BufferedInputStream(Files.newInputStream(actual));
+    try {
+      byte[] bufferA = new byte[1 << 16], bufferB = new byte[1 << 16];
+      long offset = 0;
+      int read;
+      while ((read = a.read(bufferA)) > 0) {
+        int got = 0;
+        while (got < read) {
+          got += b.read(bufferB, got, read - got);
+        }
+        for (int i = 0; i < read; i++) {
+          if (bufferA[i] != bufferB[i])
+            assertEquals("byte " + (offset + i), bufferA[i], bufferB[i]);
+        }
+        offset += read;
+      }
+    } finally {
+      a.close();
+      b.close();
+    }
+  }
+}
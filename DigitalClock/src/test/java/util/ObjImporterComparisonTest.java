@@ -0,0 +1,187 @@
+package util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Imports the same generated OBJ files with the original ObjImporter and with
+ * FastObjImporter, sequentially and in parallel, and checks that the meshes
+ * are the same
+ *
+ * The original importer does not resolve negative indices, so a file with
+ * relative indices is compared with the same file written with the absolute
+ * indices they stand for.
+ */
+public class ObjImporterComparisonTest {
+  private static final VertexFormat FORMAT = VertexFormat.of(new String[]{"position", "normal", "texcoord"},
+          new int[]{4, 4, 4});
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void positionsOnly() throws IOException {
+    compare(new Random(1), 2000, false, false, false, false);
+  }
+
+  @Test
+  public void texcoordsAndNormals() throws IOException {
+    compare(new Random(2), 2000, true, true, false, false);
+  }
+
+  @Test
+  public void relativeIndices() throws IOException {
+    compare(new Random(3), 2000, true, true, true, false);
+  }
+
+  @Test
+  public void scaledAndCentered() throws IOException {
+    compare(new Random(4), 2000, true, false, true, true);
+  }
+
+  @Test
+  public void largeFileInParallelChunks() throws IOException {
+    //large enough to be split into several chunks
+    compare(new Random(5), 60000, true, true, true, false);
+  }
+
+  private void compare(Random random, int vertices, boolean texcoords, boolean normals, boolean relative,
+                       boolean scaleAndCenter) throws IOException {
+    String[] files = generate(random, vertices, texcoords, normals, relative);
+    byte[] absolute = files[0].getBytes(StandardCharsets.US_ASCII);
+    byte[] newFile = files[1].getBytes(StandardCharsets.US_ASCII);
+
+    PolygonMesh<LayoutVertex> expected = ObjImporter.importFile(FORMAT.producer(), new ByteArrayInputStream(absolute),
+            scaleAndCenter);
+    assertEquals(vertices, expected.getVertexCount());
+
+    assertSameMesh(expected, FastObjImporter.importFile(FORMAT.producer(), new ByteArrayInputStream(newFile),
+            scaleAndCenter));
+
+    Path file = folder.newFile().toPath();
+    Files.write(file, newFile);
+    assertSameMesh(expected, FastObjImporter.importFile(FORMAT.producer(), file, scaleAndCenter));
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      assertSameMesh(expected, FastObjImporter.importFileParallel(FORMAT.producer(), file, scaleAndCenter, pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Write vertices in blocks, each followed by faces of 3 to 5 vertices among
+   * those written so far.
+   *
+   * @return the file with absolute indices, and the same file with the
+   * indices as asked for
+   */
+  private static String[] generate(Random random, int vertices, boolean texcoords, boolean normals,
+                                   boolean relative) {
+    StringBuilder absolute = new StringBuilder("# generated\n");
+    StringBuilder other = new StringBuilder("# generated\n");
+    int written = 0;
+    while (written < vertices) {
+      int block = Math.min(vertices - written, 1 + random.nextInt(200));
+      StringBuilder lines = new StringBuilder();
+      for (int i = 0; i < block; i++) {
+        lines.append("v ").append(number(random)).append(' ').append(number(random)).append(' ')
+                .append(number(random));
+        if (random.nextInt(10) == 0)
+          lines.append(' ').append(1 + random.nextInt(4));
+        lines.append(random.nextBoolean() ? "\n" : "\r\n");
+        if (texcoords) {
+          lines.append("vt ").append(number(random)).append(' ').append(number(random));
+          if (random.nextBoolean())
+            lines.append(' ').append(number(random));
+          lines.append('\n');
+        }
+        if (normals)
+          lines.append("vn ").append(number(random)).append(' ').append(number(random)).append(' ')
+                  .append(number(random)).append('\n');
+      }
+      if (random.nextInt(5) == 0)
+        lines.append("\n# a comment\n");
+      absolute.append(lines);
+      other.append(lines);
+      written += block;
+
+      int faces = random.nextInt(2 * block);
+      for (int f = 0; f < faces; f++) {
+        absolute.append('f');
+        other.append('f');
+        int corners = 3 + random.nextInt(3);
+        for (int c = 0; c < corners; c++) {
+          int index = random.nextInt(written);
+          boolean negative = relative && random.nextBoolean();
+          String a = Integer.toString(index + 1);
+          String o = negative ? Integer.toString(index - written) : a;
+          absolute.append(' ').append(corner(a, texcoords, normals));
+          other.append(' ').append(corner(o, texcoords, normals));
+        }
+        absolute.append('\n');
+        other.append('\n');
+      }
+    }
+    return new String[]{absolute.toString(), other.toString()};
+  }
+
+  /**
+   * v, v/vt, v//vn or v/vt/vn, with the same index for all of them
+   */
+  private static String corner(String index, boolean texcoords, boolean normals) {
+    if (texcoords && normals)
+      return index + "/" + index + "/" + index;
+    if (normals)
+      return index + "//" + index;
+    if (texcoords)
+      return index + "/" + index;
+    return index;
+  }
+
+  /**
+   * A number written in one of several ways, including with an exponent
+   */
+  private static String number(Random random) {
+    float value = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(7) - 3));
+    switch (random.nextInt(6)) {
+      case 0:
+        return Float.toString(value);
+      case 1:
+        return String.format(Locale.ROOT, "%.6f", value);
+      case 2:
+        return String.format(Locale.ROOT, "%.3e", value);
+      case 3:
+        return String.format(Locale.ROOT, "%.5E", value).replace("E-0", "E-").replace("E+0", "E");
+      case 4:
+        return Integer.toString(random.nextInt(2001) - 1000);
+      default:
+        return Float.toString(value).replace("E", "e");
+    }
+  }
+
+  private static void assertSameMesh(PolygonMesh<LayoutVertex> expected, PolygonMesh<LayoutVertex> actual) {
+    assertEquals(expected.getVertexCount(), actual.getVertexCount());
+    assertEquals(expected.getPrimitiveType(), actual.getPrimitiveType());
+    assertEquals(expected.getPrimitives(), actual.getPrimitives());
+    float[] a = FORMAT.interleave(expected.getVertexAttributes());
+    float[] b = FORMAT.interleave(actual.getVertexAttributes());
+    for (int i = 0; i < a.length; i++) {
+      if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i]))
+        assertEquals("vertex " + i / FORMAT.getStride() + ", float " + i % FORMAT.getStride(),
+                Float.toString(a[i]), Float.toString(b[i]));
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the floats written by ObjWriter read back as the same floats,
+ * both with Float.parseFloat and with ObjParser
+ */
+public class ObjWriterTest {
+  private static final int COUNT = 300000;
+
+  @Test
+  public void randomBitPatternsReadBack() throws IOException {
+    Random random = new Random(1);
+    float[] values = new float[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      do {
+        values[i] = Float.intBitsToFloat(random.nextInt());
+      } while (Float.isNaN(values[i]));
+    }
+    assertReadBack(values);
+  }
+
+  @Test
+  public void subnormalsReadBack() throws IOException {
+    Random random = new Random(2);
+    float[] values = new float[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      int bits = 1 + random.nextInt(0x007FFFFF);
+      values[i] = Float.intBitsToFloat(random.nextBoolean() ? bits : bits | 0x80000000);
+    }
+    assertReadBack(values);
+  }
+
+  @Test
+  public void everyPowerOfTenAndEdgeReadsBack() throws IOException {
+    float[] values = {0.0f, -0.0f, Float.MIN_VALUE, -Float.MIN_VALUE, Float.MIN_NORMAL,
+            Math.nextDown(Float.MIN_NORMAL), Float.MAX_VALUE, -Float.MAX_VALUE,
+            Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 0.1f, 0.2f, 0.3f, 1.0f / 3, 100, 1e7f, 16777217,
+            123456789, 1e-13f, 1e22f, 1e23f, 1e-14f};
+    assertReadBack(values);
+
+    float[] powers = new float[2 * 90];
+    for (int i = 0; i < 90; i++) {
+      float p = Float.parseFloat("1e" + (i - 45));
+      powers[2 * i] = p;
+      powers[2 * i + 1] = Math.nextUp(p);
+    }
+    assertReadBack(powers);
+  }
+
+  @Test
+  public void decimalsAreShortest() throws IOException {
+    float[] values = {0.5f, 0.1f, 1.25f, 1000, 3.14159f, 2.5e-5f, -7.75f};
+    String[] expected = {"0.5", "0.1", "1.25", "1000", "3.14159", "0.000025", "-7.75"};
+    for (int i = 0; i < values.length; i++) {
+      ObjWriter writer = new ObjWriter(null, 0);
+      writer.write(values[i]);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writer.writeTo(out);
+      assertEquals(expected[i], out.toString("US-ASCII"));
+    }
+  }
+
+  /**
+   * Write the values as the positions of an OBJ file, three to a vertex, and
+   * read them back one by one with Float.parseFloat, and as a file with
+   * ObjParser
+   */
+  private static void assertReadBack(float[] values) throws IOException {
+    int vertices = (values.length + 2) / 3;
+    float[] padded = new float[3 * vertices];
+    System.arraycopy(values, 0, padded, 0, values.length);
+
+    ObjWriter writer = new ObjWriter(null, 0);
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    ByteArrayOutputStream number = new ByteArrayOutputStream();
+    for (int i = 0; i < vertices; i++) {
+      file.write('v');
+      for (int j = 0; j < 3; j++) {
+        writer.write(padded[3 * i + j]);
+        writer.writeTo(number);
+        String text = number.toString("US-ASCII");
+        assertSame(text, padded[3 * i + j], Float.parseFloat(text));
+        file.write(' ');
+        number.writeTo(file);
+        number.reset();
+      }
+      file.write('\n');
+    }
+
+    PackedPolygonMesh mesh = FastObjImporter.importPackedFile(new ByteArrayInputStream(file.toByteArray()), false);
+    float[] positions = mesh.getAttribute("position");
+    assertEquals(vertices, mesh.getVertexCount());
+    for (int i = 0; i < vertices; i++) {
+      for (int j = 0; j < 3; j++) {
+        assertSame("vertex " + i, padded[3 * i + j], positions[4 * i + j]);
+      }
+    }
+  }
+
+  private static void assertSame(String message, float expected, float actual) {
+    assertTrue(message + ": expected " + expected + " but was " + actual,
+            Float.floatToRawIntBits(expected) == Float.floatToRawIntBits(actual));
+  }
+}
@@ -0,0 +1,177 @@
+package util;
+
+import com.jogamp.opengl.GL3;
+import org.joml.Matrix4f;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks what ObjectInstance asks of OpenGL, through a GL3 that only records
+ * the calls made to it
+ */
+public class ObjectInstanceTest {
+  private static final VertexFormat FORMAT = VertexFormat.of(new String[]{"position", "normal", "texcoord"},
+          new int[]{4, 4, 4});
+  private static final String OBJ = "v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0\nvt 0 0\nvt 1 0\nvt 0 1\nvt 1 1\n"
+          + "f 1/1 2/2 3/3\nf 2/2 4/4 3/3\n";
+
+  /**
+   * The calls made to a GL3, each as its name followed by its int arguments
+   */
+  private static class RecordingGL implements InvocationHandler {
+    final List<String> calls = new ArrayList<String>();
+    int nextName = 1;
+
+    GL3 gl() {
+      return (GL3) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{GL3.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      StringBuilder call = new StringBuilder(method.getName());
+      if (args != null) {
+        for (Object arg : args) {
+          if ((arg instanceof Integer) || (arg instanceof Long) || (arg instanceof Boolean))
+            call.append(' ').append(arg);
+        }
+      }
+      calls.add(call.toString());
+      if (method.getName().startsWith("glGen")) {
+        IntBuffer names = (IntBuffer) args[1];
+        for (int i = 0; i < (Integer) args[0]; i++) {
+          names.put(names.position() + i, nextName++);
+        }
+      }
+      Class<?> type = method.getReturnType();
+      if (type == boolean.class)
+        return true;
+      if (type == int.class)
+        return 0;
+      if (type == long.class)
+        return 0L;
+      return null;
+    }
+
+    List<String> named(String prefix) {
+      List<String> found = new ArrayList<String>();
+      for (String call : calls) {
+        if (call.startsWith(prefix))
+          found.add(call);
+      }
+      return found;
+    }
+  }
+
+  @Test
+  public void cachedMeshSetsTheSamePointersAsItsLayout() {
+    PolygonMesh<LayoutVertex> mesh = mesh();
+    //the cache holds the normal in between, which is not drawn
+    MeshCache cache = MeshCache.build(mesh, new String[]{"position", "normal", "texcoord"});
+
+    RecordingGL cached = new RecordingGL();
+    new ObjectInstance(cached.gl(), locations(), mapping("position", "texcoord"), cache, "cached");
+    assertEquals(Arrays.asList(
+            "glVertexAttribPointer 0 4 " + GL3.GL_FLOAT + " false 48 0",
+            "glVertexAttribPointer 1 4 " + GL3.GL_FLOAT + " false 48 32"),
+            cached.named("glVertexAttribPointer"));
+    assertEquals(Arrays.asList("glEnableVertexAttribArray 0", "glEnableVertexAttribArray 1"),
+            cached.named("glEnableVertexAttribArray"));
+
+    //a mesh uploaded from a PolygonMesh has only the attributes drawn
+    RecordingGL packed = new RecordingGL();
+    new ObjectInstance(packed.gl(), locations(), mapping("position", "texcoord"), mesh, "packed");
+    assertEquals(Arrays.asList(
+            "glVertexAttribPointer 0 4 " + GL3.GL_FLOAT + " false 32 0",
+            "glVertexAttribPointer 1 4 " + GL3.GL_FLOAT + " false 32 16"),
+            packed.named("glVertexAttribPointer"));
+  }
+
+  @Test
+  public void missingCachedAttributeMakesNoBuffers() {
+    MeshCache cache = MeshCache.build(mesh(), new String[]{"position"});
+    RecordingGL recording = new RecordingGL();
+    try {
+      new ObjectInstance(recording.gl(), locations(), mapping("position", "texcoord"), cache, "cached");
+      fail("A mapping to an attribute the cache lacks was accepted");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+    assertTrue(recording.calls.toString(), recording.calls.isEmpty());
+  }
+
+  @Test
+  public void selectLodFollowsTheSizeOnScreen() {
+    //a 59 x 59 grid, with levels keeping about 1/2, 1/10 and 1/100 of its triangles
+    PackedPolygonMesh grid = MeshSimplifierTest.grid(60);
+    Map<String, String> mapping = new LinkedHashMap<String, String>();
+    mapping.put("vPosition", "position");
+    ObjectInstance object = new ObjectInstance(new RecordingGL().gl(), locations(), mapping, grid,
+            new float[]{0.5f, 0.1f, 0.01f}, "grid");
+    assertEquals(4, object.getLodCount());
+
+    //the grid spans the given fraction of a 1024 pixel viewport, against a reference size of 512
+    assertEquals(0, object.selectLod(onScreen(1), 1024, 1024));
+    assertEquals(0, object.selectLod(onScreen(0.5f), 1024, 1024));
+    assertEquals(1, object.selectLod(onScreen(0.3f), 1024, 1024));
+    assertEquals(2, object.selectLod(onScreen(0.1f), 1024, 1024));
+    assertEquals(3, object.selectLod(onScreen(0.02f), 1024, 1024));
+    //a smaller reference size calls for more detail
+    object.setLodReferenceSize(128);
+    assertEquals(0, object.selectLod(onScreen(0.3f), 1024, 1024));
+
+    //the eye is in the middle of the grid, so part of it is behind
+    Matrix4f inside = new Matrix4f().perspective(1, 1, 0.1f, 100).rotateX((float) Math.PI / 2)
+            .translate(-30, -30, 0);
+    assertEquals(0, object.selectLod(inside, 1024, 1024));
+
+    //without levels there is only the full mesh
+    ObjectInstance plain = new ObjectInstance(new RecordingGL().gl(), locations(), mapping, grid, "plain");
+    assertEquals(0, plain.selectLod(onScreen(0.02f), 1024, 1024));
+  }
+
+  /**
+   * The projection times the modelview that draws the 59 x 59 grid across the
+   * given fraction of the viewport
+   */
+  private static Matrix4f onScreen(float fraction) {
+    return new Matrix4f().scale(fraction).scale(2 / 59.0f).translate(-29.5f, -29.5f, 0);
+  }
+
+  static PolygonMesh<LayoutVertex> mesh() {
+    try {
+      return ObjImporter.importFile(FORMAT.producer(), new ByteArrayInputStream(OBJ.getBytes(StandardCharsets.US_ASCII)),
+              false);
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static ShaderLocationsVault locations() {
+    ShaderLocationsVault locations = new ShaderLocationsVault();
+    locations.addAttribute("vPosition", 0);
+    locations.addAttribute("vTexCoord", 1);
+    return locations;
+  }
+
+  private static Map<String, String> mapping(String position, String texcoord) {
+    Map<String, String> mapping = new LinkedHashMap<String, String>();
+    mapping.put("vPosition", position);
+    mapping.put("vTexCoord", texcoord);
+    return mapping;
+  }
+}
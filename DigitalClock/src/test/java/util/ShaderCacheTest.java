@@ -0,0 +1,244 @@
+package util;
+
+import com.jogamp.opengl.GL3;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the shader cache over a simulated driver, which compiles anything,
+ * hands out a made-up binary, and can be told to refuse binaries
+ */
+public class ShaderCacheTest {
+  private static final String VERTEX = "#version 330\nvoid main() {}\n";
+  private static final String FRAGMENT = "#version 330\nout vec4 color;\nvoid main() { color = vec4(1); }\n";
+  private static final int BINARY_FORMAT = 0x1234;
+  private static final int BINARY_LENGTH = 100;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * A GL3 that simulates what the shader cache and ShaderProgram ask of a
+   * driver with program binaries
+   */
+  private static class SimulatedGL implements InvocationHandler {
+    String renderer = "Simulated renderer", version = "3.3 Simulated";
+    boolean refuseBinaries;
+    int compiles, binariesGiven;
+    private int nextName = 1;
+    private boolean fromBinary;
+
+    GL3 gl() {
+      return (GL3) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{GL3.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      String name = method.getName();
+      if (name.equals("isFunctionAvailable"))
+        return true;
+      if (name.equals("glGetIntegerv")) {
+        //GL_NUM_PROGRAM_BINARY_FORMATS
+        ((IntBuffer) args[1]).put(0, 1);
+      } else if (name.equals("glGetString")) {
+        int which = (Integer) args[0];
+        return (which == GL3.GL_RENDERER) ? renderer : (which == GL3.GL_VERSION) ? version : "Simulated vendor";
+      } else if (name.equals("glCreateProgram") || name.equals("glCreateShader")) {
+        return nextName++;
+      } else if (name.equals("glCompileShader")) {
+        compiles++;
+      } else if (name.equals("glLinkProgram")) {
+        fromBinary = false;
+      } else if (name.equals("glProgramBinary")) {
+        fromBinary = true;
+        binariesGiven++;
+      } else if (name.equals("glGetShaderiv")) {
+        ((IntBuffer) args[2]).put(0, 1);
+      } else if (name.equals("glGetProgramiv")) {
+        int parameter = (Integer) args[1];
+        IntBuffer out = (IntBuffer) args[2];
+        if (parameter == GL3.GL_LINK_STATUS)
+          out.put(0, (fromBinary && refuseBinaries) ? GL3.GL_FALSE : GL3.GL_TRUE);
+        else if (parameter == GL3.GL_PROGRAM_BINARY_LENGTH)
+          out.put(0, BINARY_LENGTH);
+      } else if (name.equals("glGetProgramBinary")) {
+        ((IntBuffer) args[2]).put(0, BINARY_LENGTH);
+        ((IntBuffer) args[3]).put(0, BINARY_FORMAT);
+        ByteBuffer binary = (ByteBuffer) args[4];
+        for (int i = 0; i < BINARY_LENGTH; i++) {
+          binary.put(i, (byte) i);
+        }
+      }
+
+      Class<?> type = method.getReturnType();
+      if (type == int.class)
+        return 0;
+      if (type == boolean.class)
+        return false;
+      return null;
+    }
+  }
+
+  @Test
+  public void storedBinaryHasTheHeaderAndIsLoadedNextTime() throws IOException {
+    SimulatedGL driver = new SimulatedGL();
+    GL3 gl = driver.gl();
+    ShaderCache cache = new ShaderCache(folder.getRoot().toPath().resolve("shaders"));
+
+    assertTrue(build(gl, cache));
+    assertEquals(2, driver.compiles);
+    assertEquals(1, cache.getColdPrograms());
+
+    Path file = onlyFile(cache.getDirectory());
+    assertTrue(file.getFileName().toString().endsWith(ShaderCache.EXTENSION));
+    ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(ShaderCache.HEADER_SIZE + BINARY_LENGTH, contents.limit());
+    assertEquals("SHBN", new String(Arrays.copyOf(contents.array(), 4), "US-ASCII"));
+    assertEquals(ShaderCache.MAGIC, contents.getInt(0));
+    assertEquals(ShaderCache.VERSION, contents.getInt(4));
+    assertEquals(BINARY_FORMAT, contents.getInt(8));
+    assertEquals(BINARY_LENGTH, contents.getInt(12));
+    for (int i = 0; i < BINARY_LENGTH; i++) {
+      assertEquals((byte) i, contents.get(ShaderCache.HEADER_SIZE + i));
+    }
+
+    //the second time nothing is compiled
+    assertTrue(build(gl, cache));
+    assertEquals(2, driver.compiles);
+    assertEquals(1, driver.binariesGiven);
+    assertEquals(1, cache.getWarmPrograms());
+  }
+
+  @Test
+  public void refusedBinaryIsDeletedAndRecompiled() throws IOException {
+    SimulatedGL driver = new SimulatedGL();
+    GL3 gl = driver.gl();
+    ShaderCache cache = new ShaderCache(folder.getRoot().toPath());
+    assertTrue(build(gl, cache));
+    Path file = onlyFile(cache.getDirectory());
+
+    driver.refuseBinaries = true;
+    byte[] key = cache.key(gl, new int[]{GL3.GL_VERTEX_SHADER, GL3.GL_FRAGMENT_SHADER}, new String[]{VERTEX, FRAGMENT});
+    assertEquals(0, cache.loadProgram(gl, key));
+    assertFalse(Files.exists(file));
+    assertEquals(1, cache.getRejectedBinaries());
+
+    //stored again after being compiled
+    assertTrue(build(gl, cache));
+    assertEquals(4, driver.compiles);
+    assertEquals(2, cache.getColdPrograms());
+    assertTrue(Files.exists(file));
+
+    //and refused again, within the one build
+    assertTrue(build(gl, cache));
+    assertEquals(6, driver.compiles);
+    assertEquals(2, cache.getRejectedBinaries());
+    assertEquals(0, cache.getWarmPrograms());
+  }
+
+  @Test
+  public void corruptFilesAreDeletedAndRecompiled() throws IOException {
+    SimulatedGL driver = new SimulatedGL();
+    GL3 gl = driver.gl();
+    ShaderCache cache = new ShaderCache(folder.getRoot().toPath());
+    assertTrue(build(gl, cache));
+    Path file = onlyFile(cache.getDirectory());
+    byte[] valid = Files.readAllBytes(file);
+
+    List<byte[]> corrupt = new ArrayList<byte[]>();
+    corrupt.add(Arrays.copyOf(valid, ShaderCache.HEADER_SIZE - 1)); //no whole header
+    corrupt.add(Arrays.copyOf(valid, valid.length - 1)); //shorter than the header says
+    corrupt.add(Arrays.copyOf(valid, valid.length + 1)); //longer than the header says
+    for (int field = 0; field < 2; field++) {
+      byte[] garbled = valid.clone();
+      garbled[4 * field] ^= 1; //the magic or the version
+      corrupt.add(garbled);
+    }
+
+    int compiles = driver.compiles;
+    for (byte[] contents : corrupt) {
+      Files.write(file, contents);
+      assertTrue(build(gl, cache));
+      compiles += 2;
+      assertEquals(compiles, driver.compiles);
+      //replaced with a good one
+      assertArrayEquals(valid, Files.readAllBytes(file));
+    }
+    //none of them was handed to the driver
+    assertEquals(0, driver.binariesGiven);
+  }
+
+  @Test
+  public void keyChangesWithTheDriverAndTheSources() {
+    SimulatedGL driver = new SimulatedGL();
+    GL3 gl = driver.gl();
+    ShaderCache cache = new ShaderCache(folder.getRoot().toPath());
+    int[] types = {GL3.GL_VERTEX_SHADER, GL3.GL_FRAGMENT_SHADER};
+    String[] sources = {VERTEX, FRAGMENT};
+
+    byte[] key = cache.key(gl, types, sources);
+    assertEquals(32, key.length);
+    assertArrayEquals(key, cache.key(gl, types, sources.clone()));
+
+    driver.renderer = "Another renderer";
+    byte[] otherRenderer = cache.key(gl, types, sources);
+    assertFalse(Arrays.equals(key, otherRenderer));
+
+    driver.version = "4.6 Simulated";
+    byte[] otherVersion = cache.key(gl, types, sources);
+    assertFalse(Arrays.equals(otherRenderer, otherVersion));
+
+    driver.renderer = "Simulated renderer";
+    driver.version = "3.3 Simulated";
+    assertArrayEquals(key, cache.key(gl, types, sources));
+    assertFalse(Arrays.equals(key, cache.key(gl, types, new String[]{VERTEX, FRAGMENT + " "})));
+    //the same sources as other shader types
+    assertFalse(Arrays.equals(key, cache.key(gl, new int[]{GL3.GL_FRAGMENT_SHADER, GL3.GL_VERTEX_SHADER}, sources)));
+    //the same text split differently between the shaders
+    assertFalse(Arrays.equals(key, cache.key(gl, types, new String[]{VERTEX + FRAGMENT, ""})));
+  }
+
+  /**
+   * Build the program as ShaderProgram.createProgram() does, from sources
+   * given here
+   */
+  private static boolean build(GL3 gl, ShaderCache cache) {
+    ShaderProgram program = new ShaderProgram();
+    program.startProgram(gl, "test.vert", VERTEX, "test.frag", FRAGMENT, cache);
+    return program.finishProgram(gl);
+  }
+
+  private static Path onlyFile(Path directory) throws IOException {
+    List<Path> files = new ArrayList<Path>();
+    DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+    try {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    } finally {
+      stream.close();
+    }
+    assertEquals(files.toString(), 1, files.size());
+    return files.get(0);
+  }
+}
@@ -0,0 +1,126 @@
+package util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks ShaderLocationsVault against a HashMap, through its growth and with
+ * names whose hash codes collide
+ */
+public class ShaderLocationsVaultTest {
+  //"Aa" and "BB" have the same hash code, and so do all strings made of them
+  private static final String[] COLLIDING = {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa", "AaAaAa", "BBBBBB"};
+
+  @Test
+  public void matchesAHashMap() throws Exception {
+    ShaderLocationsVault vault = new ShaderLocationsVault();
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    Random random = new Random(23);
+    for (int i = 0; i < 5000; i++) {
+      String name = (i % 7 == 0) ? COLLIDING[random.nextInt(COLLIDING.length)] : "u" + random.nextInt(3000);
+      int location = random.nextInt(100);
+      if (random.nextBoolean())
+        vault.addUniform(name, location);
+      else
+        vault.add(name, location);
+      expected.put(name, location);
+
+      assertEquals(expected.size(), vault.size());
+      //never more than half full
+      assertTrue(2 * vault.size() <= tableSize(vault));
+    }
+    for (Map.Entry<String, Integer> e : expected.entrySet()) {
+      assertTrue(e.getKey(), vault.contains(e.getKey()));
+      assertEquals(e.getKey(), (int) e.getValue(), vault.getLocation(e.getKey()));
+    }
+  }
+
+  @Test
+  public void everyNameIsFoundAfterEachGrowth() throws Exception {
+    ShaderLocationsVault vault = new ShaderLocationsVault();
+    int grown = 0, size = tableSize(vault);
+    for (int i = 0; i < 200; i++) {
+      String name = (i < COLLIDING.length) ? COLLIDING[i] : "var" + i;
+      vault.addAttribute(name, i);
+      if (tableSize(vault) != size) {
+        //it grows when the name added would make it more than half full
+        assertEquals(size / 2 + 1, vault.size());
+        size = tableSize(vault);
+        grown++;
+      }
+      for (int j = 0; j <= i; j++) {
+        String added = (j < COLLIDING.length) ? COLLIDING[j] : "var" + j;
+        assertEquals(added, j, vault.getLocation(added));
+      }
+    }
+    assertTrue(grown >= 4);
+  }
+
+  @Test
+  public void collidingNamesAreKeptApart() {
+    ShaderLocationsVault vault = new ShaderLocationsVault();
+    for (int i = 0; i < COLLIDING.length; i++) {
+      vault.addUniform(COLLIDING[i], i);
+    }
+    //changing one does not change the others
+    vault.addUniform("AaBB", 100);
+    for (int i = 0; i < COLLIDING.length; i++) {
+      assertEquals(COLLIDING[i].equals("AaBB") ? 100 : i, vault.getLocation(COLLIDING[i]));
+    }
+    assertEquals(COLLIDING.length, vault.size());
+    //the same hash code, but not added
+    assertEquals(-1, vault.getLocation("AaAaBB"));
+  }
+
+  @Test
+  public void missingNamesHaveLocationMinusOne() {
+    ShaderLocationsVault vault = new ShaderLocationsVault();
+    vault.addUniform("modelview", 2);
+    assertEquals(-1, vault.getLocation("projection"));
+    assertFalse(vault.contains("projection"));
+    assertEquals(-1, vault.getUniform("projection").getLocation());
+    assertFalse(vault.getUniform("projection").isActive());
+    assertEquals(-1, vault.getAttribute("vPosition").getLocation());
+  }
+
+  @Test
+  public void handlesOfTheWrongKindAreRefused() {
+    ShaderLocationsVault vault = new ShaderLocationsVault();
+    vault.addUniform("modelview", 2);
+    vault.addAttribute("vPosition", 0);
+    vault.add("either", 5);
+
+    assertEquals(2, vault.getUniform("modelview").getLocation());
+    assertEquals(0, vault.getAttribute("vPosition").getLocation());
+    //a name added without its kind can be resolved as either
+    assertEquals(5, vault.getUniform("either").getLocation());
+    assertEquals(5, vault.getAttribute("either").getLocation());
+    try {
+      vault.getAttribute("modelview");
+      fail("A uniform was resolved as an attribute");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+    try {
+      vault.getUniform("vPosition");
+      fail("An attribute was resolved as a uniform");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+  }
+
+  private static int tableSize(ShaderLocationsVault vault) throws Exception {
+    Field names = ShaderLocationsVault.class.getDeclaredField("names");
+    names.setAccessible(true);
+    return ((String[]) names.get(vault)).length;
+  }
+}
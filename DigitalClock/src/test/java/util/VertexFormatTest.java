@@ -0,0 +1,192 @@
+package util;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that interleaving vertices and splitting them again gives back the
+ * same floats, both for vertices of the format itself, which are copied
+ * whole, and for other vertex types, which are copied by slot
+ */
+public class VertexFormatTest {
+  private static final VertexFormat FORMAT = VertexFormat.of(new String[]{"position", "normal", "texcoord"},
+          new int[]{4, 3, 2});
+  private static final int COUNT = 500;
+
+  /**
+   * A vertex with only the string methods, so that it is read and written
+   * through the default slot methods of IVertexData
+   */
+  private static class MapVertex implements IVertexData {
+    private final String[] names;
+    private final Map<String, float[]> data = new HashMap<String, float[]>();
+
+    MapVertex(String[] names, int[] sizes) {
+      this.names = names;
+      for (int i = 0; i < names.length; i++) {
+        data.put(names[i], new float[sizes[i]]);
+      }
+    }
+
+    @Override
+    public boolean hasData(String attribName) {
+      return data.containsKey(attribName);
+    }
+
+    @Override
+    public float[] getData(String attribName) throws IllegalArgumentException {
+      float[] values = data.get(attribName);
+      if (values == null)
+        throw new IllegalArgumentException("No attribute: " + attribName + " found!");
+      return values.clone();
+    }
+
+    @Override
+    public void setData(String attribName, float[] values) throws IllegalArgumentException {
+      if (!data.containsKey(attribName))
+        throw new IllegalArgumentException("Attribute: " + attribName + " unsupported!");
+      data.put(attribName, values.clone());
+    }
+
+    @Override
+    public String[] getAllAttributes() {
+      return names.clone();
+    }
+  }
+
+  @Test
+  public void sameLayoutRoundTrip() {
+    float[] data = randomData(new Random(25), 7, COUNT);
+    List<LayoutVertex> vertices = FORMAT.deinterleave(data, 7, COUNT);
+    assertEquals(COUNT, vertices.size());
+    assertSameBits(Arrays.copyOfRange(data, 7, data.length), FORMAT.interleave(vertices));
+
+    //into an array at an offset, and into a buffer
+    float[] out = new float[3 + data.length];
+    FORMAT.interleave(vertices, out, 3 + 7);
+    assertSameBits(Arrays.copyOfRange(data, 7, data.length), Arrays.copyOfRange(out, 3 + 7, out.length));
+    FloatBuffer buffer = FloatBuffer.allocate(1 + COUNT * FORMAT.getStride());
+    buffer.put(0);
+    FORMAT.interleave(vertices, buffer);
+    assertEquals(buffer.capacity(), buffer.position());
+    assertSameBits(Arrays.copyOfRange(data, 7, data.length), Arrays.copyOfRange(buffer.array(), 1, buffer.capacity()));
+
+    //into existing vertices of an equal format, which are copied whole as well
+    VertexFormat equal = VertexFormat.of(new String[]{"position", "normal", "texcoord"}, new int[]{4, 3, 2});
+    List<LayoutVertex> existing = new ArrayList<LayoutVertex>();
+    for (int i = 0; i < COUNT; i++) {
+      existing.add(equal.create());
+    }
+    FORMAT.deinterleave(data, 7, existing);
+    assertSameBits(Arrays.copyOfRange(data, 7, data.length), FORMAT.interleave(existing));
+    assertArrayEquals(Arrays.copyOfRange(data, 7, 11), existing.get(0).getData("position"), 0);
+  }
+
+  @Test
+  public void otherLayoutRoundTrip() {
+    //the same attributes in another order, and one more
+    VertexFormat other = VertexFormat.of(new String[]{"texcoord", "color", "position", "normal"},
+            new int[]{2, 4, 4, 3});
+    float[] data = randomData(new Random(26), 0, COUNT);
+    List<LayoutVertex> vertices = new ArrayList<LayoutVertex>();
+    for (int i = 0; i < COUNT; i++) {
+      LayoutVertex v = other.create();
+      v.setData("color", new float[]{0.25f, 0.5f, 0.75f, 1});
+      vertices.add(v);
+    }
+
+    FORMAT.deinterleave(data, 0, vertices);
+    assertSameBits(data, FORMAT.interleave(vertices));
+    //the attribute the format does not have is left alone
+    assertArrayEquals(new float[]{0.25f, 0.5f, 0.75f, 1}, vertices.get(COUNT - 1).getData("color"), 0);
+    //and each attribute is where the other format puts it
+    int n = COUNT - 1, stride = FORMAT.getStride();
+    assertArrayEquals(Arrays.copyOfRange(data, n * stride + 7, n * stride + 9),
+            vertices.get(n).getData("texcoord"), 0);
+  }
+
+  @Test
+  public void stringVertexRoundTrip() {
+    float[] data = randomData(new Random(27), 0, COUNT);
+    List<MapVertex> vertices = new ArrayList<MapVertex>();
+    for (int i = 0; i < COUNT; i++) {
+      vertices.add(new MapVertex(new String[]{"normal", "texcoord", "position"}, new int[]{3, 2, 4}));
+    }
+
+    FORMAT.deinterleave(data, 0, vertices);
+    assertSameBits(data, FORMAT.interleave(vertices));
+    FloatBuffer buffer = FloatBuffer.allocate(data.length);
+    FORMAT.interleave(vertices, buffer);
+    assertSameBits(data, buffer.array());
+  }
+
+  @Test
+  public void missingAttributesGetTheDefaults() {
+    float[] data = randomData(new Random(28), 0, COUNT);
+    List<MapVertex> vertices = new ArrayList<MapVertex>();
+    int stride = FORMAT.getStride();
+    for (int i = 0; i < COUNT; i++) {
+      //no normal, and a position of only 3 floats
+      MapVertex vertex = new MapVertex(new String[]{"position", "texcoord"}, new int[]{3, 2});
+      vertex.setData("position", Arrays.copyOfRange(data, i * stride, i * stride + 3));
+      vertex.setData("texcoord", Arrays.copyOfRange(data, i * stride + 7, i * stride + 9));
+      vertices.add(vertex);
+    }
+
+    float[] out = FORMAT.interleave(vertices);
+    for (int i = 0; i < COUNT; i++) {
+      int v = i * stride;
+      //the 4th float of a position is 1, a normal is 0
+      float[] expected = {data[v], data[v + 1], data[v + 2], 1, 0, 0, 0, data[v + 7], data[v + 8]};
+      assertSameBits(expected, Arrays.copyOfRange(out, v, v + stride));
+    }
+  }
+
+  @Test
+  public void emptyListsAreFine() {
+    List<LayoutVertex> none = new ArrayList<LayoutVertex>();
+    assertEquals(0, FORMAT.interleave(none).length);
+    FORMAT.deinterleave(new float[0], 0, none);
+    assertTrue(FORMAT.deinterleave(new float[0], 0, 0).isEmpty());
+  }
+
+  /**
+   * Random floats for the given number of vertices, after the given number
+   * of others, including negative zeros and values of every magnitude
+   */
+  private static float[] randomData(Random random, int offset, int count) {
+    float[] data = new float[offset + count * FORMAT.getStride()];
+    for (int i = 0; i < data.length; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          data[i] = -0.0f;
+          break;
+        case 1:
+          data[i] = Float.intBitsToFloat(random.nextInt() & 0x7f7fffff);
+          break;
+        default:
+          data[i] = (float) random.nextGaussian();
+      }
+    }
+    return data;
+  }
+
+  private static void assertSameBits(float[] expected, float[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i]))
+        assertEquals("float " + i, Float.toString(expected[i]), Float.toString(actual[i]));
+    }
+  }
+}
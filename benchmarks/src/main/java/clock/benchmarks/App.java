@@ -0,0 +1,76 @@
+package clock.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Access to the classes of the clock application. They live in the default
+ * package, which cannot be imported from a named package (and JMH refuses
+ * benchmarks in the default package), so they are reached through method
+ * handles. Handles stored in static final fields are constants to the JIT, so
+ * calling them costs about as much as a direct call.
+ *
+ * All handles are adapted to take and return Object in place of the
+ * application classes, so that they can be called with invokeExact.
+ */
+final class App {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+  private App() {
+  }
+
+  static Class<?> type(String className) {
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("The clock application is not on the class path: " + className, e);
+    }
+  }
+
+  /**
+   * A handle for a public constructor, of type (params)Object
+   */
+  static MethodHandle constructor(String className, Class<?>... params) {
+    try {
+      MethodHandle handle = LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, params));
+      return handle.asType(handle.type().changeReturnType(Object.class));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("No such constructor in " + className, e);
+    }
+  }
+
+  /**
+   * A handle for a public instance method, of type (Object, params)returnType
+   */
+  static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... params) {
+    try {
+      MethodHandle handle = LOOKUP.findVirtual(type(className), name, MethodType.methodType(returnType, params));
+      return handle.asType(handle.type().changeParameterType(0, Object.class));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("No such method " + className + "." + name, e);
+    }
+  }
+
+  /**
+   * The value of a public static int field
+   */
+  static int staticInt(String className, String name) {
+    try {
+      return (int) LOOKUP.findStaticGetter(type(className), name, int.class).invokeExact();
+    } catch (Throwable e) {
+      throw new IllegalStateException("No such field " + className + "." + name, e);
+    }
+  }
+
+  /**
+   * A handle for a public static method, of type (params)returnType
+   */
+  static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... params) {
+    try {
+      return LOOKUP.findStatic(type(className), name, MethodType.methodType(returnType, params));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("No such method " + className + "." + name, e);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package clock.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks, writing the results as JSON to jmh-result.json
+ * unless another result format or file is asked for on the command line. All
+ * arguments are passed on to JMH.
+ */
+public class BenchmarkMain {
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+
+    if (!jmhArgs.contains("-rf")) {
+      jmhArgs.add("-rf");
+      jmhArgs.add("json");
+    }
+    if (!jmhArgs.contains("-rff")) {
+      jmhArgs.add("-rff");
+      jmhArgs.add("jmh-result.json");
+    }
+    org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+  }
+}
@@ -0,0 +1,79 @@
+package clock.benchmarks;
+
+import util.IVertexData;
+import util.VertexLayout;
+import util.VertexProducer;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A vertex with position, normal and texture coordinate, as imported from an
+ * OBJ file. The clock's own vertex type lives in the default package and only
+ * has position and color.
+ *
+ * The attributes are read and written by slot without going through their
+ * names, the same as the clock's vertex.
+ */
+final class BenchmarkVertex implements IVertexData {
+  static final int POSITION = 0, NORMAL = 1, TEXCOORD = 2;
+  static final VertexLayout LAYOUT = new VertexLayout(new String[]{"position", "normal", "texcoord"}, new int[]{4, 4, 4});
+  static final VertexProducer<BenchmarkVertex> PRODUCER = new VertexProducer<BenchmarkVertex>() {
+    @Override
+    public BenchmarkVertex produce() {
+      return new BenchmarkVertex();
+    }
+  };
+
+  private final float[] data = {0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 1};
+
+  @Override
+  public boolean hasData(String attribName) {
+    return LAYOUT.hasAttribute(attribName);
+  }
+
+  @Override
+  public float[] getData(String attribName) throws IllegalArgumentException {
+    int slot = LAYOUT.getSlot(attribName);
+    if (slot < 0)
+      throw new IllegalArgumentException("No attribute: " + attribName + " found!");
+    return Arrays.copyOfRange(data, 4 * slot, 4 * slot + 4);
+  }
+
+  @Override
+  public void setData(String attribName, float[] values) throws IllegalArgumentException {
+    int slot = LAYOUT.getSlot(attribName);
+    if (slot < 0)
+      throw new IllegalArgumentException("Attribute: " + attribName + " unsupported!");
+    setData(slot, values, 0, values.length);
+  }
+
+  @Override
+  public String[] getAllAttributes() {
+    return new String[]{"position", "normal", "texcoord"};
+  }
+
+  @Override
+  public VertexLayout getLayout() {
+    return LAYOUT;
+  }
+
+  @Override
+  public int getData(int slot, float[] out, int offset) {
+    System.arraycopy(data, 4 * slot, out, offset, 4);
+    return 4;
+  }
+
+  @Override
+  public int getData(int slot, FloatBuffer out) {
+    out.put(data, 4 * slot, 4);
+    return 4;
+  }
+
+  @Override
+  public void setData(int slot, float[] values, int offset, int count) throws IllegalArgumentException {
+    if (count > 4)
+      throw new IllegalArgumentException("Too much data for attribute: " + LAYOUT.getName(slot));
+    System.arraycopy(values, offset, data, 4 * slot, count);
+  }
+}
@@ -0,0 +1,177 @@
+package clock.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.FloatBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU work the clock does for every frame it draws: reading the time,
+ * turning it into lit segments and (once at startup) building the transform
+ * tables. The Calendar and SimpleDateFormat version of getTimeNow(), and the
+ * Boolean[] per digit encoding, that the clock used on every frame are kept
+ * here for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClockFrameBenchmark {
+  private static final MethodHandle NEW_VIEW = App.constructor("View");
+  private static final MethodHandle GET_TIME_NOW = App.method("View", "getTimeNow", int.class);
+  private static final MethodHandle GET_DIGIT_OFFSETS = App.method("View", "getDigitOffsets", int[].class);
+  private static final MethodHandle GET_COLON_OFFSETS = App.method("View", "getColonOffsets", int[].class);
+
+  private static final MethodHandle NEW_ENCODER = App.constructor("Encoder");
+  private static final MethodHandle ENCODE_DIGIT = App.method("Encoder", "encodeDigit", int.class, int.class);
+  private static final MethodHandle SEVEN_SEGMENT_MASK = App.staticMethod("Encoder", "sevenSegmentMask", byte.class, int.class);
+
+  private static final MethodHandle NEW_DISPLAY_STATE = App.constructor("DisplayStateCache", int.class);
+  private static final MethodHandle UPDATE_DISPLAY_STATE = App.method("DisplayStateCache", "update", boolean.class, int.class);
+  private static final MethodHandle GET_SEGMENT_MASK = App.method("DisplayStateCache", "getSegmentMask", long.class);
+
+  private static final MethodHandle NEW_SEGMENT_INFO = App.constructor("SegmentInfo");
+  private static final MethodHandle BUILD_SEGMENT_TABLE = App.method("SegmentInfo", "buildTransformTable", void.class, int[].class);
+  private static final MethodHandle SEGMENT_VISIBILITY = App.method("SegmentInfo", "SegmentVisibility", void.class, FloatBuffer.class, long.class, int.class);
+
+  private static final MethodHandle NEW_DOT_INFO = App.constructor("DotInfo");
+  private static final MethodHandle BUILD_DOT_TABLE = App.method("DotInfo", "buildTransformTable", void.class, int[].class);
+
+  //the segments a to g of each digit, as the legacy Encoder had them
+  private static final byte[] LEGACY_LOOKUP = {0x7e, 0x30, 0x6d, 0x79, 0x33, 0x5b, 0x5f, 0x70, 0x7f, 0x7b};
+
+  private static final int DIGITS = 6;
+  private static final int SEGMENTS = App.staticInt("SegmentInfo", "SEGMENTS");
+
+  private Object view;
+  private Object encoder;
+  private Object displayState;
+  private Object segmentInfo;
+  private Object dotInfo;
+  private FloatBuffer visibility;
+  //the segments of each digit as encodeTimeLegacy() leaves them
+  private Boolean[][] legacyDigits = new Boolean[DIGITS][];
+  //the same offsets as the clock builds its transform tables with
+  private int[] digitOffsets;
+  private int[] colonOffsets;
+
+  //a different time for every call, so that the display state never hits
+  private int second;
+
+  @Setup
+  public void setup() throws Throwable {
+    view = (Object) NEW_VIEW.invokeExact();
+    encoder = (Object) NEW_ENCODER.invokeExact();
+    displayState = (Object) NEW_DISPLAY_STATE.invokeExact(DIGITS);
+    segmentInfo = (Object) NEW_SEGMENT_INFO.invokeExact();
+    dotInfo = (Object) NEW_DOT_INFO.invokeExact();
+    visibility = FloatBuffer.allocate(DIGITS * SEGMENTS);
+    digitOffsets = (int[]) GET_DIGIT_OFFSETS.invokeExact(view);
+    colonOffsets = (int[]) GET_COLON_OFFSETS.invokeExact(view);
+  }
+
+  @Benchmark
+  public int timeNow() throws Throwable {
+    return (int) GET_TIME_NOW.invokeExact(view);
+  }
+
+  @Benchmark
+  public int timeNowLegacy() {
+    Calendar cal = Calendar.getInstance();
+    SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
+    String timeNow = sdf.format(cal.getTime()).replace(":", "");
+    return Integer.parseInt(timeNow);
+  }
+
+  /**
+   * What the clock used to do for every digit of every frame: a new Encoder
+   * holding one Boolean per segment
+   */
+  @Benchmark
+  public Boolean[][] encodeTimeLegacy() {
+    int time = nextTime();
+    for (int i = 0; i < DIGITS; i++) {
+      int mask = LEGACY_LOOKUP[time % 10];
+      Boolean[] segments = new Boolean[7];
+      for (int s = 0; s < 7; s++) {
+        segments[s] = ((mask & (0b1000000 >> s)) != 0);
+      }
+      legacyDigits[i] = segments;
+      time /= 10;
+    }
+    return legacyDigits;
+  }
+
+  @Benchmark
+  public int encodeTime() throws Throwable {
+    int time = nextTime(), masks = 0;
+    for (int i = 0; i < DIGITS; i++) {
+      masks ^= (int) ENCODE_DIGIT.invokeExact(encoder, time % 10);
+      time /= 10;
+    }
+    return masks;
+  }
+
+  @Benchmark
+  public int sevenSegmentMasks() throws Throwable {
+    int time = nextTime(), masks = 0;
+    for (int i = 0; i < DIGITS; i++) {
+      masks ^= (byte) SEVEN_SEGMENT_MASK.invokeExact(time % 10);
+      time /= 10;
+    }
+    return masks;
+  }
+
+  @Benchmark
+  public long displayStateChanged() throws Throwable {
+    boolean changed = (boolean) UPDATE_DISPLAY_STATE.invokeExact(displayState, nextTime());
+    return changed ? (long) GET_SEGMENT_MASK.invokeExact(displayState) : 0;
+  }
+
+  @Benchmark
+  public long displayStateUnchanged() throws Throwable {
+    boolean changed = (boolean) UPDATE_DISPLAY_STATE.invokeExact(displayState, 123456);
+    return changed ? (long) GET_SEGMENT_MASK.invokeExact(displayState) : 0;
+  }
+
+  @Benchmark
+  public FloatBuffer segmentVisibility() throws Throwable {
+    boolean changed = (boolean) UPDATE_DISPLAY_STATE.invokeExact(displayState, nextTime());
+    if (changed) {
+      SEGMENT_VISIBILITY.invokeExact(segmentInfo, visibility, (long) GET_SEGMENT_MASK.invokeExact(displayState), DIGITS * SEGMENTS);
+    }
+    return visibility;
+  }
+
+  @Benchmark
+  public Object segmentTransformTable() throws Throwable {
+    BUILD_SEGMENT_TABLE.invokeExact(segmentInfo, digitOffsets);
+    return segmentInfo;
+  }
+
+  @Benchmark
+  public Object dotTransformTable() throws Throwable {
+    BUILD_DOT_TABLE.invokeExact(dotInfo, colonOffsets);
+    return dotInfo;
+  }
+
+  //packed HHmmss of the next second of the day
+  private int nextTime() {
+    second = (second + 1) % 86400;
+    return (second / 3600) * 10000 + ((second / 60) % 60) * 100 + (second % 60);
+  }
+}
@@ -0,0 +1,129 @@
+package clock.benchmarks;
+
+import com.jogamp.opengl.GL3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import util.MeshSimplifier;
+import util.ObjImporter;
+import util.ObjectInstance;
+import util.PackedPolygonMesh;
+import util.PolygonMesh;
+import util.ShaderLocationsVault;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of preparing a mesh for drawing: computing normals and bounds,
+ * building levels of detail, and building the buffers that ObjectInstance
+ * hands to OpenGL. The GL calls go
+ * to a RecordingGL, so only the work on the Java side is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class MeshBenchmark {
+  /**
+   * Exposes the bounding box computation, which PolygonMesh only runs when the
+   * bounds are first asked for
+   */
+  static class BoundsMesh extends PolygonMesh<BenchmarkVertex> {
+    BoundsMesh(PolygonMesh<BenchmarkVertex> mesh) {
+      setVertexData(mesh.getVertexAttributes());
+      setPrimitives(mesh.getPrimitives());
+      setPrimitiveType(mesh.getPrimitiveType());
+      setPrimitiveSize(mesh.getPrimitiveSize());
+    }
+
+    void bounds() {
+      computeBoundingBox();
+    }
+  }
+
+  @Param({"10000", "100000", "1000000"})
+  public int faces;
+
+  private BoundsMesh mesh;
+  private PackedPolygonMesh packedMesh;
+  private GL3 gl;
+  private ShaderLocationsVault shaderLocations;
+  private Map<String, String> shaderToVertexAttribute;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    InputStream in = new BufferedInputStream(new FileInputStream(ObjFiles.withFaces(faces)));
+    try {
+      mesh = new BoundsMesh(ObjImporter.importFile(BenchmarkVertex.PRODUCER, in, false));
+    } finally {
+      in.close();
+    }
+    packedMesh = PackedPolygonMesh.fromPolygonMesh(mesh);
+
+    gl = new RecordingGL().getGL();
+    shaderLocations = new ShaderLocationsVault();
+    shaderLocations.add("vPosition", 0);
+    shaderLocations.add("vNormal", 1);
+    shaderLocations.add("vTexCoord", 2);
+    shaderToVertexAttribute = new HashMap<String, String>();
+    shaderToVertexAttribute.put("vPosition", "position");
+    shaderToVertexAttribute.put("vNormal", "normal");
+    shaderToVertexAttribute.put("vTexCoord", "texcoord");
+  }
+
+  @Benchmark
+  public void computeNormals(Blackhole bh) {
+    mesh.computeNormals();
+    bh.consume(mesh);
+  }
+
+  @Benchmark
+  public void computeNormalsPacked(Blackhole bh) {
+    packedMesh.computeNormals();
+    bh.consume(packedMesh);
+  }
+
+  @Benchmark
+  public void computeBounds(Blackhole bh) {
+    mesh.bounds();
+    bh.consume(mesh.getMaximumBounds());
+  }
+
+  @Benchmark
+  public void computeBoundsPacked(Blackhole bh) {
+    packedMesh.invalidateBounds();
+    bh.consume(packedMesh.getBounds());
+  }
+
+  @Benchmark
+  public int[][] buildLods() {
+    return MeshSimplifier.buildLods(packedMesh, 0.5f, 0.25f, 0.1f);
+  }
+
+  @Benchmark
+  public ObjectInstance upload() {
+    return new ObjectInstance(gl, shaderLocations, shaderToVertexAttribute, mesh, "mesh");
+  }
+
+  @Benchmark
+  public ObjectInstance uploadPacked() {
+    return new ObjectInstance(gl, shaderLocations, shaderToVertexAttribute, packedMesh, "mesh");
+  }
+}
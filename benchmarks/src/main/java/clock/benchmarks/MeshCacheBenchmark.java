@@ -0,0 +1,79 @@
+package clock.benchmarks;
+
+import com.jogamp.opengl.GL3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.FastObjImporter;
+import util.MeshCache;
+import util.ObjectInstance;
+import util.ShaderLocationsVault;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a mesh from disk into GL buffers: importing the OBJ file every time,
+ * against loading the binary mesh cache once it has been built.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class MeshCacheBenchmark {
+  private static final String[] ATTRIBUTES = {"position", "normal"};
+
+  @Param({"100000", "1000000"})
+  public int faces;
+
+  private Path objFile;
+  private Path cacheDirectory;
+  private GL3 gl;
+  private ShaderLocationsVault shaderLocations;
+  private Map<String, String> shaderToVertexAttribute;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    File file = ObjFiles.withFaces(faces);
+    objFile = file.toPath();
+    cacheDirectory = Files.createTempDirectory("meshcache");
+    cacheDirectory.toFile().deleteOnExit();
+    MeshCache.loadOrBuild(BenchmarkVertex.PRODUCER, objFile, cacheDirectory, ATTRIBUTES, false);
+    cacheDirectory.resolve(file.getName() + MeshCache.EXTENSION).toFile().deleteOnExit();
+
+    gl = new RecordingGL().getGL();
+    shaderLocations = new ShaderLocationsVault();
+    shaderLocations.add("vPosition", 0);
+    shaderLocations.add("vNormal", 1);
+    shaderToVertexAttribute = new HashMap<String, String>();
+    shaderToVertexAttribute.put("vPosition", "position");
+    shaderToVertexAttribute.put("vNormal", "normal");
+  }
+
+  @Benchmark
+  public ObjectInstance importObj() throws Exception {
+    return new ObjectInstance(gl, shaderLocations, shaderToVertexAttribute,
+            FastObjImporter.importFile(BenchmarkVertex.PRODUCER, objFile, false), "mesh");
+  }
+
+  @Benchmark
+  public ObjectInstance loadCache() throws Exception {
+    MeshCache cache = MeshCache.loadOrBuild(BenchmarkVertex.PRODUCER, objFile, cacheDirectory, ATTRIBUTES, false);
+    return new ObjectInstance(gl, shaderLocations, shaderToVertexAttribute, cache, "mesh");
+  }
+}
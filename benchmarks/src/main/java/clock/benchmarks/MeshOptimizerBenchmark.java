@@ -0,0 +1,97 @@
+package clock.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.MeshOptimizer;
+import util.ObjImporter;
+import util.PackedPolygonMesh;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Welding and reordering an imported mesh for the vertex cache. The triangles
+ * of the generated grid are shuffled first, as a mesh from a modelling tool
+ * is rarely in a good order. The ACMR before and after is printed at the end
+ * of each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class MeshOptimizerBenchmark {
+  @Param({"10000", "100000", "1000000"})
+  public int faces;
+
+  @Param({"false", "true"})
+  public boolean strips;
+
+  private PackedPolygonMesh imported;
+  private PackedPolygonMesh mesh;
+  private MeshOptimizer.Report report;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    InputStream in = new BufferedInputStream(new FileInputStream(ObjFiles.withFaces(faces)));
+    try {
+      imported = ObjImporter.importPackedFile(in, false);
+    } finally {
+      in.close();
+    }
+
+    int[] primitives = imported.getPrimitives();
+    Integer[] order = new Integer[primitives.length / 3];
+    for (int t = 0; t < order.length; t++) {
+      order[t] = t;
+    }
+    List<Integer> shuffled = Arrays.asList(order);
+    Collections.shuffle(shuffled, new Random(1));
+    int[] shuffledPrimitives = new int[primitives.length];
+    for (int t = 0; t < order.length; t++) {
+      System.arraycopy(primitives, 3 * shuffled.get(t), shuffledPrimitives, 3 * t, 3);
+    }
+    imported.setPrimitives(shuffledPrimitives);
+  }
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    mesh = new PackedPolygonMesh(imported.getVertexCount());
+    for (String name : imported.getAllAttributes()) {
+      mesh.setAttribute(name, imported.getComponentCount(name), imported.getAttribute(name).clone());
+    }
+    mesh.setPrimitives(imported.getPrimitives().clone());
+    mesh.setPrimitiveType(imported.getPrimitiveType());
+    mesh.setPrimitiveSize(imported.getPrimitiveSize());
+  }
+
+  @TearDown(Level.Trial)
+  public void printReport() {
+    System.out.println();
+    System.out.println("Optimized " + faces + " faces: " + report);
+  }
+
+  @Benchmark
+  public MeshOptimizer.Report optimize() {
+    report = MeshOptimizer.optimize(mesh, strips);
+    return report;
+  }
+}
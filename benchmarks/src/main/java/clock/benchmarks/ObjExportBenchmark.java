@@ -0,0 +1,74 @@
+package clock.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.FastObjImporter;
+import util.ObjExporter;
+import util.PackedPolygonMesh;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exporting a mesh as OBJ text, formatting on one thread or in parallel. The
+ * file goes to a stream that throws it away, so only the formatting is
+ * measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ObjExportBenchmark {
+  /**
+   * Counts the bytes written, so that the file is not optimized away
+   */
+  static class CountingStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  @Param({"100000", "1000000", "10000000"})
+  public int faces;
+
+  private PackedPolygonMesh mesh;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    mesh = FastObjImporter.importPackedFileParallel(ObjFiles.withFaces(faces).toPath(), false);
+  }
+
+  @Benchmark
+  public long exportFile() {
+    CountingStream out = new CountingStream();
+    ObjExporter.exportFile(mesh, out, false);
+    return out.count;
+  }
+
+  @Benchmark
+  public long exportFileParallel() {
+    CountingStream out = new CountingStream();
+    ObjExporter.exportFile(mesh, out, true);
+    return out.count;
+  }
+}
@@ -0,0 +1,72 @@
+package clock.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Generates OBJ files of a given number of triangles for the import
+ * benchmarks: a square grid of quads on a gently curved surface, each quad
+ * written as two triangles, with one normal per vertex. Files are generated
+ * once per size and JVM, in the temporary directory, and deleted on exit.
+ */
+final class ObjFiles {
+  private static final Map<Integer, File> files = new HashMap<Integer, File>();
+
+  private ObjFiles() {
+  }
+
+  static synchronized File withFaces(int faces) throws IOException {
+    File file = files.get(faces);
+    if (file == null) {
+      file = File.createTempFile("grid-" + faces + "-", ".obj");
+      file.deleteOnExit();
+      write(file, faces);
+      files.put(faces, file);
+    }
+    return file;
+  }
+
+  private static void write(File file, int faces) throws IOException {
+    int side = Math.max(1, (int) Math.ceil(Math.sqrt(faces / 2.0)));
+    int columns = side + 1;
+
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII), 1 << 20);
+    try {
+      out.write("# " + faces + " triangles\n");
+      for (int y = 0; y <= side; y++) {
+        for (int x = 0; x <= side; x++) {
+          float u = (float) x / side, v = (float) y / side;
+          out.write("v " + u + " " + v + " " + (float) (0.1 * Math.sin(6 * u) * Math.cos(6 * v)) + "\n");
+        }
+      }
+      for (int y = 0; y <= side; y++) {
+        for (int x = 0; x <= side; x++) {
+          out.write("vn 0.0 0.0 1.0\n");
+        }
+      }
+
+      int written = 0;
+      for (int y = 0; (y < side) && (written < faces); y++) {
+        for (int x = 0; (x < side) && (written < faces); x++) {
+          //OBJ indices start at 1
+          int a = y * columns + x + 1, b = a + 1, c = a + columns, d = c + 1;
+          out.write("f " + a + "//" + a + " " + b + "//" + b + " " + d + "//" + d + "\n");
+          written++;
+          if (written < faces) {
+            out.write("f " + a + "//" + a + " " + d + "//" + d + " " + c + "//" + c + "\n");
+            written++;
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
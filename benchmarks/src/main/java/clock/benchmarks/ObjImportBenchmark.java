@@ -0,0 +1,61 @@
+package clock.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.FastObjImporter;
+import util.ObjImporter;
+import util.PolygonMesh;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importing generated OBJ files of increasing size, with the original Scanner
+ * based importer and with FastObjImporter. Single shot, since a large file
+ * takes seconds to import.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ObjImportBenchmark {
+  @Param({"10000", "100000", "1000000", "10000000"})
+  public int faces;
+
+  private File file;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    file = ObjFiles.withFaces(faces);
+  }
+
+  @Benchmark
+  public PolygonMesh<BenchmarkVertex> importFile() throws Exception {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      return ObjImporter.importFile(BenchmarkVertex.PRODUCER, in, false);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Benchmark
+  public PolygonMesh<BenchmarkVertex> importFileFast() throws Exception {
+    return FastObjImporter.importFile(BenchmarkVertex.PRODUCER, file.toPath(), false);
+  }
+}
@@ -0,0 +1,65 @@
+package clock.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.FastObjImporter;
+import util.PolygonMesh;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read throughput of FastObjImporter, sequential and parallel. Besides the
+ * imports per second, the "megabytes" counter gives the throughput in MB/s of
+ * OBJ text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ObjImportThroughputBenchmark {
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Bytes {
+    public double megabytes;
+  }
+
+  @Param({"100000", "1000000", "10000000"})
+  public int faces;
+
+  private File file;
+  private double fileMegabytes;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    file = ObjFiles.withFaces(faces);
+    fileMegabytes = file.length() / (1024.0 * 1024.0);
+  }
+
+  @Benchmark
+  public PolygonMesh<BenchmarkVertex> sequential(Bytes bytes) throws Exception {
+    PolygonMesh<BenchmarkVertex> mesh = FastObjImporter.importFile(BenchmarkVertex.PRODUCER, file.toPath(), false);
+    bytes.megabytes += fileMegabytes;
+    return mesh;
+  }
+
+  @Benchmark
+  public PolygonMesh<BenchmarkVertex> parallel(Bytes bytes) throws Exception {
+    PolygonMesh<BenchmarkVertex> mesh = FastObjImporter.importFileParallel(BenchmarkVertex.PRODUCER, file.toPath(), false);
+    bytes.megabytes += fileMegabytes;
+    return mesh;
+  }
+}
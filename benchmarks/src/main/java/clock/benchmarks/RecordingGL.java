@@ -0,0 +1,129 @@
+package clock.benchmarks;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A stand-in for an OpenGL context, so that the CPU side of the rendering code
+ * can be benchmarked without a window or a GPU. Every GL call is only counted
+ * by name. Calls that create objects (glGenBuffers, glCreateProgram, ...) hand
+ * out increasing names, and everything else returns 0, false or null.
+ *
+ * getGL3() and getGL() of the drawable, as well as every getGLxxx() of the GL,
+ * return the same recording GL3.
+ */
+final class RecordingGL implements InvocationHandler {
+  private final GL3 gl;
+  private final GLAutoDrawable drawable;
+  private final Map<String, long[]> calls = new HashMap<String, long[]>();
+  private int nextName = 1;
+
+  RecordingGL() {
+    ClassLoader loader = RecordingGL.class.getClassLoader();
+    gl = (GL3) Proxy.newProxyInstance(loader, new Class<?>[]{GL3.class}, this);
+    drawable = (GLAutoDrawable) Proxy.newProxyInstance(loader, new Class<?>[]{GLAutoDrawable.class}, this);
+  }
+
+  GL3 getGL() {
+    return gl;
+  }
+
+  GLAutoDrawable getDrawable() {
+    return drawable;
+  }
+
+  /**
+   * The number of calls made so far of each GL function, sorted by name
+   */
+  Map<String, Long> getCalls() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (Map.Entry<String, long[]> e : calls.entrySet()) {
+      result.put(e.getKey(), e.getValue()[0]);
+    }
+    return result;
+  }
+
+  long getCallCount() {
+    long total = 0;
+    for (long[] count : calls.values()) {
+      total += count[0];
+    }
+    return total;
+  }
+
+  void reset() {
+    calls.clear();
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) {
+    String name = method.getName();
+
+    if (method.getDeclaringClass() == Object.class) {
+      switch (name) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        default:
+          return (proxy == gl) ? "RecordingGL" : "RecordingGLAutoDrawable";
+      }
+    }
+
+    if (proxy == gl) {
+      long[] count = calls.get(name);
+      if (count == null) {
+        count = new long[1];
+        calls.put(name, count);
+      }
+      count[0]++;
+
+      //glGenBuffers(n, ids), glGenVertexArrays(n, ids), ...
+      if (name.startsWith("glGen") && (args != null) && (args.length == 2) && (args[1] instanceof IntBuffer)) {
+        IntBuffer ids = (IntBuffer) args[1];
+        int n = (Integer) args[0];
+        for (int i = 0; i < n; i++) {
+          ids.put(ids.position() + i, nextName++);
+        }
+        return null;
+      }
+      if (name.equals("glCreateProgram") || name.equals("glCreateShader")) {
+        return nextName++;
+      }
+    }
+
+    Class<?> returnType = method.getReturnType();
+    if (returnType.isInstance(gl)) {
+      return gl;
+    }
+    return defaultValue(returnType);
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (!type.isPrimitive() || (type == void.class))
+      return null;
+    if (type == boolean.class)
+      return false;
+    if (type == int.class)
+      return 0;
+    if (type == long.class)
+      return 0L;
+    if (type == float.class)
+      return 0f;
+    if (type == double.class)
+      return 0d;
+    if (type == short.class)
+      return (short) 0;
+    if (type == byte.class)
+      return (byte) 0;
+    return (char) 0;
+  }
+}
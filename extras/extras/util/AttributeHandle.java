@@ -0,0 +1,36 @@
+package util;
+
+/**
+ * A vertex attribute of a shader program, resolved once from its name by
+ * {@link ShaderLocationsVault#getAttribute}. The location is -1 if the
+ * program has no such attribute, in which case it must not be enabled.
+ */
+public final class AttributeHandle {
+  private final String name;
+  private final int location;
+
+  AttributeHandle(String name, int location) {
+    this.name = name;
+    this.location = location;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLocation() {
+    return location;
+  }
+
+  /**
+   * Whether the program has this attribute
+   */
+  public boolean isActive() {
+    return location >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "attribute " + name + " at " + location;
+  }
+}
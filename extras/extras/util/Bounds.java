@@ -0,0 +1,166 @@
+package util;
+
+import org.joml.Vector4f;
+
+/**
+ * The axis-aligned bounding box and a bounding sphere of a set of positions.
+ * They are computed in one pass over primitive position arrays, as a parallel
+ * min/max reduction for large meshes. The sphere is centered on the box and
+ * just contains all positions; it is not the smallest possible sphere, but
+ * cheap and good enough for culling.
+ *
+ * Bounds of no positions are empty: both corners and the center are the
+ * origin and the radius is 0.
+ */
+public class Bounds {
+  private static final int GRAIN = 1 << 15;
+
+  private final float minX, minY, minZ;
+  private final float maxX, maxY, maxZ;
+  private final float radius;
+  private final boolean empty;
+
+  private Bounds(float[] box, float radius, boolean empty) {
+    minX = box[0];
+    minY = box[1];
+    minZ = box[2];
+    maxX = box[3];
+    maxY = box[4];
+    maxZ = box[5];
+    this.radius = radius;
+    this.empty = empty;
+  }
+
+  /**
+   * The bounds of the first vertexCount positions
+   *
+   * @param positions  the positions, components floats each
+   * @param components the number of floats per position, 1 to 4. Missing
+   *                   coordinates count as 0
+   */
+  public static Bounds of(float[] positions, int components, int vertexCount) {
+    return of(positions, components, null, 0, vertexCount);
+  }
+
+  /**
+   * The bounds of the positions used by a range of indices, such as one
+   * submesh
+   *
+   * @param positions  the positions, components floats each
+   * @param components the number of floats per position, 1 to 4
+   * @param indices    the indices into positions
+   * @param first      the first index of the range
+   * @param count      the number of indices in the range
+   */
+  public static Bounds of(float[] positions, int components, int[] indices, int first, int count) {
+    if ((components < 1) || (components > 4))
+      throw new IllegalArgumentException("Positions must have 1 to 4 components, not " + components);
+    if (count <= 0)
+      return new Bounds(new float[6], 0, true);
+
+    float[] box = reduce(positions, components, indices, first, count, null);
+    float[] center = {(box[0] + box[3]) * 0.5f, (box[1] + box[4]) * 0.5f, (box[2] + box[5]) * 0.5f};
+    float[] radius = reduce(positions, components, indices, first, count, center);
+    return new Bounds(box, (float) Math.sqrt(radius[0]), false);
+  }
+
+  /**
+   * Either the box (min x,y,z then max x,y,z) of the positions, or if center
+   * is given, the largest squared distance from it
+   */
+  private static float[] reduce(final float[] positions, final int components, final int[] indices, final int first,
+                                int count, final float[] center) {
+    final int blocks = (count + GRAIN - 1) / GRAIN;
+    final int blockSize = (count + blocks - 1) / blocks;
+    final float[] partials = new float[6 * blocks];
+    final int end = first + count;
+
+    new ParallelLoop() {
+      @Override
+      void run(int from, int to) {
+        for (int b = from; b < to; b++) {
+          float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+          float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+          float farthest = 0;
+
+          for (int i = first + b * blockSize; i < Math.min(first + (b + 1) * blockSize, end); i++) {
+            int p = components * ((indices != null) ? indices[i] : i);
+            float x = positions[p];
+            float y = (components > 1) ? positions[p + 1] : 0;
+            float z = (components > 2) ? positions[p + 2] : 0;
+
+            if (center == null) {
+              minX = Math.min(minX, x);
+              minY = Math.min(minY, y);
+              minZ = Math.min(minZ, z);
+              maxX = Math.max(maxX, x);
+              maxY = Math.max(maxY, y);
+              maxZ = Math.max(maxZ, z);
+            } else {
+              float dx = x - center[0], dy = y - center[1], dz = z - center[2];
+              farthest = Math.max(farthest, dx * dx + dy * dy + dz * dz);
+            }
+          }
+          partials[6 * b] = (center == null) ? minX : farthest;
+          partials[6 * b + 1] = minY;
+          partials[6 * b + 2] = minZ;
+          partials[6 * b + 3] = maxX;
+          partials[6 * b + 4] = maxY;
+          partials[6 * b + 5] = maxZ;
+        }
+      }
+    }.execute(blocks, 1);
+
+    float[] result = new float[6];
+    System.arraycopy(partials, 0, result, 0, 6);
+    for (int b = 1; b < blocks; b++) {
+      if (center == null) {
+        for (int k = 0; k < 3; k++) {
+          result[k] = Math.min(result[k], partials[6 * b + k]);
+          result[k + 3] = Math.max(result[k + 3], partials[6 * b + k + 3]);
+        }
+      } else {
+        result[0] = Math.max(result[0], partials[6 * b]);
+      }
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  public Vector4f getMinimum() {
+    return new Vector4f(minX, minY, minZ, 1);
+  }
+
+  public Vector4f getMaximum() {
+    return new Vector4f(maxX, maxY, maxZ, 1);
+  }
+
+  /**
+   * The center of the box, which is also the center of the bounding sphere
+   */
+  public Vector4f getCenter() {
+    return new Vector4f((minX + maxX) * 0.5f, (minY + maxY) * 0.5f, (minZ + maxZ) * 0.5f, 1);
+  }
+
+  /**
+   * The radius of the bounding sphere around getCenter()
+   */
+  public float getRadius() {
+    return radius;
+  }
+
+  /**
+   * The length of the longest side of the box
+   */
+  public float getLongestSide() {
+    return Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+  }
+
+  @Override
+  public String toString() {
+    return "Bounds[" + getMinimum() + " - " + getMaximum() + ", radius " + radius + "]";
+  }
+}
@@ -0,0 +1,331 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A faster replacement for {@link ObjImporter}, for large OBJ files. It reads
+ * the file in blocks of bytes through a channel and parses them in place,
+ * keeping vertex data in primitive arrays until the mesh is built, instead of
+ * creating strings, boxed vectors and boxed indices for every line.
+ *
+ * It produces the same mesh as ObjImporter for the same file, and also accepts
+ * negative (relative) vertex indices.
+ *
+ * importFileParallel() additionally splits a file at line boundaries into
+ * chunks that are memory-mapped and parsed on a ForkJoinPool. The chunks are
+ * then stitched together in file order, so the result is the same as a
+ * sequential import.
+ */
+public class FastObjImporter {
+  private static final int BLOCK_SIZE = 1 << 20;
+
+  //chunk sizes for parallel imports. Files smaller than two chunks are read sequentially
+  private static final long MIN_CHUNK_SIZE = 1 << 20;
+  private static final long MAX_CHUNK_SIZE = 1 << 28;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  public static <K extends IVertexData> PolygonMesh<K> importFile
+          (VertexProducer<K> producer, Path file, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return read(channel).buildMesh(producer, scaleAndCenter);
+    } finally {
+      channel.close();
+    }
+  }
+
+  public static <K extends IVertexData> PolygonMesh<K> importFile
+          (VertexProducer<K> producer, InputStream in, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    return read(Channels.newChannel(in)).buildMesh(producer, scaleAndCenter);
+  }
+
+  /**
+   * Import a file as a PackedPolygonMesh, with 4 floats per position, texture
+   * coordinate and normal
+   */
+  public static PackedPolygonMesh importPackedFile(Path file, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return read(channel).buildPackedMesh(scaleAndCenter);
+    } finally {
+      channel.close();
+    }
+  }
+
+  public static PackedPolygonMesh importPackedFile(InputStream in, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    return read(Channels.newChannel(in)).buildPackedMesh(scaleAndCenter);
+  }
+
+  private static ObjParser read(ReadableByteChannel channel) throws IOException {
+    ObjParser parser = new ObjParser();
+    ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+    while (channel.read(block) >= 0) {
+      int end = parser.parse(block, 0, block.position(), false);
+
+      if ((end == 0) && !block.hasRemaining()) {
+        //a single line longer than the block, make room for the rest of it
+        ByteBuffer larger = ByteBuffer.allocate(2 * block.capacity());
+        block.flip();
+        larger.put(block);
+        block = larger;
+      } else {
+        //keep the incomplete last line for the next read
+        block.flip();
+        block.position(end);
+        block.compact();
+      }
+    }
+    parser.parse(block, 0, block.position(), true);
+    return parser;
+  }
+
+  public static <K extends IVertexData> PolygonMesh<K> importFileParallel
+          (VertexProducer<K> producer, Path file, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    return importFileParallel(producer, file, scaleAndCenter, ForkJoinPool.commonPool());
+  }
+
+  public static <K extends IVertexData> PolygonMesh<K> importFileParallel
+          (VertexProducer<K> producer, Path file, boolean scaleAndCenter, ForkJoinPool pool) throws IOException, IllegalArgumentException {
+    return readParallel(file, pool).buildMesh(producer, scaleAndCenter);
+  }
+
+  public static PackedPolygonMesh importPackedFileParallel(Path file, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    return readParallel(file, ForkJoinPool.commonPool()).buildPackedMesh(scaleAndCenter);
+  }
+
+  public static PackedPolygonMesh importPackedFileParallel(Path file, boolean scaleAndCenter, ForkJoinPool pool) throws IOException, IllegalArgumentException {
+    return readParallel(file, pool).buildPackedMesh(scaleAndCenter);
+  }
+
+  private static ObjParser readParallel(Path file, ForkJoinPool pool) throws IOException, IllegalArgumentException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long[] bounds = splitLines(channel, pool.getParallelism());
+      if (bounds.length <= 2)
+        return read(channel);
+
+      ObjParser[] parsers = new ObjParser[bounds.length - 1];
+      IOException[] ioErrors = new IOException[parsers.length];
+      RuntimeException[] parseErrors = new RuntimeException[parsers.length];
+      List<ChunkParse> tasks = new ArrayList<ChunkParse>();
+
+      for (int i = 0; i < parsers.length; i++) {
+        tasks.add(new ChunkParse(channel, bounds[i], bounds[i + 1], parsers, ioErrors, parseErrors, i));
+      }
+      pool.invoke(new InvokeAll(tasks));
+
+      long lines = 0;
+      for (int i = 0; i < parsers.length; i++) {
+        if (ioErrors[i] != null)
+          throw ioErrors[i];
+        if (parseErrors[i] != null) {
+          //parse the chunk again knowing the line it starts at, to report the right line
+          ObjParser parser = new ObjParser();
+          parser.setLineOffset(lines);
+          parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]), 0, (int) (bounds[i + 1] - bounds[i]), true);
+          throw parseErrors[i];
+        }
+        lines += parsers[i].getLineCount();
+      }
+
+      return stitch(parsers, pool);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Split a file into chunks that each start at the beginning of a line
+   *
+   * @return the offsets at which chunks start, followed by the size of the file
+   */
+  private static long[] splitLines(FileChannel channel, int threads) throws IOException {
+    long size = channel.size();
+    int chunks = (int) Math.max(Math.min((long) threads * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE),
+            (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+    List<Long> bounds = new ArrayList<Long>();
+    ByteBuffer window = ByteBuffer.allocate(1 << 16);
+
+    bounds.add(0L);
+    for (int i = 1; i < chunks; i++) {
+      long start = Math.max(i * (size / chunks), bounds.get(bounds.size() - 1));
+
+      //move forward to just after the next newline
+      long newline = -1;
+      while ((newline < 0) && (start < size)) {
+        window.clear();
+        int read = channel.read(window, start);
+        if (read <= 0)
+          break;
+        for (int j = 0; j < read; j++) {
+          if (window.get(j) == '\n') {
+            newline = start + j;
+            break;
+          }
+        }
+        start += read;
+      }
+      if ((newline < 0) || (newline + 1 >= size))
+        break;
+      if (newline + 1 - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE)
+        throw new IllegalArgumentException("Line too long to be read");
+      if (newline + 1 > bounds.get(bounds.size() - 1))
+        bounds.add(newline + 1);
+    }
+    if (size - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Line too long to be read");
+    bounds.add(size);
+
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Concatenate the data of all chunks in order. Relative indices in each
+   * chunk are offset by the number of vertices in the chunks before it
+   */
+  private static ObjParser stitch(ObjParser[] parsers, ForkJoinPool pool) {
+    int n = parsers.length;
+    int[] positionStart = new int[n + 1];
+    int[] texcoordStart = new int[n + 1];
+    int[] normalStart = new int[n + 1];
+    int[] triangleStart = new int[n + 1];
+
+    for (int i = 0; i < n; i++) {
+      positionStart[i + 1] = checkedAdd(positionStart[i], parsers[i].positions.size());
+      texcoordStart[i + 1] = checkedAdd(texcoordStart[i], parsers[i].texcoords.size());
+      normalStart[i + 1] = checkedAdd(normalStart[i], parsers[i].normals.size());
+      triangleStart[i + 1] = checkedAdd(triangleStart[i], parsers[i].triangles.size());
+    }
+
+    float[] positions = new float[positionStart[n]];
+    float[] texcoords = new float[texcoordStart[n]];
+    float[] normals = new float[normalStart[n]];
+    int[] triangles = new int[triangleStart[n]];
+    List<ChunkCopy> tasks = new ArrayList<ChunkCopy>();
+
+    for (int i = 0; i < n; i++) {
+      tasks.add(new ChunkCopy(parsers[i], positionStart[i], texcoordStart[i], normalStart[i], triangleStart[i],
+              positions, texcoords, normals, triangles));
+    }
+    pool.invoke(new InvokeAll(tasks));
+
+    return new ObjParser(new FloatArrayList(positions, positions.length),
+            new FloatArrayList(texcoords, texcoords.length),
+            new FloatArrayList(normals, normals.length),
+            new IntArrayList(triangles, triangles.length));
+  }
+
+  private static int checkedAdd(int a, int b) throws IllegalArgumentException {
+    long sum = (long) a + b;
+    if (sum > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Mesh too large to be imported");
+    return (int) sum;
+  }
+
+  /**
+   * Runs a list of tasks in parallel and waits for all of them
+   */
+  private static class InvokeAll extends RecursiveAction {
+    private final List<? extends ForkJoinTask<?>> tasks;
+
+    InvokeAll(List<? extends ForkJoinTask<?>> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    protected void compute() {
+      invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Maps and parses one chunk of the file. Errors are kept rather than thrown,
+   * so that the first one in the file can be reported
+   */
+  private static class ChunkParse extends RecursiveAction {
+    private final FileChannel channel;
+    private final long start, end;
+    private final ObjParser[] parsers;
+    private final IOException[] ioErrors;
+    private final RuntimeException[] parseErrors;
+    private final int chunk;
+
+    ChunkParse(FileChannel channel, long start, long end, ObjParser[] parsers,
+               IOException[] ioErrors, RuntimeException[] parseErrors, int chunk) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+      this.parsers = parsers;
+      this.ioErrors = ioErrors;
+      this.parseErrors = parseErrors;
+      this.chunk = chunk;
+    }
+
+    @Override
+    protected void compute() {
+      ObjParser parser = new ObjParser();
+      try {
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        parser.parse(mapped, 0, (int) (end - start), true);
+        parsers[chunk] = parser;
+      } catch (IOException e) {
+        ioErrors[chunk] = e;
+      } catch (RuntimeException e) {
+        parseErrors[chunk] = e;
+      }
+    }
+  }
+
+  /**
+   * Copies the data of one chunk to its place in the stitched arrays
+   */
+  private static class ChunkCopy extends RecursiveAction {
+    private final ObjParser parser;
+    private final int positionStart, texcoordStart, normalStart, triangleStart;
+    private final float[] positions, texcoords, normals;
+    private final int[] triangles;
+
+    ChunkCopy(ObjParser parser, int positionStart, int texcoordStart, int normalStart, int triangleStart,
+              float[] positions, float[] texcoords, float[] normals, int[] triangles) {
+      this.parser = parser;
+      this.positionStart = positionStart;
+      this.texcoordStart = texcoordStart;
+      this.normalStart = normalStart;
+      this.triangleStart = triangleStart;
+      this.positions = positions;
+      this.texcoords = texcoords;
+      this.normals = normals;
+      this.triangles = triangles;
+    }
+
+    @Override
+    protected void compute() {
+      System.arraycopy(parser.positions.array(), 0, positions, positionStart, parser.positions.size());
+      System.arraycopy(parser.texcoords.array(), 0, texcoords, texcoordStart, parser.texcoords.size());
+      System.arraycopy(parser.normals.array(), 0, normals, normalStart, parser.normals.size());
+      System.arraycopy(parser.triangles.array(), 0, triangles, triangleStart, parser.triangles.size());
+
+      int vertexOffset = positionStart / 4;
+      for (int i = 0; i < parser.relativeIndices.size(); i++) {
+        triangles[triangleStart + parser.relativeIndices.get(i)] += vertexOffset;
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive floats, used in place of a List of boxed
+ * vectors when reading large meshes
+ */
+class FloatArrayList {
+  private float[] data;
+  private int size;
+
+  FloatArrayList() {
+    this(1024);
+  }
+
+  FloatArrayList(int capacity) {
+    data = new float[Math.max(capacity, 4)];
+    size = 0;
+  }
+
+  /**
+   * A list holding the first size values of data, without copying them
+   */
+  FloatArrayList(float[] data, int size) {
+    this.data = data;
+    this.size = size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  float get(int i) {
+    return data[i];
+  }
+
+  void set(int i, float value) {
+    data[i] = value;
+  }
+
+  void add(float value) {
+    if (size == data.length)
+      grow(size + 1);
+    data[size++] = value;
+  }
+
+  void add(float x, float y, float z, float w) {
+    if (size + 4 > data.length)
+      grow(size + 4);
+    data[size] = x;
+    data[size + 1] = y;
+    data[size + 2] = z;
+    data[size + 3] = w;
+    size += 4;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * The backing array, valid up to size(). It is replaced when the list grows
+   */
+  float[] array() {
+    return data;
+  }
+
+  float[] toArray() {
+    return Arrays.copyOf(data, size);
+  }
+
+  private void grow(int minCapacity) {
+    data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+  }
+}
@@ -0,0 +1,158 @@
+package util;
+
+import com.jogamp.opengl.GL3;
+
+import java.nio.FloatBuffer;
+
+/**
+ * This class sits between the rendering code and OpenGL, and filters out calls
+ * that would not change anything: binding the program, VAO or buffer that is
+ * already bound, or setting a uniform to the value it already has.
+ *
+ * It can only know the current state if every such call goes through it. Code
+ * that changes any of this state directly must call invalidate() afterwards.
+ *
+ * It counts the calls it issued and the calls it elided. These can be dumped
+ * and reset once per frame to see how much it saves.
+ */
+public class GLStateCache {
+  private static final int UNKNOWN = -1;
+
+  private int program, vertexArray, arrayBuffer, elementArrayBuffer;
+
+  //last value of each mat4 uniform of the current program, indexed by location
+  private float[][] matrixUniforms;
+  private boolean[] matrixUniformsKnown;
+
+  private long issued, elided;
+
+  public GLStateCache() {
+    matrixUniforms = new float[16][16];
+    matrixUniformsKnown = new boolean[16];
+    invalidate();
+  }
+
+  /**
+   * Forget everything about the current state, so that the next call of each
+   * kind is issued regardless
+   */
+  public void invalidate() {
+    program = vertexArray = arrayBuffer = elementArrayBuffer = UNKNOWN;
+    forgetUniforms();
+  }
+
+  public void useProgram(GL3 gl, int program) {
+    if (this.program == program) {
+      elided++;
+      return;
+    }
+    gl.glUseProgram(program);
+    issued++;
+    this.program = program;
+    //uniform values belong to a program
+    forgetUniforms();
+  }
+
+  public void bindVertexArray(GL3 gl, int vertexArray) {
+    if (this.vertexArray == vertexArray) {
+      elided++;
+      return;
+    }
+    gl.glBindVertexArray(vertexArray);
+    issued++;
+    this.vertexArray = vertexArray;
+    //the element array buffer binding is part of the VAO state
+    elementArrayBuffer = UNKNOWN;
+  }
+
+  public void bindBuffer(GL3 gl, int target, int buffer) {
+    switch (target) {
+      case GL3.GL_ARRAY_BUFFER:
+        if (arrayBuffer == buffer) {
+          elided++;
+          return;
+        }
+        arrayBuffer = buffer;
+        break;
+      case GL3.GL_ELEMENT_ARRAY_BUFFER:
+        if (elementArrayBuffer == buffer) {
+          elided++;
+          return;
+        }
+        elementArrayBuffer = buffer;
+        break;
+      default:
+        //other targets are not tracked
+        break;
+    }
+    gl.glBindBuffer(target, buffer);
+    issued++;
+  }
+
+  /**
+   * Set a mat4 uniform of the current program from the 16 floats starting at
+   * the position of the given buffer, unless it already has that value
+   */
+  public void uniformMatrix4fv(GL3 gl, int location, FloatBuffer value) {
+    if (location < 0) {
+      return;
+    }
+    if (location >= matrixUniforms.length) {
+      growUniforms(location + 1);
+    }
+
+    float[] cached = matrixUniforms[location];
+    int position = value.position();
+    if (matrixUniformsKnown[location]) {
+      boolean same = true;
+      for (int i = 0; (i < 16) && same; i++) {
+        same = (cached[i] == value.get(position + i));
+      }
+      if (same) {
+        elided++;
+        return;
+      }
+    }
+
+    for (int i = 0; i < 16; i++) {
+      cached[i] = value.get(position + i);
+    }
+    matrixUniformsKnown[location] = true;
+    gl.glUniformMatrix4fv(location, 1, false, value);
+    issued++;
+  }
+
+  public long getIssued() {
+    return issued;
+  }
+
+  public long getElided() {
+    return elided;
+  }
+
+  public void resetCounters() {
+    issued = elided = 0;
+  }
+
+  @Override
+  public String toString() {
+    return "GL calls issued: " + issued + ", elided: " + elided;
+  }
+
+  private void forgetUniforms() {
+    for (int i = 0; i < matrixUniformsKnown.length; i++) {
+      matrixUniformsKnown[i] = false;
+    }
+  }
+
+  private void growUniforms(int size) {
+    float[][] values = new float[size][];
+    boolean[] known = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = (i < matrixUniforms.length) ? matrixUniforms[i] : new float[16];
+      known[i] = (i < matrixUniformsKnown.length) && matrixUniformsKnown[i];
+    }
+    matrixUniforms = values;
+    matrixUniformsKnown = known;
+  }
+}
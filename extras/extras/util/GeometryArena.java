@@ -0,0 +1,317 @@
+package util;
+
+import com.jogamp.common.nio.PointerBuffer;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.util.GLBuffers;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class packs the geometry of many polygon meshes into one shared vertex
+ * buffer and one shared index buffer, described by a single VAO.
+ *
+ * Each mesh added to the arena gets back a lightweight ObjectInstance, which is
+ * only a (base vertex, first index, index count) range within the shared
+ * buffers. The indices of a mesh are stored as they are, relative to its own
+ * vertices; the base vertex is added by OpenGL at draw time
+ * (glDrawElementsBaseVertex). Hence a whole scene can be drawn after a single
+ * VAO bind, or even with a single glMultiDrawElementsBaseVertex call.
+ *
+ * All meshes in an arena must provide the same vertex attributes. Meshes must
+ * be added before upload() is called, after which the arena is read-only.
+ * The vertex and index data can be put together beforehand on another thread
+ * with prepare(), so that upload() only has to hand them to OpenGL.
+ */
+public class GeometryArena {
+  private IntBuffer vao;
+  private IntBuffer vbo; //vertex and index buffers
+  private Map<String, String> shaderVarsToAttributeNames;
+  private List<PolygonMesh<?>> meshes;
+  private List<ObjectInstance> instances;
+  private int vertexCount, indexCount;
+  private boolean prepared, uploaded;
+  private GLStateCache stateCache;
+
+  //built by prepare(), and dropped once uploaded
+  private FloatBuffer vertexData;
+  private IntBuffer indexData;
+  private int[] attribSizes, attribOffsets;
+  private int sizeOfOneVertex;
+
+  //the arguments of one glMultiDrawElementsBaseVertex per primitive type, built by upload()
+  private int[] multiDrawTypes;
+  private IntBuffer[] multiDrawCounts, multiDrawBaseVertices;
+  private PointerBuffer[] multiDrawFirstIndices;
+
+  /**
+   * Create an empty arena
+   *
+   * @param shaderVarsToAttributeNames a mapping between shader variables and
+   *                                   vertex attributes, common to all meshes
+   *                                   added to this arena
+   */
+  public GeometryArena(Map<String, String> shaderVarsToAttributeNames) {
+    this.shaderVarsToAttributeNames = new LinkedHashMap<String, String>(shaderVarsToAttributeNames);
+    meshes = new ArrayList<PolygonMesh<?>>();
+    instances = new ArrayList<ObjectInstance>();
+    vertexCount = indexCount = 0;
+    prepared = uploaded = false;
+  }
+
+  /**
+   * Reserve space for the given mesh in this arena
+   *
+   * @param mesh the mesh to add
+   * @param name a name for the object
+   * @return an ObjectInstance that draws this mesh from the shared buffers
+   * @throws IllegalStateException if the arena has already been prepared or
+   *                               uploaded
+   */
+  public <K extends IVertexData> ObjectInstance add(PolygonMesh<K> mesh, String name) throws IllegalStateException {
+    if (prepared) {
+      throw new IllegalStateException("Cannot add " + name + ", the arena has already been prepared");
+    }
+    ObjectInstance instance = new ObjectInstance(this, mesh, vertexCount, indexCount, name);
+
+    meshes.add(mesh);
+    instances.add(instance);
+    vertexCount += mesh.getVertexCount();
+    indexCount += mesh.getPrimitiveCount();
+    return instance;
+  }
+
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  public int getIndexCount() {
+    return indexCount;
+  }
+
+  /**
+   * Interleave the vertices of all meshes added so far into one buffer, and
+   * put their indices into another, ready to be uploaded. This does not need
+   * OpenGL, so it may be called on any thread, as long as the arena is not
+   * used by another thread at the same time. No meshes can be added
+   * afterwards. Calling it again does nothing.
+   */
+  public void prepare() {
+    if (prepared) {
+      return;
+    }
+    if (meshes.isEmpty()) {
+      throw new IllegalStateException("Nothing to upload, the arena is empty");
+    }
+
+    //work out the layout of one vertex from the first mesh that has any vertices
+    int firstMesh = 0;
+    while ((firstMesh < meshes.size()) && meshes.get(firstMesh).getVertexAttributes().isEmpty()) {
+      firstMesh++;
+    }
+    if (firstMesh == meshes.size()) {
+      throw new IllegalArgumentException("None of the meshes of the arena has any vertices");
+    }
+    String[] attribNames = shaderVarsToAttributeNames.values().toArray(new String[0]);
+    attribSizes = new int[attribNames.length];
+    attribOffsets = new int[attribNames.length];
+    sizeOfOneVertex = 0;
+    VertexLayout first = meshes.get(firstMesh).getVertexAttributes().get(0).getLayout();
+    for (int a = 0; a < attribNames.length; a++) {
+      int slot = first.getSlot(attribNames[a]);
+      if (slot < 0) {
+        throw new IllegalArgumentException("No attribute: " + attribNames[a] + " in mesh "
+                + instances.get(firstMesh).getName());
+      }
+      attribSizes[a] = first.getSize(slot);
+      attribOffsets[a] = sizeOfOneVertex;
+      sizeOfOneVertex += attribSizes[a];
+    }
+
+    vertexData = GLBuffers.newDirectFloatBuffer(sizeOfOneVertex * vertexCount);
+    indexData = GLBuffers.newDirectIntBuffer(indexCount);
+
+    int[] slots = new int[attribNames.length];
+    for (PolygonMesh<?> mesh : meshes) {
+      //the slots of each mesh, which may be of another vertex type
+      VertexLayout layout = mesh.getVertexAttributes().isEmpty() ? first : mesh.getVertexAttributes().get(0).getLayout();
+      for (int a = 0; a < attribNames.length; a++) {
+        slots[a] = layout.getSlot(attribNames[a]);
+        if ((slots[a] < 0) || (layout.getSize(slots[a]) != attribSizes[a])) {
+          throw new IllegalArgumentException("All meshes of an arena must have the same vertex layout, "
+                  + attribNames[a] + " differs");
+        }
+      }
+      for (IVertexData v : mesh.getVertexAttributes()) {
+        for (int a = 0; a < attribNames.length; a++) {
+          int size = v.getData(slots[a], vertexData);
+          if (size != attribSizes[a]) {
+            throw new IllegalArgumentException("All meshes of an arena must have the same vertex layout, "
+                    + attribNames[a] + " has " + size + " values instead of " + attribSizes[a]);
+          }
+        }
+      }
+      for (Integer index : mesh.getPrimitives()) {
+        indexData.put(index);
+      }
+    }
+    vertexData.flip();
+    indexData.flip();
+    prepared = true;
+  }
+
+  /**
+   * Send the geometry of all meshes added so far to the GPU, preparing it
+   * first unless prepare() was called already
+   *
+   * @param gl              the GL context within which the arena is drawn
+   * @param shaderLocations the locations of the shader variables
+   * @throws IllegalStateException if the arena has already been uploaded
+   */
+  public void upload(GL3 gl, ShaderLocationsVault shaderLocations) throws IllegalStateException {
+    if (uploaded) {
+      throw new IllegalStateException("The arena has already been uploaded");
+    }
+    prepare();
+
+    vao = IntBuffer.allocate(1);
+    vbo = IntBuffer.allocate(2);
+    gl.glGenVertexArrays(1, vao);
+    gl.glBindVertexArray(vao.get(0));
+    gl.glGenBuffers(2, vbo);
+
+    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo.get(0));
+    gl.glBufferData(GL3.GL_ARRAY_BUFFER, vertexData.capacity() * GLBuffers.SIZEOF_FLOAT, vertexData, GL3.GL_STATIC_DRAW);
+
+    int a = 0;
+    for (String shaderVar : shaderVarsToAttributeNames.keySet()) {
+      int shaderLocation = shaderLocations.getLocation(shaderVar);
+
+      if (shaderLocation >= 0) {
+        gl.glVertexAttribPointer(shaderLocation, attribSizes[a], GL3.GL_FLOAT, false, Float.BYTES * sizeOfOneVertex, Float.BYTES * attribOffsets[a]);
+        gl.glEnableVertexAttribArray(shaderLocation);
+      }
+      a++;
+    }
+
+    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
+    gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, indexData.capacity() * GLBuffers.SIZEOF_INT, indexData, GL3.GL_STATIC_DRAW);
+
+    gl.glBindVertexArray(0);
+    uploaded = true;
+    //OpenGL has its own copy now
+    vertexData = null;
+    indexData = null;
+
+    prepareMultiDraw();
+  }
+
+  private void prepareMultiDraw() {
+    List<Integer> primitiveTypes = new ArrayList<Integer>();
+    for (PolygonMesh<?> mesh : meshes) {
+      if (!primitiveTypes.contains(mesh.getPrimitiveType())) {
+        primitiveTypes.add(mesh.getPrimitiveType());
+      }
+    }
+
+    multiDrawTypes = new int[primitiveTypes.size()];
+    multiDrawCounts = new IntBuffer[primitiveTypes.size()];
+    multiDrawBaseVertices = new IntBuffer[primitiveTypes.size()];
+    multiDrawFirstIndices = new PointerBuffer[primitiveTypes.size()];
+
+    for (int i = 0; i < primitiveTypes.size(); i++) {
+      multiDrawTypes[i] = primitiveTypes.get(i);
+
+      int drawCount = 0;
+      for (PolygonMesh<?> mesh : meshes) {
+        if (mesh.getPrimitiveType() == multiDrawTypes[i]) {
+          drawCount++;
+        }
+      }
+      multiDrawCounts[i] = GLBuffers.newDirectIntBuffer(drawCount);
+      multiDrawBaseVertices[i] = GLBuffers.newDirectIntBuffer(drawCount);
+      multiDrawFirstIndices[i] = PointerBuffer.allocateDirect(drawCount);
+
+      for (ObjectInstance instance : instances) {
+        if (instance.getMesh().getPrimitiveType() == multiDrawTypes[i]) {
+          multiDrawCounts[i].put(instance.getMesh().getPrimitiveCount());
+          multiDrawBaseVertices[i].put(instance.getBaseVertex());
+          multiDrawFirstIndices[i].put((long) instance.getFirstIndex() * GLBuffers.SIZEOF_INT);
+        }
+      }
+      multiDrawCounts[i].rewind();
+      multiDrawBaseVertices[i].rewind();
+      multiDrawFirstIndices[i].rewind();
+    }
+  }
+
+  /**
+   * Bind the VAO of this arena. Every object of the arena can then be drawn
+   * without binding anything else. Through a state cache, this is skipped if
+   * the VAO is already bound; without one, it is always bound, as something
+   * else may have bound another VAO since.
+   */
+  public void bind(GL3 gl) {
+    if (stateCache != null) {
+      stateCache.bindVertexArray(gl, vao.get(0));
+    } else {
+      gl.glBindVertexArray(vao.get(0));
+    }
+  }
+
+  public void unbind(GL3 gl) {
+    //with a cache the VAO stays bound, the cache will skip binding it again
+    if (stateCache == null) {
+      gl.glBindVertexArray(0);
+    }
+  }
+
+  /**
+   * Bind the VAO of this arena through the given cache from now on. Pass null to
+   * talk to OpenGL directly again.
+   */
+  public void setStateCache(GLStateCache stateCache) {
+    this.stateCache = stateCache;
+  }
+
+  /**
+   * Draw one range of the shared buffers. Called by the ObjectInstances of this
+   * arena.
+   */
+  void drawRange(GL3 gl, int primitiveType, int count, int firstIndex, int baseVertex) {
+    bind(gl);
+    gl.glDrawElementsBaseVertex(primitiveType, count, GL.GL_UNSIGNED_INT, (long) firstIndex * GLBuffers.SIZEOF_INT, baseVertex);
+  }
+
+  /**
+   * Draw every object of this arena with whatever uniforms are currently set,
+   * issuing one glMultiDrawElementsBaseVertex per primitive type
+   *
+   * @param gla the context within which the arena is drawn
+   */
+  public void drawAll(GLAutoDrawable gla) {
+    GL3 gl = gla.getGL().getGL3();
+    bind(gl);
+
+    for (int i = 0; i < multiDrawTypes.length; i++) {
+      gl.glMultiDrawElementsBaseVertex(multiDrawTypes[i], multiDrawCounts[i], GL.GL_UNSIGNED_INT,
+              multiDrawFirstIndices[i], multiDrawCounts[i].remaining(), multiDrawBaseVertices[i]);
+    }
+    unbind(gl);
+  }
+
+  public void cleanup(GLAutoDrawable gla) {
+    GL3 gl = gla.getGL().getGL3();
+    if ((vao != null) && (vao.get(0) != 0)) {
+      gl.glDeleteBuffers(2, vbo);
+      gl.glDeleteVertexArrays(1, vao);
+      vao.put(0, 0);
+    }
+  }
+}
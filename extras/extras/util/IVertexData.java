@@ -1,10 +1,19 @@
 package util;
 
-import java.util.Map;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 /**
  * Interface for any class that stores and processes vertex attributes Each
  * attribute will have a unique name.
+ *
+ * Each attribute also has a slot in the {@link VertexLayout} of the vertex.
+ * Code that goes through many vertices should resolve the slots of the
+ * attributes it needs once, and then read and write them through the slot
+ * methods, which copy into and out of arrays and buffers given by the
+ * caller. The defaults of those methods go through the string methods, so
+ * existing vertex types work unchanged; a vertex type overrides them, and
+ * getLayout(), to avoid the string lookups and the arrays.
  */
 public interface IVertexData {
   /**
@@ -46,5 +55,68 @@ public interface IVertexData {
    */
   String[] getAllAttributes();
 
+  /**
+   * The attributes of this vertex by slot. A vertex type should return the
+   * same layout for all its vertices; the default works it out every time,
+   * see {@link VertexLayout#of}, with the slots in the order of
+   * getAllAttributes().
+   */
+  default VertexLayout getLayout() {
+    return VertexLayout.of(this);
+  }
 
+  /**
+   * Copy the data of the attribute in the given slot into an array
+   *
+   * @param slot   the slot of the attribute in getLayout()
+   * @param out    the array to copy into
+   * @param offset where to start in the array
+   * @return the number of floats copied
+   * @throws IllegalArgumentException if there is no attribute in that slot
+   */
+  default int getData(int slot, float[] out, int offset) throws IllegalArgumentException {
+    float[] data = getData(getAttributeName(slot));
+    System.arraycopy(data, 0, out, offset, data.length);
+    return data.length;
+  }
+
+  /**
+   * Put the data of the attribute in the given slot into a buffer, at its
+   * position, moving the position past it
+   *
+   * @return the number of floats put
+   * @throws IllegalArgumentException if there is no attribute in that slot
+   */
+  default int getData(int slot, FloatBuffer out) throws IllegalArgumentException {
+    float[] data = getData(getAttributeName(slot));
+    out.put(data);
+    return data.length;
+  }
+
+  /**
+   * Set the data of the attribute in the given slot from part of an array,
+   * in the same way as setData(String, float[])
+   *
+   * @param slot   the slot of the attribute in getLayout()
+   * @param data   the array to copy from
+   * @param offset where the data starts in the array
+   * @param count  the number of floats
+   * @throws IllegalArgumentException if there is no attribute in that slot,
+   *                                  or it cannot take that many floats
+   */
+  default void setData(int slot, float[] data, int offset, int count) throws IllegalArgumentException {
+    setData(getAttributeName(slot), Arrays.copyOfRange(data, offset, offset + count));
+  }
+
+  /**
+   * The name of the attribute in the given slot of getLayout()
+   *
+   * @throws IllegalArgumentException if there is no attribute in that slot
+   */
+  default String getAttributeName(int slot) throws IllegalArgumentException {
+    VertexLayout layout = getLayout();
+    if ((slot < 0) || (slot >= layout.getAttributeCount()))
+      throw new IllegalArgumentException("No attribute in slot " + slot);
+    return layout.getName(slot);
+  }
 }
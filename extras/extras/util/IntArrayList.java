@@ -0,0 +1,98 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A growable array of primitive ints, used in place of a List of boxed
+ * Integers when reading large meshes
+ */
+class IntArrayList {
+  private int[] data;
+  private int size;
+
+  IntArrayList() {
+    this(1024);
+  }
+
+  IntArrayList(int capacity) {
+    data = new int[Math.max(capacity, 4)];
+    size = 0;
+  }
+
+  /**
+   * A list holding the first size values of data, without copying them
+   */
+  IntArrayList(int[] data, int size) {
+    this.data = data;
+    this.size = size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(int i) {
+    return data[i];
+  }
+
+  void set(int i, int value) {
+    data[i] = value;
+  }
+
+  void add(int value) {
+    if (size == data.length)
+      grow(size + 1);
+    data[size++] = value;
+  }
+
+  void add(int a, int b, int c) {
+    if (size + 3 > data.length)
+      grow(size + 3);
+    data[size] = a;
+    data[size + 1] = b;
+    data[size + 2] = c;
+    size += 3;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * The backing array, valid up to size(). It is replaced when the list grows
+   */
+  int[] array() {
+    return data;
+  }
+
+  int[] toArray() {
+    return Arrays.copyOf(data, size);
+  }
+
+  /**
+   * A read-only List view of the current contents, boxing on access
+   */
+  List<Integer> asList() {
+    final int[] values = data;
+    final int count = size;
+    return new AbstractList<Integer>() {
+      @Override
+      public Integer get(int index) {
+        if ((index < 0) || (index >= count))
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        return values[index];
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  private void grow(int minCapacity) {
+    data = Arrays.copyOf(data, Math.max(minCapacity, data.length + (data.length >> 1)));
+  }
+}
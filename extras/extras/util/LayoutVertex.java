@@ -0,0 +1,109 @@
+package util;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A vertex of any attributes, made by a {@link VertexFormat}: all its
+ * attributes are kept in one array of floats, interleaved as in the layout
+ * of the format, and read and written by slot with plain array copies.
+ *
+ * This takes the place of writing a vertex class for every combination of
+ * attributes. The string methods go through the slots.
+ */
+public final class LayoutVertex implements IVertexData {
+  private final VertexFormat format;
+  private final float[] data;
+
+  LayoutVertex(VertexFormat format) {
+    this.format = format;
+    this.data = format.getDefaults();
+  }
+
+  public VertexFormat getFormat() {
+    return format;
+  }
+
+  @Override
+  public boolean hasData(String attribName) {
+    return format.getLayout().hasAttribute(attribName);
+  }
+
+  @Override
+  public float[] getData(String attribName) throws IllegalArgumentException {
+    int slot = slot(attribName, "No attribute: " + attribName + " found!");
+    int start = format.getLayout().getOffset(slot);
+    return Arrays.copyOfRange(data, start, start + format.getLayout().getSize(slot));
+  }
+
+  @Override
+  public void setData(String attribName, float[] values) throws IllegalArgumentException {
+    setData(slot(attribName, "Attribute: " + attribName + " unsupported!"), values, 0, values.length);
+  }
+
+  @Override
+  public String[] getAllAttributes() {
+    VertexLayout layout = format.getLayout();
+    String[] names = new String[layout.getAttributeCount()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = layout.getName(i);
+    }
+    return names;
+  }
+
+  @Override
+  public VertexLayout getLayout() {
+    return format.getLayout();
+  }
+
+  @Override
+  public int getData(int slot, float[] out, int offset) throws IllegalArgumentException {
+    VertexLayout layout = checkSlot(slot);
+    System.arraycopy(data, layout.getOffset(slot), out, offset, layout.getSize(slot));
+    return layout.getSize(slot);
+  }
+
+  @Override
+  public int getData(int slot, FloatBuffer out) throws IllegalArgumentException {
+    VertexLayout layout = checkSlot(slot);
+    out.put(data, layout.getOffset(slot), layout.getSize(slot));
+    return layout.getSize(slot);
+  }
+
+  /**
+   * Set up to the size of an attribute. The floats not given are set to
+   * those of a new vertex.
+   */
+  @Override
+  public void setData(int slot, float[] values, int offset, int count) throws IllegalArgumentException {
+    VertexLayout layout = checkSlot(slot);
+    int start = layout.getOffset(slot), size = layout.getSize(slot);
+    if (count > size)
+      throw new IllegalArgumentException("Too much data for attribute: " + layout.getName(slot));
+    System.arraycopy(values, offset, data, start, count);
+    if (count < size)
+      format.copyDefaults(data, start + count, size - count);
+  }
+
+  /**
+   * The interleaved attributes of this vertex, for VertexFormat to copy in
+   * one go
+   */
+  float[] array() {
+    return data;
+  }
+
+  private VertexLayout checkSlot(int slot) throws IllegalArgumentException {
+    VertexLayout layout = format.getLayout();
+    if ((slot < 0) || (slot >= layout.getAttributeCount()))
+      throw new IllegalArgumentException("No attribute in slot " + slot);
+    return layout;
+  }
+
+  private int slot(String attribName, String message) throws IllegalArgumentException {
+    int slot = format.getLayout().getSlot(attribName);
+    if (slot < 0)
+      throw new IllegalArgumentException(message);
+    return slot;
+  }
+}
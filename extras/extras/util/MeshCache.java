@@ -0,0 +1,314 @@
+package util;
+
+import org.joml.Vector4f;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A mesh stored in the binary mesh cache format written by
+ * {@link MeshCacheExporter}, and memory-mapped from its file. The vertex and
+ * index data stay in the mapped file and can be given to glBufferData as they
+ * are, see the ObjectInstance constructor that takes a MeshCache.
+ *
+ * The format, all little-endian:
+ *
+ * <ul> <li>a header: the magic "MSHC", the format version, the size of the
+ * header, the hash of the source the mesh was made from, primitive type and
+ * size, vertex and index counts, the number of floats per vertex, the bounding
+ * box and the layout of one vertex as a list of attribute name, number of
+ * floats and offset in floats</li> <li>the interleaved vertex attributes, from
+ * the end of the header (a multiple of 16 bytes)</li> <li>the indices, as
+ * 32-bit ints</li> </ul>
+ *
+ * A mesh cache can also be built in memory, see build().
+ *
+ * loadOrBuild() keeps the cache of an OBJ file up to date: the cache is only
+ * used if its hash matches the current contents of the OBJ file, and is
+ * rebuilt otherwise.
+ */
+public class MeshCache {
+  public static final int MAGIC = 0x4353484D; //"MSHC"
+  public static final int VERSION = 1;
+  public static final int HASH_SIZE = 32;
+  public static final String EXTENSION = ".meshcache";
+
+  private final ByteBuffer vertexData;
+  private final ByteBuffer indexData;
+  private final byte[] sourceHash;
+  private final int primitiveType, primitiveSize;
+  private final int vertexCount, indexCount;
+  private final int stride;
+  private final Vector4f minBounds, maxBounds;
+  //attribute name -> {number of floats, offset in floats}
+  private final Map<String, int[]> layout;
+
+  private MeshCache(ByteBuffer file) throws IOException {
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if ((file.capacity() < 16) || (file.getInt(0) != MAGIC))
+      throw new IOException("Not a mesh cache file");
+    if (file.getInt(4) != VERSION)
+      throw new IOException("Unsupported mesh cache version " + file.getInt(4));
+
+    int headerSize = file.getInt(8);
+    if ((headerSize < 16) || (headerSize > file.capacity()))
+      throw new IOException("Mesh cache header size " + headerSize + " does not fit the file");
+
+    //read the header within its own size, so that a garbled one cannot run past it
+    ByteBuffer header = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    header.limit(headerSize);
+    header.position(16);
+    try {
+      sourceHash = new byte[HASH_SIZE];
+      header.get(sourceHash);
+      primitiveType = header.getInt();
+      primitiveSize = header.getInt();
+      vertexCount = header.getInt();
+      indexCount = header.getInt();
+      stride = header.getInt();
+      minBounds = new Vector4f(header.getFloat(), header.getFloat(), header.getFloat(), header.getFloat());
+      maxBounds = new Vector4f(header.getFloat(), header.getFloat(), header.getFloat(), header.getFloat());
+      if ((vertexCount < 0) || (indexCount < 0) || (stride < 0))
+        throw new IOException("Mesh cache header has negative counts");
+
+      int attributeCount = header.getInt();
+      if (attributeCount < 0)
+        throw new IOException("Mesh cache header has a negative number of attributes");
+      layout = new LinkedHashMap<String, int[]>();
+      for (int i = 0; i < attributeCount; i++) {
+        int size = header.getInt();
+        int offset = header.getInt();
+        if ((size < 0) || (offset < 0) || (offset + (long) size > stride))
+          throw new IOException("Mesh cache attribute " + i + " does not fit in a vertex");
+        int nameLength = header.getShort();
+        if (nameLength < 0)
+          throw new IOException("Mesh cache attribute " + i + " has a negative name length");
+        byte[] name = new byte[nameLength];
+        header.get(name);
+        layout.put(new String(name, StandardCharsets.UTF_8), new int[]{size, offset});
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Mesh cache header is truncated", e);
+    }
+
+    long vertexBytes = (long) vertexCount * stride * Float.BYTES;
+    long indexBytes = (long) indexCount * Integer.BYTES;
+    if (headerSize + vertexBytes + indexBytes != file.capacity())
+      throw new IOException("Mesh cache file is truncated or corrupt");
+
+    vertexData = slice(file, headerSize, (int) vertexBytes);
+    indexData = slice(file, headerSize + (int) vertexBytes, (int) indexBytes);
+  }
+
+  private static ByteBuffer slice(ByteBuffer file, int offset, int length) {
+    ByteBuffer data = file.duplicate();
+    data.limit(offset + length);
+    data.position(offset);
+    data = data.slice();
+
+    //OpenGL reads buffers in the byte order of the machine
+    if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+      ByteBuffer copy = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+      data.order(ByteOrder.LITTLE_ENDIAN);
+      while (data.hasRemaining()) {
+        copy.putInt(data.getInt());
+      }
+      copy.flip();
+      return copy;
+    }
+    return data.order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Map a mesh cache file
+   *
+   * @throws IOException if the file cannot be read or is not a valid mesh
+   *                     cache
+   */
+  public static MeshCache load(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Mesh cache file too large to be mapped: " + file);
+      //the mapping stays valid after the channel is closed
+      return new MeshCache(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Build a mesh cache in memory rather than in a file, with the same layout
+   * as a file written by MeshCacheExporter. This does not need OpenGL, so the
+   * vertex and index data can be prepared on another thread and then given to
+   * the ObjectInstance constructor that takes a MeshCache on the GL thread.
+   * The source hash is all zeros.
+   *
+   * @param mesh       the mesh
+   * @param attributes the vertex attributes to interleave, in order
+   */
+  public static <K extends IVertexData> MeshCache build(PolygonMesh<K> mesh, String[] attributes) throws IllegalArgumentException {
+    try {
+      return new MeshCache(MeshCacheExporter.exportBuffer(mesh, attributes, new byte[HASH_SIZE]));
+    } catch (IOException e) {
+      //the buffer was just written in the right format
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Load the cached mesh of an OBJ file from the given cache directory. If
+   * there is no cache yet, or it was made from a different version of the OBJ
+   * file or with different options, the OBJ file is imported and the cache is
+   * written again first.
+   *
+   * @param producer       the vertex type to import the OBJ file with
+   * @param objFile        the OBJ file
+   * @param cacheDirectory the directory of the cache files
+   * @param attributes     the vertex attributes to store in the cache, in
+   *                       order
+   * @param scaleAndCenter passed on to the importer
+   */
+  public static <K extends IVertexData> MeshCache loadOrBuild(VertexProducer<K> producer, Path objFile, Path cacheDirectory,
+                                                              String[] attributes, boolean scaleAndCenter) throws IOException {
+    byte[] hash = sourceHash(objFile, attributes, scaleAndCenter);
+    Path cacheFile = cacheDirectory.resolve(objFile.getFileName().toString() + EXTENSION);
+
+    if (Files.isRegularFile(cacheFile)) {
+      try {
+        MeshCache cache = load(cacheFile);
+        if (Arrays.equals(cache.sourceHash, hash))
+          return cache;
+      } catch (IOException e) {
+        //unreadable or from an older version, rebuild it below
+      }
+    }
+
+    PolygonMesh<K> mesh = FastObjImporter.importFileParallel(producer, objFile, scaleAndCenter);
+    Files.createDirectories(cacheDirectory);
+    MeshCacheExporter.exportFile(mesh, attributes, hash, cacheFile);
+    return load(cacheFile);
+  }
+
+  /**
+   * The key of the cache of an OBJ file: a SHA-256 hash of its contents and of
+   * the options it is imported with
+   */
+  public static byte[] sourceHash(Path objFile, String[] attributes, boolean scaleAndCenter) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+
+    FileChannel channel = FileChannel.open(objFile, StandardOpenOption.READ);
+    try {
+      ByteBuffer block = ByteBuffer.allocateDirect(1 << 20);
+      while (channel.read(block) >= 0) {
+        block.flip();
+        digest.update(block);
+        block.clear();
+      }
+    } finally {
+      channel.close();
+    }
+
+    for (String attribute : attributes) {
+      digest.update(attribute.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    digest.update((byte) (scaleAndCenter ? 1 : 0));
+    return digest.digest();
+  }
+
+  /**
+   * The interleaved vertex attributes, in the byte order of the machine
+   */
+  public ByteBuffer getVertexData() {
+    return vertexData.duplicate().order(vertexData.order());
+  }
+
+  /**
+   * The indices as 32-bit ints, in the byte order of the machine
+   */
+  public ByteBuffer getIndexData() {
+    return indexData.duplicate().order(indexData.order());
+  }
+
+  public byte[] getSourceHash() {
+    return sourceHash.clone();
+  }
+
+  public int getPrimitiveType() {
+    return primitiveType;
+  }
+
+  public int getPrimitiveSize() {
+    return primitiveSize;
+  }
+
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  public int getIndexCount() {
+    return indexCount;
+  }
+
+  /**
+   * The number of floats per vertex
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  public boolean hasAttribute(String attribName) {
+    return layout.containsKey(attribName);
+  }
+
+  public String[] getAttributes() {
+    return layout.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * The number of floats of the given attribute
+   */
+  public int getAttributeSize(String attribName) throws IllegalArgumentException {
+    return attribute(attribName)[0];
+  }
+
+  /**
+   * Where the given attribute starts within a vertex, in floats
+   */
+  public int getAttributeOffset(String attribName) throws IllegalArgumentException {
+    return attribute(attribName)[1];
+  }
+
+  private int[] attribute(String attribName) throws IllegalArgumentException {
+    int[] attribute = layout.get(attribName);
+    if (attribute == null)
+      throw new IllegalArgumentException("No attribute: " + attribName + " in the mesh cache");
+    return attribute;
+  }
+
+  public Vector4f getMinimumBounds() {
+    return new Vector4f(minBounds);
+  }
+
+  public Vector4f getMaximumBounds() {
+    return new Vector4f(maxBounds);
+  }
+}
@@ -0,0 +1,192 @@
+package util;
+
+import org.joml.Vector4f;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A helper class to export a PolygonMesh object to the binary mesh cache
+ * format read by {@link MeshCache}. Only the given vertex attributes are
+ * written, interleaved in the given order.
+ */
+public class MeshCacheExporter {
+  private static final int BLOCK_SIZE = 1 << 20;
+
+  /**
+   * Write the mesh to a file. The file is written under a temporary name and
+   * then renamed, so that a reader never sees a half written cache.
+   *
+   * @param mesh       the mesh to export
+   * @param attributes the vertex attributes to export, all of which must be
+   *                   present in the mesh
+   * @param sourceHash the hash of the source of the mesh, see
+   *                   MeshCache.sourceHash
+   * @param file       the file to write
+   */
+  public static <K extends IVertexData> void exportFile(PolygonMesh<K> mesh, String[] attributes,
+                                                        byte[] sourceHash, Path file) throws IOException, IllegalArgumentException {
+    Header header = new Header(mesh, attributes, sourceHash);
+    ByteBuffer block = ByteBuffer.allocateDirect(Math.max(BLOCK_SIZE, header.size)).order(ByteOrder.LITTLE_ENDIAN);
+    header.write(block, mesh);
+
+    //a name of its own, so that two threads or instances writing the same cache do not mix
+    Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+      try {
+        writeData(mesh, header, block, channel);
+        flush(channel, block);
+      } finally {
+        channel.close();
+      }
+
+      try {
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Write the mesh into a direct buffer, in the same format as a file. See
+   * {@link MeshCache#build}.
+   */
+  static <K extends IVertexData> ByteBuffer exportBuffer(PolygonMesh<K> mesh, String[] attributes,
+                                                         byte[] sourceHash) throws IllegalArgumentException {
+    Header header = new Header(mesh, attributes, sourceHash);
+    long size = header.size + ((long) mesh.getVertexCount() * header.stride + mesh.getPrimitiveCount()) * Float.BYTES;
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("The mesh is too large for one buffer");
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+    header.write(buffer, mesh);
+    try {
+      writeData(mesh, header, buffer, null);
+    } catch (IOException e) {
+      //there is no channel, and the buffer is large enough
+      throw new IllegalStateException(e);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Write the interleaved vertices and then the indices, writing the block out
+   * to the channel whenever it fills up
+   */
+  private static <K extends IVertexData> void writeData(PolygonMesh<K> mesh, Header header,
+                                                        ByteBuffer block, FileChannel channel) throws IOException {
+    //each attribute is read by slot into the same array
+    float[] data = new float[Math.max(header.stride, 1)];
+    for (IVertexData v : mesh.getVertexAttributes()) {
+      for (int i = 0; i < header.slots.length; i++) {
+        int size = v.getData(header.slots[i], data, 0);
+        if (size != header.sizes[i])
+          throw new IllegalArgumentException("All vertices must have the same layout, "
+                  + header.attributes[i] + " has " + size + " values instead of " + header.sizes[i]);
+        if (block.remaining() < size * Float.BYTES)
+          flush(channel, block);
+        for (int j = 0; j < size; j++) {
+          block.putFloat(data[j]);
+        }
+      }
+    }
+    for (Integer index : mesh.getPrimitives()) {
+      if (block.remaining() < Integer.BYTES)
+        flush(channel, block);
+      block.putInt(index);
+    }
+  }
+
+  /**
+   * The layout of one vertex, and the header describing it
+   */
+  private static class Header {
+    final String[] attributes;
+    final byte[] sourceHash;
+    final int[] sizes, slots;
+    final byte[][] names;
+    final int stride, size;
+
+    <K extends IVertexData> Header(PolygonMesh<K> mesh, String[] attributes, byte[] sourceHash) {
+      List<K> vertexData = mesh.getVertexAttributes();
+
+      if (sourceHash.length != MeshCache.HASH_SIZE)
+        throw new IllegalArgumentException("The source hash must be " + MeshCache.HASH_SIZE + " bytes");
+
+      this.attributes = attributes;
+      this.sourceHash = sourceHash;
+      sizes = new int[attributes.length];
+      slots = new int[attributes.length];
+      names = new byte[attributes.length][];
+      int stride = 0;
+      int headerSize = 4 * 4 + MeshCache.HASH_SIZE + 5 * 4 + 8 * 4 + 4;
+      VertexLayout layout = (vertexData.size() > 0) ? vertexData.get(0).getLayout() : null;
+      for (int i = 0; i < attributes.length; i++) {
+        if (layout != null) {
+          slots[i] = layout.getSlot(attributes[i]);
+          if ((slots[i] < 0) || !vertexData.get(0).hasData(attributes[i]))
+            throw new IllegalArgumentException("The mesh has no attribute: " + attributes[i]);
+          sizes[i] = layout.getSize(slots[i]);
+        }
+        names[i] = attributes[i].getBytes(StandardCharsets.UTF_8);
+        headerSize += 4 + 4 + 2 + names[i].length;
+        stride += sizes[i];
+      }
+      this.stride = stride;
+      //start the vertex data on a 16 byte boundary
+      this.size = (headerSize + 15) & ~15;
+    }
+
+    void write(ByteBuffer block, PolygonMesh<?> mesh) {
+      Vector4f minBounds = mesh.getMinimumBounds();
+      Vector4f maxBounds = mesh.getMaximumBounds();
+
+      block.putInt(MeshCache.MAGIC);
+      block.putInt(MeshCache.VERSION);
+      block.putInt(size);
+      block.putInt(0); //reserved
+      block.put(sourceHash);
+      block.putInt(mesh.getPrimitiveType());
+      block.putInt(mesh.getPrimitiveSize());
+      block.putInt(mesh.getVertexCount());
+      block.putInt(mesh.getPrimitiveCount());
+      block.putInt(stride);
+      block.putFloat(minBounds.x).putFloat(minBounds.y).putFloat(minBounds.z).putFloat(minBounds.w);
+      block.putFloat(maxBounds.x).putFloat(maxBounds.y).putFloat(maxBounds.z).putFloat(maxBounds.w);
+      block.putInt(attributes.length);
+      int offset = 0;
+      for (int i = 0; i < attributes.length; i++) {
+        block.putInt(sizes[i]);
+        block.putInt(offset);
+        block.putShort((short) names[i].length);
+        block.put(names[i]);
+        offset += sizes[i];
+      }
+      while (block.position() < size) {
+        block.put((byte) 0);
+      }
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer block) throws IOException {
+    block.flip();
+    while (block.hasRemaining()) {
+      channel.write(block);
+    }
+    block.clear();
+  }
+}
@@ -0,0 +1,516 @@
+package util;
+
+import com.jogamp.opengl.GL;
+
+import java.util.Arrays;
+
+/**
+ * Reorders a triangle mesh so that it draws faster, without changing what is
+ * drawn. It works on a {@link PackedPolygonMesh} of GL_TRIANGLES, in place,
+ * in these steps:
+ *
+ * <ol> <li>Welding: vertices with exactly the same values for all attributes
+ * are merged into one, found through a hash table.</li>
+ *
+ * <li>Vertex cache order: the triangles are reordered so that triangles
+ * sharing vertices are drawn close together, and the vertices they share are
+ * still in the post-transform vertex cache. This uses Tom Forsyth's linear
+ * speed vertex cache optimization.</li>
+ *
+ * <li>Vertex fetch order: the vertices are renumbered in the order in which
+ * the triangles first use them, so that they are read from memory in
+ * order.</li>
+ *
+ * <li>Optionally, the triangles are turned into one GL_TRIANGLE_STRIP,
+ * joining separate strips with degenerate triangles.</li> </ol>
+ *
+ * The average cache miss ratio (ACMR), the number of vertices transformed per
+ * triangle with a FIFO cache, is reported before and after.
+ */
+public class MeshOptimizer {
+  /**
+   * The size of the FIFO cache used to report the ACMR
+   */
+  public static final int ACMR_CACHE_SIZE = 16;
+
+  //the LRU cache modelled when ordering triangles, and the scoring from Forsyth's article
+  private static final int CACHE_SIZE = 32;
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2.0f;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+  private static final int VALENCE_TABLE_SIZE = 32;
+
+  private static final float[] cacheScores = new float[CACHE_SIZE];
+  private static final float[] valenceScores = new float[VALENCE_TABLE_SIZE];
+
+  static {
+    for (int i = 0; i < CACHE_SIZE; i++) {
+      if (i < 3) {
+        //the vertices of the last triangle get a fixed score, so that the next
+        //triangle does not simply go back and forth along a strip
+        cacheScores[i] = LAST_TRIANGLE_SCORE;
+      } else {
+        cacheScores[i] = (float) Math.pow(1.0f - (float) (i - 3) / (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+      }
+    }
+    for (int i = 1; i < VALENCE_TABLE_SIZE; i++) {
+      valenceScores[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+    }
+  }
+
+  /**
+   * What optimizing a mesh changed
+   */
+  public static class Report {
+    private int vertexCountBefore, vertexCountAfter;
+    private int indexCountBefore, indexCountAfter;
+    private float acmrBefore, acmrAfter;
+
+    public int getVertexCountBefore() {
+      return vertexCountBefore;
+    }
+
+    public int getVertexCountAfter() {
+      return vertexCountAfter;
+    }
+
+    public int getIndexCountBefore() {
+      return indexCountBefore;
+    }
+
+    public int getIndexCountAfter() {
+      return indexCountAfter;
+    }
+
+    public float getAcmrBefore() {
+      return acmrBefore;
+    }
+
+    public float getAcmrAfter() {
+      return acmrAfter;
+    }
+
+    @Override
+    public String toString() {
+      return "vertices " + vertexCountBefore + " -> " + vertexCountAfter
+              + ", indices " + indexCountBefore + " -> " + indexCountAfter
+              + ", ACMR " + acmrBefore + " -> " + acmrAfter;
+    }
+  }
+
+  /**
+   * Optimize a triangle mesh in place. The ACMR after is that of the
+   * reordered triangles, before any strip is made.
+   *
+   * @param mesh   a mesh of GL_TRIANGLES
+   * @param strips whether to turn the triangles into one GL_TRIANGLE_STRIP.
+   *               Such a mesh is for drawing only: normals cannot be computed
+   *               for it, and it cannot be exported
+   */
+  public static Report optimize(PackedPolygonMesh mesh, boolean strips) throws IllegalArgumentException {
+    checkTriangles(mesh);
+    Report report = new Report();
+    report.vertexCountBefore = mesh.getVertexCount();
+    report.indexCountBefore = mesh.getPrimitiveCount();
+    report.acmrBefore = acmr(mesh.getPrimitives(), mesh.getVertexCount(), ACMR_CACHE_SIZE);
+
+    weld(mesh);
+    mesh.setPrimitives(optimizeVertexCache(mesh.getPrimitives(), mesh.getVertexCount()));
+    optimizeVertexFetch(mesh);
+    report.acmrAfter = acmr(mesh.getPrimitives(), mesh.getVertexCount(), ACMR_CACHE_SIZE);
+
+    if (strips) {
+      mesh.setPrimitives(toTriangleStrip(mesh.getPrimitives(), mesh.getVertexCount()));
+      mesh.setPrimitiveType(GL.GL_TRIANGLE_STRIP);
+      mesh.setPrimitiveSize(1);
+    }
+    report.vertexCountAfter = mesh.getVertexCount();
+    report.indexCountAfter = mesh.getPrimitiveCount();
+    return report;
+  }
+
+  /**
+   * The average number of vertices transformed per triangle, with a FIFO
+   * vertex cache of the given size. This is between 0.5 (for very large
+   * regular meshes) and 3.
+   */
+  public static float acmr(int[] triangles, int vertexCount, int cacheSize) {
+    int faceCount = triangles.length / 3;
+    if (faceCount == 0)
+      return 0;
+
+    //a vertex is in the cache if fewer than cacheSize misses happened since it was loaded
+    int[] loadedAt = new int[vertexCount];
+    Arrays.fill(loadedAt, Integer.MIN_VALUE / 2);
+    int misses = 0;
+
+    for (int i = 0; i < 3 * faceCount; i++) {
+      int v = triangles[i];
+      if (misses - loadedAt[v] >= cacheSize) {
+        loadedAt[v] = misses;
+        misses++;
+      }
+    }
+    return (float) misses / faceCount;
+  }
+
+  /**
+   * Merge vertices that have exactly the same values for all attributes, and
+   * change the indices to match. Positive and negative zero are taken to be
+   * the same.
+   *
+   * @return the number of vertices left
+   */
+  public static int weld(PackedPolygonMesh mesh) {
+    int vertexCount = mesh.getVertexCount();
+    String[] names = mesh.getAllAttributes();
+    float[][] data = new float[names.length][];
+    int[] components = new int[names.length];
+    for (int a = 0; a < names.length; a++) {
+      data[a] = mesh.getAttribute(names[a]);
+      components[a] = mesh.getComponentCount(names[a]);
+    }
+
+    //open addressing, holding the first vertex seen with each value (plus 1)
+    int tableSize = Integer.highestOneBit(Math.max(2 * vertexCount, 2) - 1) << 1;
+    int[] table = new int[tableSize];
+    int[] remap = new int[vertexCount];
+    int[] kept = new int[vertexCount];
+    int keptCount = 0;
+
+    for (int v = 0; v < vertexCount; v++) {
+      int slot = hash(data, components, v) & (tableSize - 1);
+      while ((table[slot] != 0) && !sameVertex(data, components, table[slot] - 1, v)) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      if (table[slot] == 0) {
+        table[slot] = v + 1;
+        remap[v] = keptCount;
+        kept[keptCount++] = v;
+      } else {
+        remap[v] = remap[table[slot] - 1];
+      }
+    }
+
+    if (keptCount < vertexCount)
+      rebuild(mesh, names, data, components, kept, keptCount, remap);
+    return keptCount;
+  }
+
+  /**
+   * Reorder triangles so that the vertices they share stay in the
+   * post-transform vertex cache, using Forsyth's algorithm. Each vertex is
+   * scored by where it is in a modelled LRU cache and by how many triangles
+   * still need it, and the triangle with the highest total score among those
+   * using cached vertices is drawn next.
+   *
+   * @param triangles   the indices, 3 per triangle
+   * @param vertexCount the number of vertices
+   * @return the same triangles in a new order, with the same winding
+   */
+  public static int[] optimizeVertexCache(int[] triangles, int vertexCount) {
+    int faceCount = triangles.length / 3;
+    int[] result = new int[3 * faceCount];
+    if (faceCount == 0)
+      return result;
+
+    int[] offsets = new int[vertexCount + 1];
+    int[] adjacent = adjacentTriangles(triangles, faceCount, vertexCount, offsets);
+
+    int[] valence = new int[vertexCount];
+    int[] cachePosition = new int[vertexCount];
+    float[] vertexScore = new float[vertexCount];
+    for (int v = 0; v < vertexCount; v++) {
+      valence[v] = offsets[v + 1] - offsets[v];
+      cachePosition[v] = -1;
+      vertexScore[v] = vertexScore(-1, valence[v]);
+    }
+
+    float[] triangleScore = new float[faceCount];
+    boolean[] emitted = new boolean[faceCount];
+    int best = -1;
+    float bestScore = -1;
+    for (int t = 0; t < faceCount; t++) {
+      triangleScore[t] = vertexScore[triangles[3 * t]] + vertexScore[triangles[3 * t + 1]]
+              + vertexScore[triangles[3 * t + 2]];
+      if (triangleScore[t] > bestScore) {
+        bestScore = triangleScore[t];
+        best = t;
+      }
+    }
+
+    int[] cache = new int[CACHE_SIZE + 3];
+    int[] newCache = new int[CACHE_SIZE + 3];
+    int cacheCount = 0;
+    int next = 0; //no triangle before this one is left
+
+    for (int out = 0; out < faceCount; out++) {
+      if (best < 0) {
+        //nothing in the cache is of use: start again from the first triangle left
+        while (emitted[next])
+          next++;
+        best = next;
+      }
+
+      emitted[best] = true;
+      int newCount = 0;
+      for (int k = 0; k < 3; k++) {
+        int v = triangles[3 * best + k];
+        result[3 * out + k] = v;
+        valence[v]--;
+        if (!contains(newCache, newCount, v))
+          newCache[newCount++] = v;
+      }
+      for (int i = 0; i < cacheCount; i++) {
+        if (!contains(newCache, newCount, cache[i]))
+          newCache[newCount++] = cache[i];
+      }
+
+      //rescore the vertices that are or were in the cache, and their triangles
+      for (int i = 0; i < newCount; i++) {
+        int v = newCache[i];
+        cachePosition[v] = (i < CACHE_SIZE) ? i : -1;
+        float score = vertexScore(cachePosition[v], valence[v]);
+        float delta = score - vertexScore[v];
+        vertexScore[v] = score;
+        for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+          triangleScore[adjacent[j]] += delta;
+        }
+      }
+
+      best = -1;
+      bestScore = -1;
+      for (int i = 0; i < newCount; i++) {
+        int v = newCache[i];
+        for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+          int t = adjacent[j];
+          if (!emitted[t] && (triangleScore[t] > bestScore)) {
+            bestScore = triangleScore[t];
+            best = t;
+          }
+        }
+      }
+
+      int[] swap = cache;
+      cache = newCache;
+      newCache = swap;
+      cacheCount = Math.min(newCount, CACHE_SIZE);
+    }
+    return result;
+  }
+
+  /**
+   * Renumber the vertices in the order the primitives first use them, so
+   * that they are fetched in order. Vertices that are not used are put at the
+   * end.
+   */
+  public static void optimizeVertexFetch(PackedPolygonMesh mesh) {
+    int vertexCount = mesh.getVertexCount();
+    int[] primitives = mesh.getPrimitives();
+    int[] remap = new int[vertexCount];
+    int[] order = new int[vertexCount];
+    Arrays.fill(remap, -1);
+    int count = 0;
+
+    for (int index : primitives) {
+      if (remap[index] < 0) {
+        remap[index] = count;
+        order[count++] = index;
+      }
+    }
+    for (int v = 0; v < vertexCount; v++) {
+      if (remap[v] < 0) {
+        remap[v] = count;
+        order[count++] = v;
+      }
+    }
+
+    String[] names = mesh.getAllAttributes();
+    float[][] data = new float[names.length][];
+    int[] components = new int[names.length];
+    for (int a = 0; a < names.length; a++) {
+      data[a] = mesh.getAttribute(names[a]);
+      components[a] = mesh.getComponentCount(names[a]);
+    }
+    rebuild(mesh, names, data, components, order, vertexCount, remap);
+  }
+
+  /**
+   * Turn a list of triangles into one triangle strip. Each strip is grown for
+   * as long as a triangle left shares its last edge with the right winding,
+   * and strips are joined by repeating vertices, which makes degenerate
+   * triangles that are not drawn. Triangles are started in the order given,
+   * so the vertex cache order is mostly kept.
+   *
+   * @return the indices of the strip
+   */
+  public static int[] toTriangleStrip(int[] triangles, int vertexCount) {
+    int faceCount = triangles.length / 3;
+    int[] offsets = new int[vertexCount + 1];
+    int[] adjacent = adjacentTriangles(triangles, faceCount, vertexCount, offsets);
+    boolean[] emitted = new boolean[faceCount];
+    IntArrayList strip = new IntArrayList(triangles.length);
+
+    for (int start = 0; start < faceCount; start++) {
+      if (emitted[start])
+        continue;
+
+      //start with the rotation of this triangle that lets the strip go on
+      int a = triangles[3 * start], b = triangles[3 * start + 1], c = triangles[3 * start + 2];
+      for (int k = 0; k < 3; k++) {
+        if (findTriangle(triangles, offsets, adjacent, emitted, start, c, b) >= 0)
+          break;
+        int first = a;
+        a = b;
+        b = c;
+        c = first;
+      }
+
+      if (strip.size() > 0) {
+        //repeat the last vertex and the first of the new strip, keeping the new
+        //strip at an even position so that its winding stays the same
+        strip.add(strip.get(strip.size() - 1));
+        if (strip.size() % 2 == 0)
+          strip.add(a);
+        strip.add(a);
+      }
+      int stripStart = strip.size();
+      strip.add(a, b, c);
+      emitted[start] = true;
+
+      while (true) {
+        int x = strip.get(strip.size() - 2);
+        int y = strip.get(strip.size() - 1);
+        //even triangles of a strip are (x,y,z), odd ones (y,x,z)
+        boolean even = (strip.size() - 2 - stripStart) % 2 == 0;
+        int t = even ? findTriangle(triangles, offsets, adjacent, emitted, -1, x, y)
+                : findTriangle(triangles, offsets, adjacent, emitted, -1, y, x);
+        if (t < 0)
+          break;
+        emitted[t] = true;
+        strip.add(thirdVertex(triangles, t, even ? x : y, even ? y : x));
+      }
+    }
+    return strip.toArray();
+  }
+
+  private static void checkTriangles(PackedPolygonMesh mesh) throws IllegalArgumentException {
+    if ((mesh.getPrimitiveType() != GL.GL_TRIANGLES) || (mesh.getPrimitiveSize() != 3))
+      throw new IllegalArgumentException("Only meshes of GL_TRIANGLES can be optimized");
+  }
+
+  private static float vertexScore(int cachePosition, int valence) {
+    if (valence <= 0)
+      return -1; //no triangle needs this vertex any more
+    float score = (cachePosition >= 0) ? cacheScores[cachePosition] : 0;
+    if (valence < VALENCE_TABLE_SIZE)
+      return score + valenceScores[valence];
+    return score + VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+  }
+
+  /**
+   * The triangles around each vertex, in compressed sparse row form: those of
+   * vertex v are adjacent[offsets[v]] to adjacent[offsets[v+1]-1]
+   */
+  private static int[] adjacentTriangles(int[] triangles, int faceCount, int vertexCount, int[] offsets) {
+    for (int i = 0; i < 3 * faceCount; i++) {
+      offsets[triangles[i] + 1]++;
+    }
+    for (int v = 0; v < vertexCount; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+    int[] fill = Arrays.copyOf(offsets, vertexCount);
+    int[] adjacent = new int[3 * faceCount];
+    for (int i = 0; i < 3 * faceCount; i++) {
+      adjacent[fill[triangles[i]]++] = i / 3;
+    }
+    return adjacent;
+  }
+
+  /**
+   * A triangle not yet emitted with the directed edge from-to, or -1
+   */
+  private static int findTriangle(int[] triangles, int[] offsets, int[] adjacent, boolean[] emitted,
+                                  int skip, int from, int to) {
+    for (int j = offsets[from]; j < offsets[from + 1]; j++) {
+      int t = adjacent[j];
+      if (emitted[t] || (t == skip))
+        continue;
+      if (thirdVertex(triangles, t, from, to) >= 0)
+        return t;
+    }
+    return -1;
+  }
+
+  /**
+   * The vertex of triangle t after the directed edge from-to, or -1 if it
+   * does not have that edge
+   */
+  private static int thirdVertex(int[] triangles, int t, int from, int to) {
+    for (int k = 0; k < 3; k++) {
+      if ((triangles[3 * t + k] == from) && (triangles[3 * t + (k + 1) % 3] == to))
+        return triangles[3 * t + (k + 2) % 3];
+    }
+    return -1;
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value)
+        return true;
+    }
+    return false;
+  }
+
+  private static int hash(float[][] data, int[] components, int v) {
+    int h = 0;
+    for (int a = 0; a < data.length; a++) {
+      for (int j = v * components[a]; j < (v + 1) * components[a]; j++) {
+        float f = data[a][j];
+        h = 31 * h + Float.floatToIntBits(f == 0 ? 0 : f);
+      }
+    }
+    //spread the bits, as the low bits of floats are often zero
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  private static boolean sameVertex(float[][] data, int[] components, int v, int w) {
+    for (int a = 0; a < data.length; a++) {
+      int n = components[a];
+      for (int j = 0; j < n; j++) {
+        float f = data[a][v * n + j], g = data[a][w * n + j];
+        if ((f != g) && (Float.floatToIntBits(f) != Float.floatToIntBits(g)))
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Replace the vertices of the mesh by the ones listed in order, and the
+   * indices by their remapped values
+   */
+  private static void rebuild(PackedPolygonMesh mesh, String[] names, float[][] data, int[] components,
+                              int[] order, int count, int[] remap) {
+    PackedPolygonMesh rebuilt = new PackedPolygonMesh(count);
+    for (int a = 0; a < names.length; a++) {
+      int n = components[a];
+      float[] values = new float[n * count];
+      for (int i = 0; i < count; i++) {
+        System.arraycopy(data[a], order[i] * n, values, i * n, n);
+      }
+      rebuilt.setAttribute(names[a], n, values);
+    }
+
+    int[] primitives = mesh.getPrimitives();
+    int[] remapped = new int[primitives.length];
+    for (int i = 0; i < primitives.length; i++) {
+      remapped[i] = remap[primitives[i]];
+    }
+    mesh.replaceVertices(rebuilt, remapped);
+  }
+}
@@ -0,0 +1,455 @@
+package util;
+
+import com.jogamp.opengl.GL;
+
+import java.util.Arrays;
+
+/**
+ * Builds levels of detail (LODs) of a triangle mesh by quadric edge collapse.
+ *
+ * Each vertex keeps a quadric: the sum of the squared distances to the
+ * planes of the triangles around it, weighted by their area, plus planes
+ * standing on the open edges so that borders keep their shape. The edge whose
+ * collapse adds the least error is collapsed first, until few enough
+ * triangles are left. An edge is always collapsed onto one of its two
+ * vertices, so no vertex moves and no new vertex is made: every LOD is only a
+ * new list of indices into the vertices of the original mesh, and all of them
+ * can be drawn from the same vertex buffer.
+ *
+ * Vertices that share their position with another vertex (seams in texture
+ * coordinates or normals) are not moved, so that the seams do not open.
+ */
+public class MeshSimplifier {
+  //how much more the planes along open edges count than the triangles themselves
+  private static final double BOUNDARY_WEIGHT = 10.0;
+
+  /**
+   * Build a chain of LODs. Each level is simplified from the one before, and
+   * its triangles are reordered for the vertex cache with
+   * {@link MeshOptimizer}. A level may keep more triangles than asked for if
+   * no more edges can be collapsed without folding the surface over.
+   *
+   * @param mesh   a mesh of GL_TRIANGLES with positions
+   * @param ratios the fraction of the triangles of the mesh to keep in each
+   *               level after the first, in decreasing order
+   * @return the indices of every level, starting with those of the mesh
+   * itself
+   */
+  public static int[][] buildLods(PackedPolygonMesh mesh, float... ratios) throws IllegalArgumentException {
+    if ((mesh.getPrimitiveType() != GL.GL_TRIANGLES) || (mesh.getPrimitiveSize() != 3))
+      throw new IllegalArgumentException("Only meshes of GL_TRIANGLES can be simplified");
+    if (!mesh.hasAttribute("position"))
+      throw new IllegalArgumentException("The mesh has no positions");
+
+    float[] positions = mesh.getAttribute("position");
+    int components = mesh.getComponentCount("position");
+    int faceCount = mesh.getPrimitiveCount() / 3;
+
+    int[][] lods = new int[ratios.length + 1][];
+    lods[0] = mesh.getPrimitives();
+    for (int i = 0; i < ratios.length; i++) {
+      int target = (int) (ratios[i] * faceCount);
+      lods[i + 1] = MeshOptimizer.optimizeVertexCache(
+              simplify(positions, components, mesh.getVertexCount(), lods[i], target), mesh.getVertexCount());
+    }
+    return lods;
+  }
+
+  /**
+   * Build a chain of LODs of a PolygonMesh. See
+   * {@link #buildLods(PackedPolygonMesh, float...)}
+   */
+  public static <K extends IVertexData> int[][] buildLods(PolygonMesh<K> mesh, float... ratios) throws IllegalArgumentException {
+    return buildLods(PackedPolygonMesh.fromPolygonMesh(mesh), ratios);
+  }
+
+  /**
+   * Simplify a list of triangles by edge collapse
+   *
+   * @param positions           the positions of all vertices
+   * @param positionComponents  the number of floats per position, at least 3
+   * @param vertexCount         the number of vertices
+   * @param triangles           the indices, 3 per triangle
+   * @param targetTriangleCount the number of triangles to stop at
+   * @return the indices of the triangles left, in their original order
+   */
+  public static int[] simplify(float[] positions, int positionComponents, int vertexCount, int[] triangles,
+                               int targetTriangleCount) {
+    int faceCount = triangles.length / 3;
+    int[] tri = Arrays.copyOf(triangles, 3 * faceCount);
+    if (targetTriangleCount >= faceCount)
+      return tri;
+
+    Collapse state = new Collapse(positions, positionComponents, vertexCount, tri);
+    state.run(targetTriangleCount);
+
+    int[] result = new int[3 * state.liveCount];
+    int n = 0;
+    for (int t = 0; t < faceCount; t++) {
+      if (!state.dead[t]) {
+        result[n++] = tri[3 * t];
+        result[n++] = tri[3 * t + 1];
+        result[n++] = tri[3 * t + 2];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The state of one simplification
+   */
+  private static class Collapse {
+    final float[] positions;
+    final int components;
+    final int[] tri;
+    final boolean[] dead;
+    int liveCount;
+
+    //per vertex: 10 values of the symmetric 4x4 quadric, the triangles around
+    //it, whether it may move and a version bumped whenever its quadric changes
+    final double[] quadrics;
+    final IntArrayList[] vertexTriangles;
+    final boolean[] locked;
+    final boolean[] collapsed;
+    final int[] versions;
+    final EdgeHeap heap = new EdgeHeap();
+
+    Collapse(float[] positions, int components, int vertexCount, int[] tri) {
+      this.positions = positions;
+      this.components = components;
+      this.tri = tri;
+      int faceCount = tri.length / 3;
+      dead = new boolean[faceCount];
+      liveCount = faceCount;
+      quadrics = new double[10 * vertexCount];
+      vertexTriangles = new IntArrayList[vertexCount];
+      locked = new boolean[vertexCount];
+      collapsed = new boolean[vertexCount];
+      versions = new int[vertexCount];
+
+      for (int t = 0; t < faceCount; t++) {
+        for (int k = 0; k < 3; k++) {
+          int v = tri[3 * t + k];
+          if (vertexTriangles[v] == null)
+            vertexTriangles[v] = new IntArrayList(8);
+          vertexTriangles[v].add(t);
+        }
+      }
+      lockSeams(vertexCount);
+
+      for (int t = 0; t < faceCount; t++) {
+        addTrianglePlanes(t);
+      }
+      for (int t = 0; t < faceCount; t++) {
+        for (int k = 0; k < 3; k++) {
+          int a = tri[3 * t + k], b = tri[3 * t + (k + 1) % 3];
+          boolean open = !hasEdge(b, a);
+          if ((a < b) || open)
+            pushEdge(a, b);
+        }
+      }
+    }
+
+    void run(int targetTriangleCount) {
+      while ((liveCount > targetTriangleCount) && (heap.size > 0)) {
+        heap.pop();
+        int from = heap.topFrom, to = heap.topTo;
+        if (collapsed[from] || collapsed[to] || (versions[from] != heap.topFromVersion)
+                || (versions[to] != heap.topToVersion))
+          continue; //an older entry for an edge that has changed since
+        if (flips(from, to))
+          continue;
+
+        IntArrayList fromTriangles = vertexTriangles[from];
+        IntArrayList toTriangles = vertexTriangles[to];
+        for (int i = 0; i < fromTriangles.size(); i++) {
+          int t = fromTriangles.get(i);
+          if (dead[t])
+            continue;
+          if (uses(t, to)) {
+            dead[t] = true;
+            liveCount--;
+          } else {
+            for (int k = 0; k < 3; k++) {
+              if (tri[3 * t + k] == from)
+                tri[3 * t + k] = to;
+            }
+            toTriangles.add(t);
+          }
+        }
+        for (int j = 0; j < 10; j++) {
+          quadrics[10 * to + j] += quadrics[10 * from + j];
+        }
+        collapsed[from] = true;
+        vertexTriangles[from] = null;
+        versions[to]++;
+
+        //forget the triangles that are gone, and queue the new edges around to
+        int live = 0;
+        for (int i = 0; i < toTriangles.size(); i++) {
+          int t = toTriangles.get(i);
+          if (dead[t])
+            continue;
+          toTriangles.set(live++, t);
+          for (int k = 0; k < 3; k++) {
+            int w = tri[3 * t + k];
+            if (w != to)
+              pushEdge(to, w);
+          }
+        }
+        vertexTriangles[to] = new IntArrayList(toTriangles.array(), live);
+      }
+    }
+
+    /**
+     * Queue the edge a-b, collapsing in whichever direction costs less
+     */
+    void pushEdge(int a, int b) {
+      double ab = locked[a] ? Double.MAX_VALUE : error(a, b) + error(b, b);
+      double ba = locked[b] ? Double.MAX_VALUE : error(a, a) + error(b, a);
+      if ((ab == Double.MAX_VALUE) && (ba == Double.MAX_VALUE))
+        return;
+      //flat regions cost nothing, so between equal costs the shorter edge goes first
+      double length = 0;
+      for (int j = 0; j < 3; j++) {
+        double d = positions[components * a + j] - positions[components * b + j];
+        length += d * d;
+      }
+      if (ab <= ba)
+        heap.push(ab, length, a, b, versions[a], versions[b]);
+      else
+        heap.push(ba, length, b, a, versions[b], versions[a]);
+    }
+
+    /**
+     * The error of the quadric of vertex q at the position of vertex p
+     */
+    double error(int q, int p) {
+      int o = 10 * q;
+      double x = positions[components * p], y = positions[components * p + 1], z = positions[components * p + 2];
+      return quadrics[o] * x * x + 2 * quadrics[o + 1] * x * y + 2 * quadrics[o + 2] * x * z + 2 * quadrics[o + 3] * x
+              + quadrics[o + 4] * y * y + 2 * quadrics[o + 5] * y * z + 2 * quadrics[o + 6] * y
+              + quadrics[o + 7] * z * z + 2 * quadrics[o + 8] * z
+              + quadrics[o + 9];
+    }
+
+    /**
+     * Whether moving from onto to would turn any triangle around from over
+     */
+    boolean flips(int from, int to) {
+      IntArrayList fromTriangles = vertexTriangles[from];
+      for (int i = 0; i < fromTriangles.size(); i++) {
+        int t = fromTriangles.get(i);
+        if (dead[t] || uses(t, to))
+          continue;
+        double[] before = normal(t, -1, -1);
+        double[] after = normal(t, from, to);
+        if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0)
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * The (unnormalized) normal of triangle t, with vertex from replaced by to
+     */
+    double[] normal(int t, int from, int to) {
+      int[] v = new int[3];
+      for (int k = 0; k < 3; k++) {
+        v[k] = (tri[3 * t + k] == from) ? to : tri[3 * t + k];
+      }
+      double[] e1 = new double[3], e2 = new double[3];
+      for (int j = 0; j < 3; j++) {
+        e1[j] = positions[components * v[1] + j] - positions[components * v[0] + j];
+        e2[j] = positions[components * v[2] + j] - positions[components * v[0] + j];
+      }
+      return new double[]{e1[1] * e2[2] - e1[2] * e2[1],
+              e1[2] * e2[0] - e1[0] * e2[2],
+              e1[0] * e2[1] - e1[1] * e2[0]};
+    }
+
+    boolean uses(int t, int v) {
+      return (tri[3 * t] == v) || (tri[3 * t + 1] == v) || (tri[3 * t + 2] == v);
+    }
+
+    /**
+     * Whether a triangle has the directed edge a-b
+     */
+    boolean hasEdge(int a, int b) {
+      IntArrayList triangles = vertexTriangles[a];
+      for (int i = 0; i < triangles.size(); i++) {
+        int t = triangles.get(i);
+        for (int k = 0; k < 3; k++) {
+          if ((tri[3 * t + k] == a) && (tri[3 * t + (k + 1) % 3] == b))
+            return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Add the plane of triangle t to its vertices, and the planes standing on
+     * its open edges to the vertices of those edges
+     */
+    void addTrianglePlanes(int t) {
+      double[] n = normal(t, -1, -1);
+      double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+      if (length == 0)
+        return;
+      double area = 0.5 * length;
+      n[0] /= length;
+      n[1] /= length;
+      n[2] /= length;
+      int p0 = components * tri[3 * t];
+      double d = -(n[0] * positions[p0] + n[1] * positions[p0 + 1] + n[2] * positions[p0 + 2]);
+      for (int k = 0; k < 3; k++) {
+        addPlane(tri[3 * t + k], n[0], n[1], n[2], d, area);
+      }
+
+      for (int k = 0; k < 3; k++) {
+        int a = tri[3 * t + k], b = tri[3 * t + (k + 1) % 3];
+        if (hasEdge(b, a))
+          continue;
+        double ex = positions[components * b] - positions[components * a];
+        double ey = positions[components * b + 1] - positions[components * a + 1];
+        double ez = positions[components * b + 2] - positions[components * a + 2];
+        //the plane through the edge, perpendicular to the triangle
+        double mx = ey * n[2] - ez * n[1], my = ez * n[0] - ex * n[2], mz = ex * n[1] - ey * n[0];
+        double m = Math.sqrt(mx * mx + my * my + mz * mz);
+        if (m == 0)
+          continue;
+        mx /= m;
+        my /= m;
+        mz /= m;
+        double md = -(mx * positions[components * a] + my * positions[components * a + 1]
+                + mz * positions[components * a + 2]);
+        double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+        addPlane(a, mx, my, mz, md, weight);
+        addPlane(b, mx, my, mz, md, weight);
+      }
+    }
+
+    void addPlane(int v, double a, double b, double c, double d, double weight) {
+      int o = 10 * v;
+      quadrics[o] += weight * a * a;
+      quadrics[o + 1] += weight * a * b;
+      quadrics[o + 2] += weight * a * c;
+      quadrics[o + 3] += weight * a * d;
+      quadrics[o + 4] += weight * b * b;
+      quadrics[o + 5] += weight * b * c;
+      quadrics[o + 6] += weight * b * d;
+      quadrics[o + 7] += weight * c * c;
+      quadrics[o + 8] += weight * c * d;
+      quadrics[o + 9] += weight * d * d;
+    }
+
+    /**
+     * Lock the used vertices whose position is the same as that of another
+     * vertex
+     */
+    void lockSeams(int vertexCount) {
+      int tableSize = Integer.highestOneBit(Math.max(2 * vertexCount, 2) - 1) << 1;
+      int[] table = new int[tableSize]; //vertex + 1
+      for (int v = 0; v < vertexCount; v++) {
+        if (vertexTriangles[v] == null)
+          continue;
+        int p = components * v;
+        int h = Float.floatToIntBits(positions[p]);
+        h = 31 * h + Float.floatToIntBits(positions[p + 1]);
+        h = 31 * h + Float.floatToIntBits(positions[p + 2]);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        int slot = h & (tableSize - 1);
+        while (table[slot] != 0) {
+          int w = table[slot] - 1;
+          int q = components * w;
+          if ((positions[q] == positions[p]) && (positions[q + 1] == positions[p + 1])
+                  && (positions[q + 2] == positions[p + 2])) {
+            locked[v] = locked[w] = true;
+            break;
+          }
+          slot = (slot + 1) & (tableSize - 1);
+        }
+        if (table[slot] == 0)
+          table[slot] = v + 1;
+      }
+    }
+  }
+
+  /**
+   * A binary min-heap of edge collapses by cost and then by squared length,
+   * kept in parallel arrays
+   */
+  private static class EdgeHeap {
+    double[] costs = new double[1024], lengths = new double[1024];
+    int[] froms = new int[1024], tos = new int[1024];
+    int[] fromVersions = new int[1024], toVersions = new int[1024];
+    int size;
+    //the entry last popped
+    int topFrom, topTo, topFromVersion, topToVersion;
+
+    void push(double cost, double length, int from, int to, int fromVersion, int toVersion) {
+      if (size == costs.length) {
+        int capacity = 2 * size;
+        costs = Arrays.copyOf(costs, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        froms = Arrays.copyOf(froms, capacity);
+        tos = Arrays.copyOf(tos, capacity);
+        fromVersions = Arrays.copyOf(fromVersions, capacity);
+        toVersions = Arrays.copyOf(toVersions, capacity);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        if (!less(cost, length, costs[parent], lengths[parent]))
+          break;
+        move(parent, i);
+        i = parent;
+      }
+      set(i, cost, length, from, to, fromVersion, toVersion);
+    }
+
+    void pop() {
+      topFrom = froms[0];
+      topTo = tos[0];
+      topFromVersion = fromVersions[0];
+      topToVersion = toVersions[0];
+      size--;
+      if (size == 0)
+        return;
+
+      //sift the last entry down from the top
+      double cost = costs[size], length = lengths[size];
+      int from = froms[size], to = tos[size], fromVersion = fromVersions[size], toVersion = toVersions[size];
+      int i = 0;
+      while (2 * i + 1 < size) {
+        int child = 2 * i + 1;
+        if ((child + 1 < size) && less(costs[child + 1], lengths[child + 1], costs[child], lengths[child]))
+          child++;
+        if (!less(costs[child], lengths[child], cost, length))
+          break;
+        move(child, i);
+        i = child;
+      }
+      set(i, cost, length, from, to, fromVersion, toVersion);
+    }
+
+    private static boolean less(double cost, double length, double otherCost, double otherLength) {
+      return (cost < otherCost) || ((cost == otherCost) && (length < otherLength));
+    }
+
+    private void move(int from, int to) {
+      set(to, costs[from], lengths[from], froms[from], tos[from], fromVersions[from], toVersions[from]);
+    }
+
+    private void set(int i, double cost, double length, int from, int to, int fromVersion, int toVersion) {
+      costs[i] = cost;
+      lengths[i] = length;
+      froms[i] = from;
+      tos[i] = to;
+      fromVersions[i] = fromVersion;
+      toVersions[i] = toVersion;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package util;
+
+/**
+ * Computes vertex normals of a polygon mesh held in primitive arrays.
+ *
+ * The normal of each polygon is found with Newell's method, in parallel over
+ * the polygons. Each vertex normal is then the normalized, weighted sum of the
+ * normals of the polygons around the vertex. The polygons around each vertex
+ * are found through a vertex-to-corner index built once (in compressed sparse
+ * row form), so every vertex is summed by exactly one thread, without atomics
+ * or per-thread copies, and always in the same order.
+ */
+public class NormalGenerator {
+  /**
+   * How much each polygon contributes to the normals of its vertices
+   */
+  public enum Weighting {
+    /**
+     * every polygon counts the same
+     */
+    UNIFORM,
+    /**
+     * in proportion to its area
+     */
+    AREA,
+    /**
+     * in proportion to its angle at the vertex
+     */
+    ANGLE
+  }
+
+  private static final int GRAIN = 1 << 14;
+
+  /**
+   * Compute vertex normals
+   *
+   * @param positions          the positions of all vertices
+   * @param positionComponents the number of floats per position, at least 3
+   * @param vertexCount        the number of vertices
+   * @param primitives         the indices of the polygons
+   * @param primitiveCount     the number of indices used
+   * @param primitiveSize      the number of indices per polygon, at least 3
+   * @param weighting          how polygons are weighted
+   * @return the normals, 4 floats per vertex with the 4th being 0. Vertices
+   * not used by any polygon get a zero normal
+   */
+  public static float[] computeNormals(final float[] positions, final int positionComponents, int vertexCount,
+                                       final int[] primitives, int primitiveCount, final int primitiveSize,
+                                       final Weighting weighting) throws IllegalArgumentException {
+    if ((positionComponents < 3) || (primitiveSize < 3))
+      throw new IllegalArgumentException("Normals need 3D positions and polygons of at least 3 vertices");
+
+    final int faceCount = primitiveCount / primitiveSize;
+    final int cornerCount = faceCount * primitiveSize;
+    final float[] faceNormals = new float[3 * faceCount];
+    final float[] normals = new float[4 * vertexCount];
+
+    //1. the normal of every polygon
+    new ParallelLoop() {
+      @Override
+      void run(int from, int to) {
+        for (int f = from; f < to; f++) {
+          int first = f * primitiveSize;
+          float nx = 0, ny = 0, nz = 0;
+
+          for (int k = 0; k < primitiveSize; k++) {
+            int a = positionComponents * primitives[first + k];
+            int b = positionComponents * primitives[first + (k + 1) % primitiveSize];
+            nx += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+            ny += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+            nz += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+          }
+
+          //the length of Newell's normal is twice the area
+          if (weighting == Weighting.AREA) {
+            nx *= 0.5f;
+            ny *= 0.5f;
+            nz *= 0.5f;
+          } else {
+            float lengthSquared = nx * nx + ny * ny + nz * nz;
+            if (lengthSquared > 0) {
+              float invLength = 1.0f / (float) Math.sqrt(lengthSquared);
+              nx *= invLength;
+              ny *= invLength;
+              nz *= invLength;
+            }
+          }
+          faceNormals[3 * f] = nx;
+          faceNormals[3 * f + 1] = ny;
+          faceNormals[3 * f + 2] = nz;
+        }
+      }
+    }.execute(faceCount, GRAIN / primitiveSize);
+
+    //2. the corners around every vertex, in polygon order
+    final int[] cornerStart = new int[vertexCount + 1];
+    for (int c = 0; c < cornerCount; c++) {
+      cornerStart[primitives[c] + 1]++;
+    }
+    for (int v = 0; v < vertexCount; v++) {
+      cornerStart[v + 1] += cornerStart[v];
+    }
+    final int[] corners = new int[cornerCount];
+    int[] next = new int[vertexCount];
+    System.arraycopy(cornerStart, 0, next, 0, vertexCount);
+    for (int c = 0; c < cornerCount; c++) {
+      corners[next[primitives[c]]++] = c;
+    }
+    next = null;
+
+    //3. the weighted sum at every vertex
+    new ParallelLoop() {
+      @Override
+      void run(int from, int to) {
+        for (int v = from; v < to; v++) {
+          float nx = 0, ny = 0, nz = 0;
+
+          for (int i = cornerStart[v]; i < cornerStart[v + 1]; i++) {
+            int c = corners[i];
+            int f = c / primitiveSize;
+            float weight = (weighting == Weighting.ANGLE) ? cornerAngle(positions, positionComponents, primitives, c, primitiveSize) : 1.0f;
+            nx += weight * faceNormals[3 * f];
+            ny += weight * faceNormals[3 * f + 1];
+            nz += weight * faceNormals[3 * f + 2];
+          }
+
+          float lengthSquared = nx * nx + ny * ny + nz * nz;
+          if (lengthSquared > 0) {
+            float invLength = 1.0f / (float) Math.sqrt(lengthSquared);
+            nx *= invLength;
+            ny *= invLength;
+            nz *= invLength;
+          }
+          normals[4 * v] = nx;
+          normals[4 * v + 1] = ny;
+          normals[4 * v + 2] = nz;
+          normals[4 * v + 3] = 0.0f;
+        }
+      }
+    }.execute(vertexCount, GRAIN);
+
+    return normals;
+  }
+
+  /**
+   * The angle in radians of a polygon at one of its corners
+   */
+  private static float cornerAngle(float[] positions, int positionComponents, int[] primitives, int corner, int primitiveSize) {
+    int first = corner - corner % primitiveSize;
+    int k = corner - first;
+    int p = positionComponents * primitives[first + (k + primitiveSize - 1) % primitiveSize];
+    int c = positionComponents * primitives[corner];
+    int n = positionComponents * primitives[first + (k + 1) % primitiveSize];
+
+    float ax = positions[p] - positions[c], ay = positions[p + 1] - positions[c + 1], az = positions[p + 2] - positions[c + 2];
+    float bx = positions[n] - positions[c], by = positions[n + 1] - positions[c + 1], bz = positions[n + 2] - positions[c + 2];
+    float lengths = (float) Math.sqrt((ax * ax + ay * ay + az * az) * (bx * bx + by * by + bz * bz));
+    if (lengths == 0)
+      return 0;
+    float cos = (ax * bx + ay * by + az * bz) / lengths;
+    return (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, cos)));
+  }
+}
@@ -1,90 +1,237 @@
 package util;
 
-import org.joml.Vector4f;
-
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A helper class to export a PolygonMesh object to file using the OBJ file
  * format This exporter only writes the position, normal and texture coordinate
  * data. It ignores any other attributes
+ *
+ * The file is formatted straight into a large byte buffer (see
+ * {@link ObjWriter}) that is written out whenever it fills up. Optionally,
+ * chunks of lines are formatted in parallel into buffers of their own, which
+ * are then written out in order.
  */
 public class ObjExporter {
+  //the size of the buffer the file is formatted into before it is written
+  private static final int BUFFER_SIZE = 1 << 20;
+  //the number of lines formatted by one task, when formatting in parallel
+  private static final int CHUNK_LINES = 1 << 15;
+
+  private static final byte[] VERTEX = {'v', ' '};
+  private static final byte[] NORMAL = {'v', 'n', ' '};
+  private static final byte[] TEXCOORD = {'v', 't', ' '};
+  private static final byte[] FACE = {'f', ' '};
+
+  /**
+   * Export a PolygonMesh. Its vertex data is first copied once into arrays,
+   * see {@link PackedPolygonMesh#fromPolygonMesh}
+   *
+   * @return true if the file was written, false if writing failed
+   */
   public static boolean exportFile(PolygonMesh<IVertexData> mesh,
                                    OutputStream out) throws
           IllegalArgumentException{
-    PrintWriter printer = new PrintWriter(out);
-    int i, j;
+    if (mesh.getVertexCount() == 0)
+      return true;
+
+    return exportFile(PackedPolygonMesh.fromPolygonMesh(mesh), out, false);
+  }
 
-    List<IVertexData> vertexData = mesh.getVertexAttributes();
-    if (vertexData.size() == 0)
+  /**
+   * Export a PackedPolygonMesh, writing the same lines as for a PolygonMesh
+   * with the same data
+   *
+   * @return true if the file was written, false if writing failed
+   */
+  public static boolean exportFile(PackedPolygonMesh mesh,
+                                   OutputStream out) throws
+          IllegalArgumentException {
+    return exportFile(mesh, out, false);
+  }
+
+  /**
+   * Export a PackedPolygonMesh, formatting chunks of lines in parallel on the
+   * common ForkJoinPool if asked to. The file is the same either way.
+   *
+   * @param mesh     the mesh to export
+   * @param out      where to write the file. It is closed afterwards
+   * @param parallel whether to format in parallel
+   * @return true if the file was written, false if writing failed
+   */
+  public static boolean exportFile(PackedPolygonMesh mesh,
+                                   OutputStream out, boolean parallel) throws
+          IllegalArgumentException {
+    int vertexCount = mesh.getVertexCount();
+    if (vertexCount == 0)
       return true;
 
-    List<Vector4f> vertices = new ArrayList<Vector4f>();
-    List<Vector4f> normals = new ArrayList<Vector4f>();
-    List<Vector4f> texcoords = new ArrayList<Vector4f>();
-    List<Integer> primitives = mesh.getPrimitives();
-
-    for (IVertexData v : vertexData) {
-      if (v.hasData("position")) {
-        float[] data = v.getData("position");
-        printer.print("v ");
-        for (j = 0; j < data.length; j++) {
-          printer.print(data[j] + " ");
-        }
-        printer.println();
+    if (mesh.hasAttribute("normal") && (mesh.getComponentCount("normal") < 3)) {
+      throw new IllegalArgumentException("Too few numbers for normal, must "
+              + "be 3 or 4, with the 4th number being 0");
+    }
+    if (mesh.hasAttribute("texcoord") && (mesh.getComponentCount("texcoord") < 3)) {
+      throw new IllegalArgumentException("Too few numbers for texture "
+              + "coordinate, must "
+              + "be 3 or 4, with the 4th number being 1");
+    }
+
+    Lines[] sections = new Lines[4];
+    int count = 0;
+    if (mesh.hasAttribute("position")) {
+      int components = mesh.getComponentCount("position");
+      sections[count++] = new VertexLines(VERTEX, mesh.getAttribute("position"), components, components,
+              vertexCount);
+    }
+    if (mesh.hasAttribute("normal")) {
+      sections[count++] = new VertexLines(NORMAL, mesh.getAttribute("normal"), mesh.getComponentCount("normal"),
+              3, vertexCount);
+    }
+    if (mesh.hasAttribute("texcoord")) {
+      sections[count++] = new VertexLines(TEXCOORD, mesh.getAttribute("texcoord"),
+              mesh.getComponentCount("texcoord"), 3, vertexCount);
+    }
+    //polygons
+    if (mesh.getPrimitiveSize() > 0) {
+      sections[count++] = new FaceLines(mesh.getPrimitives(), mesh.getPrimitiveSize());
+    }
+
+    try {
+      try {
+        if (parallel)
+          writeParallel(sections, count, out);
+        else
+          writeSequential(sections, count, out);
+      } finally {
+        out.close();
       }
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
 
+  private static void writeSequential(Lines[] sections, int count, OutputStream out) throws IOException {
+    ObjWriter writer = new ObjWriter(out, BUFFER_SIZE);
+    for (int i = 0; i < count; i++) {
+      sections[i].write(writer, 0, sections[i].count);
     }
+    writer.flush();
+  }
 
-    for (IVertexData v : vertexData) {
-      if (v.hasData("normal")) {
-        float[] data = v.getData("normal");
-        printer.print("vn ");
-        if (data.length<3) {
-          throw new IllegalArgumentException("Too few numbers for normal, must "
-                  + "be 3 or 4, with the 4th number being 0");
-        }
-        for (j = 0; j < 3; j++) {
-          printer.print(data[j] + " ");
+  /**
+   * Format a few chunks of each section at a time, one chunk per task, and
+   * write them out in order before formatting the next ones. The buffers of
+   * the chunks are reused from one round to the next.
+   */
+  private static void writeParallel(Lines[] sections, int count, OutputStream out) throws IOException {
+    final ObjWriter[] writers = new ObjWriter[4 * ForkJoinPool.getCommonPoolParallelism()];
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = new ObjWriter(null, BUFFER_SIZE);
+    }
+
+    for (int s = 0; s < count; s++) {
+      final Lines lines = sections[s];
+      for (int first = 0; first < lines.count; first += writers.length * CHUNK_LINES) {
+        final int start = first;
+        final int chunks = Math.min(writers.length, (lines.count - first + CHUNK_LINES - 1) / CHUNK_LINES);
+
+        new ParallelLoop() {
+          @Override
+          void run(int from, int to) {
+            for (int c = from; c < to; c++) {
+              int begin = start + c * CHUNK_LINES;
+              writers[c].clear();
+              try {
+                lines.write(writers[c], begin, Math.min(begin + CHUNK_LINES, lines.count));
+              } catch (IOException e) {
+                //a writer without a stream only grows its buffer
+                throw new UncheckedIOException(e);
+              }
+            }
+          }
+        }.execute(chunks, 1);
+
+        for (int c = 0; c < chunks; c++) {
+          writers[c].writeTo(out);
         }
-        printer.println();
       }
+    }
+    out.flush();
+  }
+
+  /**
+   * A number of lines of the file, any range of which can be formatted on its
+   * own
+   */
+  private abstract static class Lines {
+    final int count;
 
+    Lines(int count) {
+      this.count = count;
     }
 
-    for (IVertexData v : vertexData) {
-      if (v.hasData("texcoord")) {
-        float[] data = v.getData("texcoord");
-        printer.print("vt ");
-        if (data.length<3) {
-          throw new IllegalArgumentException("Too few numbers for texture "
-                  + "coordinate, must "
-                  + "be 3 or 4, with the 4th number being 1");
-        }
-        for (j = 0; j < 3; j++) {
-          printer.print(data[j] + " ");
+    abstract void write(ObjWriter writer, int from, int to) throws IOException;
+  }
+
+  /**
+   * One line per vertex: a keyword and the first few values of an attribute
+   */
+  private static class VertexLines extends Lines {
+    private final byte[] keyword;
+    private final float[] data;
+    private final int components, written;
+
+    VertexLines(byte[] keyword, float[] data, int components, int written, int vertexCount) {
+      super(vertexCount);
+      this.keyword = keyword;
+      this.data = data;
+      this.components = components;
+      this.written = written;
+    }
+
+    @Override
+    void write(ObjWriter writer, int from, int to) throws IOException {
+      for (int i = from; i < to; i++) {
+        writer.write(keyword);
+        for (int j = 0; j < written; j++) {
+          if (j > 0)
+            writer.write((byte) ' ');
+          writer.write(data[i * components + j]);
         }
-        printer.println();
+        writer.write((byte) '\n');
       }
-
     }
+  }
 
+  /**
+   * One line per polygon
+   */
+  private static class FaceLines extends Lines {
+    private final int[] primitives;
+    private final int primitiveSize;
 
-    //polygons
+    FaceLines(int[] primitives, int primitiveSize) {
+      super(primitives.length / primitiveSize);
+      this.primitives = primitives;
+      this.primitiveSize = primitiveSize;
+    }
 
-    for (i = 0; i < primitives.size(); i += mesh.getPrimitiveSize()) {
-      printer.print("f ");
-      for (j = 0; j < mesh.getPrimitiveSize(); j++) {
-        //in OBJ file format indices begin at 1, so we must add 1 here
-        printer.print(primitives.get(i + j) + 1 + " ");
+    @Override
+    void write(ObjWriter writer, int from, int to) throws IOException {
+      for (int i = from; i < to; i++) {
+        writer.write(FACE);
+        for (int j = 0; j < primitiveSize; j++) {
+          if (j > 0)
+            writer.write((byte) ' ');
+          //in OBJ file format indices begin at 1, so we must add 1 here
+          writer.write(primitives[i * primitiveSize + j] + 1);
+        }
+        writer.write((byte) '\n');
       }
-      printer.println();
     }
-    printer.close();
-    return true;
   }
 }
@@ -6,6 +6,7 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -167,23 +168,17 @@ public class ObjImporter {
     if (scaleAndCenter) {
       //center about the origin and within a cube of side 1 centered at the origin
       //find the centroid
-      Vector4f center = new Vector4f(vertices.get(0));
-
-      Vector4f minimum = new Vector4f(center);
-      Vector4f maximum = new Vector4f(center);
-
-      for (i = 1; i < vertices.size(); i++) {
-        //center = center.add(vertices.get(i).x,vertices.get(i).y,vertices.get(i).z,0.0f);
-        minimum = minimum.min(vertices.get(i));
-        maximum = maximum.max(vertices.get(i));
+      float[] positions = new float[3 * vertices.size()];
+      for (i = 0; i < vertices.size(); i++) {
+        positions[3 * i] = vertices.get(i).x;
+        positions[3 * i + 1] = vertices.get(i).y;
+        positions[3 * i + 2] = vertices.get(i).z;
       }
+      Bounds bounds = Bounds.of(positions, 3, vertices.size());
 
-            /*
-            center.x = center.x * (1.0f/vertices.size());
-            center.y = center.y * (1.0f/vertices.size());
-            center.z = center.z * (1.0f/vertices.size());
-*/
-      center = new Vector4f(minimum).add(maximum).mul(0.5f);
+      Vector4f minimum = bounds.getMinimum();
+      Vector4f maximum = bounds.getMaximum();
+      Vector4f center = bounds.getCenter();
 
 
       float longest;
@@ -202,36 +197,78 @@ public class ObjImporter {
     }
 
     List<K> vertexData = new ArrayList<K>();
+    //the slots are resolved from the first vertex, and all vertices share one array
+    int[] slots = null;
+    float[] data = new float[4];
 
     for (i = 0; i < vertices.size(); i++) {
       K v = producer.produce();
-      v.setData("position", new float[]{vertices.get(i).x,
-              vertices.get(i).y,
-              vertices.get(i).z,
-              vertices.get(i).w});
+      if (slots == null)
+        slots = ObjParser.resolveSlots(v);
+      ObjParser.setData(v, slots[0], "position", set(data, vertices.get(i)), 0);
       if (texcoords.size() == vertices.size()) {
-        v.setData("texcoord", new float[]{texcoords.get(i).x,
-                texcoords.get(i).y,
-                texcoords.get(i).z,
-                texcoords.get(i).w});
+        ObjParser.setData(v, slots[1], "texcoord", set(data, texcoords.get(i)), 0);
       }
       if (normals.size() == vertices.size()) {
-        v.setData("normal", new float[]{normals.get(i).x,
-                normals.get(i).y,
-                normals.get(i).z,
-                normals.get(i).w});
+        ObjParser.setData(v, slots[2], "normal", set(data, normals.get(i)), 0);
       }
 
       vertexData.add(v);
     }
 
-    if ((normals.size() == 0) || (normals.size() != vertices.size()))
-      mesh.computeNormals();
-
     mesh.setVertexData(vertexData);
     mesh.setPrimitives(triangles);
     mesh.setPrimitiveType(GL.GL_TRIANGLES);
     mesh.setPrimitiveSize(3);
+
+    //normals can only be computed once the mesh has its vertices and triangles
+    if ((normals.size() == 0) || (normals.size() != vertices.size()))
+      mesh.computeNormals();
     return mesh;
   }
+
+  /**
+   * Import an OBJ file, and if asked to, weld and reorder the mesh for the
+   * vertex cache with {@link MeshOptimizer}
+   */
+  public static <K extends IVertexData> PolygonMesh<K> importFile
+          (VertexProducer<K> producer, InputStream in, boolean scaleAndCenter, boolean optimize) throws IllegalArgumentException {
+    PolygonMesh<K> mesh = importFile(producer, in, scaleAndCenter);
+    if (!optimize)
+      return mesh;
+    PackedPolygonMesh packed = PackedPolygonMesh.fromPolygonMesh(mesh);
+    MeshOptimizer.optimize(packed, false);
+    return packed.toPolygonMesh(producer);
+  }
+
+  /**
+   * Import an OBJ file as a PackedPolygonMesh, with 4 floats per position,
+   * texture coordinate and normal. This reads the file with
+   * {@link FastObjImporter}.
+   */
+  public static PackedPolygonMesh importPackedFile(InputStream in, boolean scaleAndCenter) throws IOException, IllegalArgumentException {
+    return FastObjImporter.importPackedFile(in, scaleAndCenter);
+  }
+
+  /**
+   * Import an OBJ file as a PackedPolygonMesh, and if asked to, weld and
+   * reorder it for the vertex cache with {@link MeshOptimizer}
+   */
+  public static PackedPolygonMesh importPackedFile(InputStream in, boolean scaleAndCenter, boolean optimize) throws IOException, IllegalArgumentException {
+    PackedPolygonMesh mesh = FastObjImporter.importPackedFile(in, scaleAndCenter);
+    if (optimize)
+      MeshOptimizer.optimize(mesh, false);
+    return mesh;
+  }
+
+  /**
+   * Copy a vector into the first 4 floats of an array
+   */
+  private static float[] set(float[] data, Vector4f v) {
+    data[0] = v.x;
+    data[1] = v.y;
+    data[2] = v.z;
+    data[3] = v.w;
+    return data;
+  }
 };
@@ -0,0 +1,483 @@
+package util;
+
+import com.jogamp.opengl.GL;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the text of an OBJ file straight from bytes into primitive arrays.
+ * Numbers are parsed by hand, without creating a String for each line or
+ * token, and positions, texture coordinates and normals are stored 4 floats
+ * per entry. Faces are split into triangle fans as they are read.
+ *
+ * The data read is interpreted exactly as {@link ObjImporter} does, with the
+ * addition of negative (relative) vertex indices.
+ *
+ * A parser can also read one chunk out of the middle of a file, as in
+ * parallel imports. Relative indices then resolve to indices local to the
+ * chunk, and their places in the triangle list are kept in relativeIndices so
+ * that the vertex offset of the chunk can be added once it is known.
+ */
+class ObjParser {
+  //powers of ten that are exact as floats
+  private static final float[] POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+  //and those that are exact as doubles
+  static final double[] POW10D = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+          1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  final FloatArrayList positions;
+  final FloatArrayList texcoords;
+  final FloatArrayList normals;
+  final IntArrayList triangles;
+  final IntArrayList relativeIndices;
+
+  //number of lines before the text being parsed, for error messages
+  private long lineOffset;
+  private int lineno;
+  private ByteBuffer buf;
+  private int pos, limit;
+  private final float[] values = new float[6];
+  private final Vector3f normal = new Vector3f();
+
+  ObjParser() {
+    positions = new FloatArrayList();
+    texcoords = new FloatArrayList();
+    normals = new FloatArrayList();
+    triangles = new IntArrayList();
+    relativeIndices = new IntArrayList(16);
+    lineOffset = 0;
+    lineno = 0;
+  }
+
+  /**
+   * A parser holding already parsed data, as stitched together from chunks
+   */
+  ObjParser(FloatArrayList positions, FloatArrayList texcoords, FloatArrayList normals, IntArrayList triangles) {
+    this.positions = positions;
+    this.texcoords = texcoords;
+    this.normals = normals;
+    this.triangles = triangles;
+    relativeIndices = new IntArrayList(16);
+    lineOffset = 0;
+    lineno = 0;
+  }
+
+  void setLineOffset(long lineOffset) {
+    this.lineOffset = lineOffset;
+  }
+
+  int getLineCount() {
+    return lineno;
+  }
+
+  int getVertexCount() {
+    return positions.size() / 4;
+  }
+
+  /**
+   * Parse all complete lines of buffer between start and end. The last line
+   * does not need to end in a newline if endOfInput is true.
+   *
+   * @return the position just after the last line parsed
+   */
+  int parse(ByteBuffer buffer, int start, int end, boolean endOfInput) throws IllegalArgumentException {
+    int lineStart = start;
+    buf = buffer;
+
+    while (lineStart < end) {
+      int lineEnd = lineStart;
+      while ((lineEnd < end) && (buffer.get(lineEnd) != '\n')) {
+        lineEnd++;
+      }
+      if ((lineEnd == end) && !endOfInput)
+        break;
+
+      lineno++;
+      pos = lineStart;
+      limit = lineEnd;
+      parseLine();
+      lineStart = Math.min(lineEnd + 1, end);
+    }
+    buf = null;
+    return lineStart;
+  }
+
+  private void parseLine() throws IllegalArgumentException {
+    skipSpaces();
+    if (pos >= limit)
+      return;
+
+    int keyStart = pos;
+    while ((pos < limit) && !isSpace(buf.get(pos))) {
+      pos++;
+    }
+    int keyLength = pos - keyStart;
+    byte k0 = buf.get(keyStart);
+    byte k1 = (keyLength > 1) ? buf.get(keyStart + 1) : 0;
+
+    if ((keyLength == 1) && (k0 == 'v')) {
+      int count = readValues();
+      if ((count < 3) || (count > 6))
+        throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Vertex coordinate has an invalid number of values");
+      float x = values[0], y = values[1], z = values[2];
+      if (count == 4) {
+        float num = values[3];
+        if (num != 0) {
+          x /= num;
+          y /= num;
+          z /= num;
+        }
+      }
+      positions.add(x, y, z, 1.0f);
+    } else if ((keyLength == 2) && (k0 == 'v') && (k1 == 't')) {
+      int count = readValues();
+      if ((count < 2) || (count > 3))
+        throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Texture coordinate has an invalid number of values");
+      texcoords.add(values[0], values[1], (count > 2) ? values[2] : 0.0f, 1.0f);
+    } else if ((keyLength == 2) && (k0 == 'v') && (k1 == 'n')) {
+      int count = readValues();
+      if (count != 3)
+        throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Normal has an invalid number of values");
+      normal.set(values[0], values[1], values[2]).normalize();
+      normals.add(normal.x, normal.y, normal.z, 0.0f);
+    } else if ((keyLength == 1) && (k0 == 'f')) {
+      readFace();
+    }
+  }
+
+  private int readValues() throws IllegalArgumentException {
+    int count = 0;
+
+    skipSpaces();
+    while (pos < limit) {
+      float v = readFloat();
+      if (count < values.length)
+        values[count] = v;
+      count++;
+      skipSpaces();
+    }
+    return count;
+  }
+
+  /**
+   * Read the vertex indices of a face, and add it as a fan of triangles. Only
+   * the position index of each v/vt/vn is used
+   */
+  private void readFace() throws IllegalArgumentException {
+    int count = 0;
+    int first = 0, previous = 0;
+    boolean firstRelative = false, previousRelative = false;
+
+    skipSpaces();
+    while (pos < limit) {
+      boolean relative = buf.get(pos) == '-';
+      int index = readIndex();
+
+      //skip the texture and normal indices
+      while ((pos < limit) && !isSpace(buf.get(pos))) {
+        pos++;
+      }
+
+      if (count == 0) {
+        first = index;
+        firstRelative = relative;
+      } else if (count >= 2) {
+        int slot = triangles.size();
+        triangles.add(first, previous, index);
+        if (firstRelative)
+          relativeIndices.add(slot);
+        if (previousRelative)
+          relativeIndices.add(slot + 1);
+        if (relative)
+          relativeIndices.add(slot + 2);
+      }
+      previous = index;
+      previousRelative = relative;
+      count++;
+      skipSpaces();
+    }
+
+    if (count < 3)
+      throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Face has too few vertices, must be at least 3");
+  }
+
+  /**
+   * Read an OBJ vertex index, and return it as a 0-based index. Negative
+   * indices count back from the last vertex read so far
+   */
+  private int readIndex() throws IllegalArgumentException {
+    boolean negative = false;
+    long value = 0;
+    int start = pos;
+
+    if ((pos < limit) && ((buf.get(pos) == '-') || (buf.get(pos) == '+'))) {
+      negative = buf.get(pos) == '-';
+      pos++;
+    }
+    while ((pos < limit) && isDigit(buf.get(pos)) && (value <= Integer.MAX_VALUE)) {
+      value = 10 * value + (buf.get(pos) - '0');
+      pos++;
+    }
+    if ((pos == start) || (value == 0) || (value > Integer.MAX_VALUE)
+            || ((pos < limit) && (buf.get(pos) != '/') && !isSpace(buf.get(pos))))
+      throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Invalid vertex index " + token(start));
+
+    //in OBJ file format all indices begin at 1, so must subtract 1 here
+    return negative ? getVertexCount() - (int) value : (int) value - 1;
+  }
+
+  /**
+   * Read a float. Plain decimal numbers with few enough digits are parsed
+   * exactly here, first with float and then with double arithmetic, anything
+   * else is handed to Float.parseFloat
+   */
+  private float readFloat() throws IllegalArgumentException {
+    int start = pos;
+    boolean negative = false;
+    long mantissa = 0;
+    int digits = 0, exponent = 0;
+    boolean anyDigits = false;
+    byte b;
+
+    if ((pos < limit) && (((b = buf.get(pos)) == '-') || (b == '+'))) {
+      negative = b == '-';
+      pos++;
+    }
+    while ((pos < limit) && isDigit(b = buf.get(pos))) {
+      if (digits < 18) {
+        mantissa = 10 * mantissa + (b - '0');
+        if (mantissa != 0)
+          digits++;
+      } else {
+        exponent++;
+      }
+      anyDigits = true;
+      pos++;
+    }
+    if ((pos < limit) && (buf.get(pos) == '.')) {
+      pos++;
+      while ((pos < limit) && isDigit(b = buf.get(pos))) {
+        if (digits < 18) {
+          mantissa = 10 * mantissa + (b - '0');
+          if (mantissa != 0)
+            digits++;
+          exponent--;
+        }
+        anyDigits = true;
+        pos++;
+      }
+    }
+    if (anyDigits && (pos < limit) && (((b = buf.get(pos)) == 'e') || (b == 'E'))) {
+      pos++;
+      boolean negativeExponent = false;
+      int e = 0;
+      if ((pos < limit) && (((b = buf.get(pos)) == '-') || (b == '+'))) {
+        negativeExponent = b == '-';
+        pos++;
+      }
+      if ((pos >= limit) || !isDigit(buf.get(pos)))
+        anyDigits = false;
+      while ((pos < limit) && isDigit(b = buf.get(pos))) {
+        if (e < 100000)
+          e = 10 * e + (b - '0');
+        pos++;
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+
+    if (anyDigits && ((pos >= limit) || isSpace(buf.get(pos)))) {
+      if (mantissa == 0)
+        return negative ? -0.0f : 0.0f;
+      //both operands are exact, so a single multiply or divide rounds correctly
+      if ((mantissa <= (1 << 24)) && (exponent >= -10) && (exponent <= 10)) {
+        float f = (exponent < 0) ? (float) mantissa / POW10[-exponent] : (float) mantissa * POW10[exponent];
+        return negative ? -f : f;
+      }
+      if ((mantissa < (1L << 53)) && (exponent >= -22) && (exponent <= 22)) {
+        double d = (exponent < 0) ? mantissa / POW10D[-exponent] : mantissa * POW10D[exponent];
+        if (roundsToFloat(d)) {
+          float f = (float) d;
+          return negative ? -f : f;
+        }
+      }
+    }
+
+    //too many digits, or not a plain decimal number
+    pos = start;
+    while ((pos < limit) && !isSpace(buf.get(pos))) {
+      pos++;
+    }
+    try {
+      return Float.parseFloat(token(start));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Line " + (lineOffset + lineno) + ": Invalid number " + token(start), e);
+    }
+  }
+
+  /**
+   * Whether a correctly rounded double rounds to the same float as the exact
+   * value it stands for. It does unless it is exactly halfway between two
+   * floats, as rounding to the nearest double never crosses such a point. Only
+   * normal floats are taken, whose halfway points are all doubles.
+   */
+  static boolean roundsToFloat(double d) {
+    return (d >= Float.MIN_NORMAL) && (d <= Float.MAX_VALUE)
+            && ((Double.doubleToRawLongBits(d) & 0x1FFFFFFFL) != 0x10000000L);
+  }
+
+  /**
+   * The text from start up to the next whitespace
+   */
+  private String token(int start) {
+    int end = start;
+    while ((end < limit) && !isSpace(buf.get(end))) {
+      end++;
+    }
+    byte[] text = new byte[end - start];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = buf.get(start + i);
+    }
+    return new String(text, StandardCharsets.US_ASCII);
+  }
+
+  private void skipSpaces() {
+    while ((pos < limit) && isSpace(buf.get(pos))) {
+      pos++;
+    }
+  }
+
+  private static boolean isSpace(byte b) {
+    return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\f') || (b == 0x0B);
+  }
+
+  private static boolean isDigit(byte b) {
+    return (b >= '0') && (b <= '9');
+  }
+
+  /**
+   * Create a mesh from everything parsed so far, in the same way as
+   * {@link ObjImporter}
+   */
+  <K extends IVertexData> PolygonMesh<K> buildMesh(VertexProducer<K> producer, boolean scaleAndCenter) {
+    PolygonMesh<K> mesh = new PolygonMesh<K>();
+    int vertexCount = getVertexCount();
+    float[] p = positions.array();
+    int i;
+
+    if (scaleAndCenter)
+      scaleAndCenter();
+
+    boolean hasTexcoords = texcoords.size() == positions.size();
+    boolean hasNormals = normals.size() == positions.size();
+    float[] t = texcoords.array();
+    float[] n = normals.array();
+    List<K> vertexData = new ArrayList<K>(vertexCount);
+
+    int[] slots = null;
+    for (i = 0; i < vertexCount; i++) {
+      K v = producer.produce();
+      if (slots == null)
+        slots = resolveSlots(v);
+      setData(v, slots[0], "position", p, 4 * i);
+      if (hasTexcoords) {
+        setData(v, slots[1], "texcoord", t, 4 * i);
+      }
+      if (hasNormals) {
+        setData(v, slots[2], "normal", n, 4 * i);
+      }
+      vertexData.add(v);
+    }
+
+    mesh.setVertexData(vertexData);
+    mesh.setPrimitives(triangles.asList());
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+
+    if ((normals.size() == 0) || (!hasNormals))
+      mesh.computeNormals();
+    return mesh;
+  }
+
+  /**
+   * The slots of position, texture coordinate and normal in the layout of a
+   * vertex, -1 for those it does not have
+   */
+  static int[] resolveSlots(IVertexData vertex) {
+    VertexLayout layout = vertex.getLayout();
+    return new int[]{layout.getSlot("position"), layout.getSlot("texcoord"), layout.getSlot("normal")};
+  }
+
+  /**
+   * Set 4 floats of an attribute of a vertex by its slot. Without a slot, the
+   * vertex gets them by name, and decides whether it takes the attribute.
+   */
+  static void setData(IVertexData vertex, int slot, String attribName, float[] data, int offset) {
+    if (slot >= 0)
+      vertex.setData(slot, data, offset, 4);
+    else
+      vertex.setData(attribName, Arrays.copyOfRange(data, offset, offset + 4));
+  }
+
+  /**
+   * Create a packed mesh from everything parsed so far. Positions, texture
+   * coordinates and normals have 4 floats per vertex
+   */
+  PackedPolygonMesh buildPackedMesh(boolean scaleAndCenter) {
+    PackedPolygonMesh mesh = new PackedPolygonMesh(getVertexCount());
+
+    if (scaleAndCenter)
+      scaleAndCenter();
+
+    mesh.setAttribute("position", 4, positions.toArray());
+    if (texcoords.size() == positions.size())
+      mesh.setAttribute("texcoord", 4, texcoords.toArray());
+    mesh.setPrimitives(triangles.toArray());
+    mesh.setPrimitiveType(GL.GL_TRIANGLES);
+    mesh.setPrimitiveSize(3);
+    if (normals.size() == positions.size())
+      mesh.setAttribute("normal", 4, normals.toArray());
+    else
+      mesh.computeNormals();
+    return mesh;
+  }
+
+  /**
+   * Center the positions about the origin and within a cube of side 1
+   */
+  private void scaleAndCenter() {
+    int vertexCount = getVertexCount();
+    float[] p = positions.array();
+    int i;
+
+    if (vertexCount == 0)
+      return;
+
+    Bounds bounds = Bounds.of(p, 4, vertexCount);
+    Vector4f minimum = bounds.getMinimum();
+    Vector4f maximum = bounds.getMaximum();
+
+    Vector4f center = new Vector4f(minimum).add(maximum).mul(0.5f);
+    float longest = Math.max(maximum.x - minimum.x, Math.max(maximum.y - minimum.y, maximum.z - minimum.z));
+
+    //first translate and then scale
+    Matrix4f transformMatrix = new Matrix4f().mul(new Matrix4f().scale(1.0f / longest, 1.0f / longest, 1.0f / longest))
+            .mul(new Matrix4f().translate(-center.x, -center.y, -center.z));
+
+    Vector4f v = new Vector4f();
+    for (i = 0; i < vertexCount; i++) {
+      transformMatrix.transform(v.set(p[4 * i], p[4 * i + 1], p[4 * i + 2], p[4 * i + 3]));
+      p[4 * i] = v.x;
+      p[4 * i + 1] = v.y;
+      p[4 * i + 2] = v.z;
+      p[4 * i + 3] = v.w;
+    }
+  }
+}
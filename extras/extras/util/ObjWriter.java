@@ -0,0 +1,271 @@
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Formats the numbers of an OBJ file as ASCII into a reusable byte array.
+ * With an OutputStream, the array is written out whenever it fills up;
+ * without one, it grows, so that a chunk of the file can be formatted on its
+ * own and written out later.
+ *
+ * Floats are written with as few digits as read back to the same float,
+ * checked with the same arithmetic that ObjParser reads them with, so that
+ * they are read back exactly without Float.parseFloat. That covers all normal
+ * floats from about 1e-13 to 1e22. Anything else is written with
+ * Float.toString.
+ */
+class ObjWriter {
+  //the most bytes a number takes: the sign, "0.", 21 zeros and 9 digits
+  private static final int MAX_NUMBER_LENGTH = 40;
+  //10^MIN_POWER and up, covering the powers of ten of all floats
+  private static final int MIN_POWER = -46;
+  private static final double[] POWERS = new double[86];
+
+  static {
+    for (int i = 0; i < POWERS.length; i++) {
+      POWERS[i] = Double.parseDouble("1e" + (i + MIN_POWER));
+    }
+  }
+
+  private final OutputStream out;
+  private byte[] buffer;
+  private int size;
+
+  ObjWriter(OutputStream out, int capacity) {
+    this.out = out;
+    buffer = new byte[Math.max(capacity, 256)];
+    size = 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * Write out what has been formatted to the given stream, and start again
+   */
+  void writeTo(OutputStream stream) throws IOException {
+    stream.write(buffer, 0, size);
+    size = 0;
+  }
+
+  void flush() throws IOException {
+    writeTo(out);
+    out.flush();
+  }
+
+  void write(byte b) throws IOException {
+    ensure(1);
+    buffer[size++] = b;
+  }
+
+  void write(byte[] bytes) throws IOException {
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+  }
+
+  void write(int value) throws IOException {
+    ensure(MAX_NUMBER_LENGTH);
+    long v = value;
+    if (v < 0) {
+      buffer[size++] = '-';
+      v = -v;
+    }
+    writeDigits(v, digitCount(v));
+  }
+
+  void write(float value) throws IOException {
+    ensure(MAX_NUMBER_LENGTH);
+    if ((Float.floatToRawIntBits(value) & 0x80000000) != 0) {
+      buffer[size++] = '-';
+      value = -value;
+    }
+    if (value == 0) {
+      buffer[size++] = '0';
+      return;
+    }
+    if (!(value < Float.POSITIVE_INFINITY) || !writeShortest(value)) {
+      byte[] text = Float.toString(value).getBytes("US-ASCII");
+      ensure(text.length);
+      System.arraycopy(text, 0, buffer, size, text.length);
+      size += text.length;
+    }
+  }
+
+  /**
+   * Write a positive float as digits with a decimal point, using the fewest
+   * digits that read back as the same float. Returns false, writing nothing,
+   * if it cannot be read back exactly without Float.parseFloat
+   */
+  private boolean writeShortest(float value) {
+    int firstPower = firstPower(value);
+
+    //every number strictly between the halfway points to the floats on either
+    //side reads back as value. With 9 digits there are several integers in
+    //that interval; the one with the most trailing zeros has the fewest digits
+    int nineDigits = 8 - firstPower;
+    if ((nineDigits < -22) || (nineDigits > 22))
+      return writeShortestBySearch(value, firstPower);
+    double low = scale(((double) value + Math.nextDown(value)) / 2, nineDigits);
+    double high = scale(((double) value + Math.nextUp(value)) / 2, nineDigits);
+    //below 10^9 + 1, so ints will do, and dividing them by 10 is cheap
+    int first = (int) low + 1, last = (int) high;
+    if (last == high)
+      last--;
+    if (first > last)
+      return writeShortestBySearch(value, firstPower);
+    int zeros = 0;
+    while ((zeros < 8) && ((last / 10) >= (first + 9) / 10)) {
+      first = (first + 9) / 10;
+      last = last / 10;
+      zeros++;
+    }
+    //of the numbers left in the interval, the closest to value
+    int scale = nineDigits - zeros;
+    if (scale < -22)
+      return false;
+    long mantissa = Math.round(scale(value, scale));
+    mantissa = Math.max(first, Math.min(last, mantissa));
+
+    //the interval was only found to within rounding, so check the result
+    if (!readsBack(mantissa, scale, value))
+      return writeShortestBySearch(value, firstPower);
+    writeDecimal(mantissa, scale);
+    return true;
+  }
+
+  /**
+   * The same as writeShortest, trying 1 digit, 2 digits and so on
+   */
+  private boolean writeShortestBySearch(float value, int firstPower) {
+    for (int digits = 1; digits <= 9; digits++) {
+      int scale = digits - 1 - firstPower;
+      if (scale < -22)
+        return false; //so large that Float.toString is shorter
+      if (scale > 22)
+        continue;
+      long mantissa = Math.round(scale(value, scale));
+      if (readsBack(mantissa, scale, value)) {
+        writeDecimal(mantissa, scale);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Write mantissa / 10^scale
+   */
+  private void writeDecimal(long mantissa, int scale) {
+    while ((scale > 0) && (mantissa % 10 == 0)) {
+      mantissa /= 10;
+      scale--;
+    }
+    int length = digitCount(mantissa);
+    if (scale <= 0) {
+      writeDigits(mantissa, length);
+      for (int i = 0; i < -scale; i++) {
+        buffer[size++] = '0';
+      }
+    } else if (length > scale) {
+      //digits on both sides of the point
+      long whole = mantissa / (long) ObjParser.POW10D[scale];
+      writeDigits(whole, length - scale);
+      buffer[size++] = '.';
+      writeDigits(mantissa - whole * (long) ObjParser.POW10D[scale], scale);
+    } else {
+      buffer[size++] = '0';
+      buffer[size++] = '.';
+      for (int i = length; i < scale; i++) {
+        buffer[size++] = '0';
+      }
+      writeDigits(mantissa, length);
+    }
+  }
+
+  /**
+   * Whether mantissa / 10^scale reads back as value in ObjParser without
+   * Float.parseFloat. This is the same arithmetic as in ObjParser.
+   */
+  private static boolean readsBack(long mantissa, int scale, float value) {
+    if ((scale < -22) || (scale > 22) || (mantissa <= 0) || (mantissa >= (1L << 53)))
+      return false;
+    double back = (scale >= 0) ? mantissa / ObjParser.POW10D[scale] : mantissa * ObjParser.POW10D[-scale];
+    return ObjParser.roundsToFloat(back) && ((float) back == value);
+  }
+
+  /**
+   * value * 10^scale, for a scale between -22 and 22
+   */
+  private static double scale(double value, int scale) {
+    return (scale >= 0) ? value * ObjParser.POW10D[scale] : value / ObjParser.POW10D[-scale];
+  }
+
+  /**
+   * The power of ten of the first digit of a positive float, from its binary
+   * exponent and a table of powers of ten
+   */
+  private static int firstPower(float value) {
+    //floor(exponent * log10(2)), in integers
+    int power = (Math.getExponent(value) * 78913) >> 18;
+    if ((power + 1 - MIN_POWER < POWERS.length) && (value >= POWERS[power + 1 - MIN_POWER]))
+      power++;
+    else if (value < POWERS[power - MIN_POWER])
+      power--;
+    return power;
+  }
+
+  /**
+   * Write a non-negative number as exactly length digits, with leading zeros
+   */
+  private void writeDigits(long value, int length) {
+    if (value <= Integer.MAX_VALUE) {
+      //int division is much cheaper, and all mantissas fit
+      int v = (int) value;
+      for (int i = size + length - 1; i >= size; i--) {
+        int next = v / 10;
+        buffer[i] = (byte) ('0' + v - 10 * next);
+        v = next;
+      }
+    } else {
+      for (int i = size + length - 1; i >= size; i--) {
+        buffer[i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+    }
+    size += length;
+  }
+
+  private static int digitCount(long value) {
+    int count = 1;
+    if (value <= Integer.MAX_VALUE) {
+      for (int v = (int) value; v >= 10; v /= 10) {
+        count++;
+      }
+      return count;
+    }
+    while (value >= 10) {
+      value /= 10;
+      count++;
+    }
+    return count;
+  }
+
+  private void ensure(int count) throws IOException {
+    if (size + count <= buffer.length)
+      return;
+    if (out != null) {
+      out.write(buffer, 0, size);
+      size = 0;
+    }
+    if (size + count > buffer.length)
+      buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + count));
+  }
+}
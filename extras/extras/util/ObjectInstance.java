@@ -9,8 +9,11 @@ import util.Material;
 
 import org.joml.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,9 +30,41 @@ import com.jogamp.opengl.util.GLBuffers;
  */
 
 public class ObjectInstance {
+  /**
+   * Whether vertex data is written straight into buffers mapped with
+   * glMapBufferRange, instead of into a direct buffer that is then copied by
+   * glBufferData. Off by default, on with -Dutil.mapUploads=true
+   */
+  public static final boolean MAP_UPLOADS = Boolean.getBoolean("util.mapUploads");
+
+  /**
+   * The size on screen, in pixels, at and above which an object with levels of
+   * detail is drawn in full detail, unless changed with setLodReferenceSize
+   */
+  public static final float DEFAULT_LOD_REFERENCE_SIZE = 512;
+
   protected IntBuffer vao; //our VAO
   protected IntBuffer vbo;//all our Vertex Buffer Object IDs
+  protected IntBuffer instanceVbo; //per-instance transforms and visibility, if instanced
+  protected int instanceCapacity;
+
+  //if this object lives in a GeometryArena, its range within the shared buffers
+  protected GeometryArena arena;
+  protected int baseVertex, firstIndex;
+
+  //if set, the binds made while drawing go through it and redundant ones are skipped
+  protected GLStateCache stateCache;
   protected util.PolygonMesh<?> mesh;
+  protected PackedPolygonMesh packedMesh;
+  //what the index buffer holds, as uploaded: GL_UNSIGNED_SHORT or GL_UNSIGNED_INT indices
+  protected int primitiveType, indexCount, indexType;
+  //the bounds of an object made from a PackedPolygonMesh or a MeshCache, which has no PolygonMesh
+  protected Vector4f minBounds, maxBounds;
+  //if built with levels of detail, where each level is in the index buffer and
+  //the fraction of the triangles of the first level it keeps
+  protected int[] lodFirstIndex, lodIndexCount;
+  protected float[] lodRatios;
+  protected float lodReferenceSize = DEFAULT_LOD_REFERENCE_SIZE;
   protected String name; //a unique "name" for this object
 
 
@@ -77,23 +112,8 @@ public class ObjectInstance {
    */
 
   public <K extends IVertexData> ObjectInstance(GL3 gl, util.ShaderProgram program, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh, String name) {
-
-
-    vao = IntBuffer.allocate(1);
-    vbo = IntBuffer.allocate(2);
-
-    //create the VAO ID for this object
-    gl.glGenVertexArrays(1, vao);
-    //bind the VAO
-    gl.glBindVertexArray(vao.get(0));
-    //create as many VBO IDs as you need
-    gl.glGenBuffers(2, vbo);
-    //set the name
-    setName(name);
-    //default material
-
-    initPolygonMesh(gl, program,shaderLocations, shaderVarsToAttributeNames,
-            mesh);
+    this(gl, name);
+    initPolygonMesh(gl, program, shaderLocations, shaderVarsToAttributeNames, mesh);
   }
 
   /**
@@ -115,143 +135,193 @@ public class ObjectInstance {
    */
 
   public <K extends IVertexData> ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh, String name) {
-
-
-    vao = IntBuffer.allocate(1);
-    vbo = IntBuffer.allocate(2);
-
-    //create the VAO ID for this object
-    gl.glGenVertexArrays(1, vao);
-    //bind the VAO
-    gl.glBindVertexArray(vao.get(0));
-    //create as many VBO IDs as you need
-    gl.glGenBuffers(2, vbo);
-    //set the name
-    setName(name);
-    //default material
-
+    this(gl, name);
     initPolygonMesh(gl, shaderLocations, shaderVarsToAttributeNames, mesh);
   }
 
   /**
-   * A helper method that sets this object up for rendering
+   * Create an ObjectInstance from a mesh in the binary mesh cache format. The
+   * vertex and index data are given to OpenGL straight from the mapped cache
+   * file. The object has no PolygonMesh: getMesh() returns null.
    *
    * @param gl                         the GL context within which this object
-   *                                   is to be rendered
-   * @param program                    the shader program to be used to render
-   *                                   this object
-   * @param shaderLocations            the locations of various shader variables
-   *                                   relevant to this object
-   * @param shaderVarsToAttributeNames a mapping of shader variable -> vertex
-   *                                   attributes in the underlying mesh
-   * @param mesh                       the underlying polygon mesh
+   *                                   will be rendered
+   * @param shaderLocations            the location of various shader variables
+   *                                   relevant to the rendering of this object
+   * @param shaderVarsToAttributeNames a mapping between shader variables and
+   *                                   vertex attributes in the cached mesh
+   * @param cache                      the cached mesh
+   * @param name                       a name of the object
    */
-  protected <K extends IVertexData> void initPolygonMesh(GL3 gl, util.ShaderProgram program, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh) {
-    int i, j;
+  public ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, MeshCache cache, String name) throws IllegalArgumentException {
+    //the layout is looked up first, so that a missing attribute throws before any VAO or buffer is made
+    this(gl, shaderLocations, BufferLayout.of(cache, shaderVarsToAttributeNames), cache, name);
+  }
 
-    //get a list of all the vertex attributes from the mesh
-    List<K> vertexDataList = mesh.getVertexAttributes();
-    List<Integer> primitives = mesh.getPrimitives();
+  private ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, BufferLayout layout, MeshCache cache, String name) {
+    this(gl, name);
 
-    //get the indices for the mesh as a IntBuffer
-    int[] primitivesAsArray = new int[primitives.size()];
-    for (i = 0; i < primitives.size(); i++) {
-      primitivesAsArray[i] = primitives.get(i);
-    }
-    IntBuffer indexBuffer = IntBuffer.wrap(primitivesAsArray);
+    primitiveType = cache.getPrimitiveType();
+    indexCount = cache.getIndexCount();
+    indexType = GL.GL_UNSIGNED_INT;
+    minBounds = cache.getMinimumBounds();
+    maxBounds = cache.getMaximumBounds();
 
-    //create a floatbuffer for all vertex attributes. When we convert an IVertexData
-    //to a bunch of floats, we must remember where each attribute starts, because
-    //we will need to give it to glVertexAttribPointer below
+    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo.get(0));
+    gl.glBufferData(GL3.GL_ARRAY_BUFFER, cache.getVertexData().remaining(), cache.getVertexData(), GL3.GL_STATIC_DRAW);
+    setAttributePointers(gl, shaderLocations, layout);
 
-    int sizeOfOneVertex = 0;
-    Map<String, Integer> offsets = new HashMap<String, Integer>();
+    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
+    gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, cache.getIndexData().remaining(), cache.getIndexData(), GL3.GL_STATIC_DRAW);
 
-    for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-      offsets.put(e.getValue(), sizeOfOneVertex);
-      sizeOfOneVertex += vertexDataList.get(0).getData(e.getValue()).length;
-    }
+    gl.glBindVertexArray(0);
+  }
 
-    int stride;
+  /**
+   * Create an ObjectInstance from a PackedPolygonMesh. The attribute arrays of
+   * the mesh are interleaved straight into the vertex buffer. getMesh()
+   * returns null for this object, see getPackedMesh().
+   *
+   * @param gl                         the GL context within which this object
+   *                                   will be rendered
+   * @param shaderLocations            the location of various shader variables
+   *                                   relevant to the rendering of this object
+   * @param shaderVarsToAttributeNames a mapping between shader variables and
+   *                                   attributes in the packed mesh
+   * @param mesh                       the mesh to be drawn
+   * @param name                       a name of the object
+   */
+  public ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, final PackedPolygonMesh mesh, String name) {
+    this(gl, shaderLocations, shaderVarsToAttributeNames, mesh, null, name);
+  }
 
-    if (shaderVarsToAttributeNames.size() > 1)
-      stride = sizeOfOneVertex;
-    else
-      stride = 0;
+  /**
+   * Create an ObjectInstance from a PolygonMesh with levels of detail, built
+   * by {@link MeshSimplifier}. See the constructor taking a PackedPolygonMesh
+   * and ratios. getMesh() returns the given mesh.
+   */
+  public <K extends IVertexData> ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh, float[] lodRatios, String name) {
+    this(gl, shaderLocations, shaderVarsToAttributeNames, PackedPolygonMesh.fromPolygonMesh(mesh), lodRatios, name);
+    this.mesh = mesh;
+    packedMesh = null;
+  }
 
-    float[] vertexDataAsFloats = new float[sizeOfOneVertex * vertexDataList.size()];
-    i = 0;
-    for (IVertexData v : vertexDataList) {
-      for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-        float[] data = v.getData(e.getValue());
-        for (j = 0; j < data.length; j++, i++) {
-          vertexDataAsFloats[i] = data[j];
+  /**
+   * Create an ObjectInstance from a PackedPolygonMesh with levels of detail,
+   * built by {@link MeshSimplifier}. All levels share the one vertex buffer,
+   * and their indices follow each other in the one index buffer. Use
+   * draw(gla, modelviewProjection, width, height) to pick the level from the
+   * size of the object on screen, or draw(gla, level) to pick it directly.
+   *
+   * @param gl                         the GL context within which this object
+   *                                   will be rendered
+   * @param shaderLocations            the location of various shader variables
+   *                                   relevant to the rendering of this object
+   * @param shaderVarsToAttributeNames a mapping between shader variables and
+   *                                   attributes in the packed mesh
+   * @param mesh                       the mesh to be drawn, made of
+   *                                   GL_TRIANGLES if there are ratios
+   * @param lodRatios                  the fraction of the triangles kept by
+   *                                   each level after the full mesh, in
+   *                                   decreasing order. Null or empty for
+   *                                   only the full mesh
+   * @param name                       a name of the object
+   */
+  public ObjectInstance(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, final PackedPolygonMesh mesh, float[] lodRatios, String name) {
+    this(gl, name);
+
+    packedMesh = mesh;
+    minBounds = mesh.getMinimumBounds();
+    maxBounds = mesh.getMaximumBounds();
+
+    final BufferLayout layout = new BufferLayout(shaderVarsToAttributeNames);
+    final float[][] arrays = new float[layout.count][];
+    for (int a = 0; a < layout.count; a++) {
+      arrays[a] = mesh.getAttribute(layout.attribNames[a]);
+      layout.sizes[a] = mesh.getComponentCount(layout.attribNames[a]);
+    }
+    layout.computeOffsets();
+
+    final int vertexCount = mesh.getVertexCount();
+    upload(gl, shaderLocations, layout, vertexCount, new VertexWriter() {
+      @Override
+      public void write(FloatBuffer out) {
+        for (int i = 0; i < vertexCount; i++) {
+          for (int a = 0; a < layout.count; a++) {
+            out.put(arrays[a], i * layout.sizes[a], layout.sizes[a]);
+          }
         }
       }
+    });
+
+    if ((lodRatios == null) || (lodRatios.length == 0)) {
+      IntBuffer indices = IntBuffer.wrap(mesh.getPrimitives());
+      uploadIndices(gl, indices, vertexCount);
+    } else {
+      int[][] lods = MeshSimplifier.buildLods(mesh, lodRatios);
+      lodFirstIndex = new int[lods.length];
+      lodIndexCount = new int[lods.length];
+      this.lodRatios = new float[lods.length];
+      int total = 0;
+      for (int i = 0; i < lods.length; i++) {
+        lodFirstIndex[i] = total;
+        lodIndexCount[i] = lods[i].length;
+        //what was actually kept, which may be more than asked for
+        this.lodRatios[i] = (float) lods[i].length / java.lang.Math.max(lods[0].length, 1);
+        total += lods[i].length;
+      }
+      IntBuffer indices = IntBuffer.allocate(total);
+      for (int[] lod : lods) {
+        indices.put(lod);
+      }
+      indices.flip();
+      uploadIndices(gl, indices, vertexCount);
+      indexCount = lodIndexCount[0];
     }
+    primitiveType = mesh.getPrimitiveType();
+    gl.glBindVertexArray(0);
+  }
 
-    FloatBuffer vertexDataAsBuffer = FloatBuffer.wrap(vertexDataAsFloats);
-
-
+  /**
+   * Create an ObjectInstance that is only a range within the shared buffers of
+   * a GeometryArena. It owns no VAO or buffers of its own. Use
+   * GeometryArena.add() to create one.
+   *
+   * @param arena      the arena holding the geometry
+   * @param mesh       the mesh drawn by this object
+   * @param baseVertex the position of the first vertex of the mesh in the
+   *                   arena's vertex buffer
+   * @param firstIndex the position of the first index of the mesh in the
+   *                   arena's index buffer
+   * @param name       a name of the object
+   */
+  ObjectInstance(GeometryArena arena, util.PolygonMesh<?> mesh, int baseVertex, int firstIndex, String name) {
+    this.arena = arena;
     this.mesh = mesh;
+    this.primitiveType = mesh.getPrimitiveType();
+    this.indexCount = mesh.getPrimitiveCount();
+    this.baseVertex = baseVertex;
+    this.firstIndex = firstIndex;
+    setName(name);
+  }
 
-    this.mesh.computeBoundingBox();
-
-
-
-		/*
-         *Bind the VAO as the current VAO, so that all subsequent commands affect it
-		 */
-    gl.glBindVertexArray(vao.get(0));
-
+  /**
+   * A helper method that sets this object up for rendering
+   *
+   * @param gl                         the GL context within which this object
+   *                                   is to be rendered
+   * @param program                    the shader program to be used to render
+   *                                   this object
+   * @param shaderLocations            the locations of various shader variables
+   *                                   relevant to this object
+   * @param shaderVarsToAttributeNames a mapping of shader variable -> vertex
+   *                                   attributes in the underlying mesh
+   * @param mesh                       the underlying polygon mesh
+   */
+  protected <K extends IVertexData> void initPolygonMesh(GL3 gl, util.ShaderProgram program, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh) {
     //enable the program
     program.enable(gl);
-
-    //copy all the data to the vbo[0]
-    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo.get(0));
-    gl.glBufferData(GL3.GL_ARRAY_BUFFER, vertexDataAsBuffer.capacity() * GLBuffers.SIZEOF_FLOAT, vertexDataAsBuffer, GL3.GL_STATIC_DRAW);
-
-
-    /**
-     * go through all variables and enable that
-     * attribute.
-     */
-
-
-    for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-      /**
-       * e.key: the name of the shader variable
-       * e.value: the name of the corresponding vertex attribute in polygon mesh
-       */
-
-
-      int shaderLocation = shaderLocations.getLocation(e.getKey());
-
-      if (shaderLocation >= 0) {
-        //tell opengl how to interpret the above data
-        gl.glVertexAttribPointer(shaderLocation, vertexDataList.get(0).getData(e.getValue()).length, GL3.GL_FLOAT, false, Float.BYTES * stride, Float.BYTES * offsets.get(e.getValue()));
-        //enable this attribute so that when rendered, this is sent to the vertex shader
-        gl.glEnableVertexAttribArray(shaderLocation);
-      }
-    }
-
-
-
-
-
-		/*
-         *Allocate the VBO for triangle indices and send it to GPU
-		 */
-    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
-    gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, indexBuffer.capacity() * GLBuffers.SIZEOF_INT, indexBuffer, GL3.GL_STATIC_DRAW);
-
-
-		/*
-		 *Unbind the VAO to prevent accidental change to all the settings
-		 *so at this point, this VAO has two VBOs and two enabled VertexAttribPointers.
-		 * It is going to remember all of that!
-		 */
-    gl.glBindVertexArray(0);
+    initPolygonMesh(gl, shaderLocations, shaderVarsToAttributeNames, mesh);
     program.disable(gl);
   }
 
@@ -267,117 +337,288 @@ public class ObjectInstance {
    * @param mesh                       the underlying polygon mesh
    */
   protected <K extends IVertexData> void initPolygonMesh(GL3 gl, util.ShaderLocationsVault shaderLocations, Map<String, String> shaderVarsToAttributeNames, util.PolygonMesh<K> mesh) {
-    int i, j;
-
     //get a list of all the vertex attributes from the mesh
-    List<K> vertexDataList = mesh.getVertexAttributes();
-    List<Integer> primitives = mesh.getPrimitives();
-
-    //get the indices for the mesh as a IntBuffer
-    int[] primitivesAsArray = new int[primitives.size()];
-    for (i = 0; i < primitives.size(); i++) {
-      primitivesAsArray[i] = primitives.get(i);
+    final List<K> vertexDataList = mesh.getVertexAttributes();
+
+    //work out once where each attribute goes within a vertex, and its slot, from the first vertex
+    final BufferLayout layout = new BufferLayout(shaderVarsToAttributeNames);
+    final int[] slots = new int[layout.count];
+    if (!vertexDataList.isEmpty()) {
+      util.VertexLayout vertexLayout = vertexDataList.get(0).getLayout();
+      for (int a = 0; a < layout.count; a++) {
+        slots[a] = vertexLayout.getSlot(layout.attribNames[a]);
+        if (slots[a] < 0) {
+          throw new IllegalArgumentException("No attribute: " + layout.attribNames[a] + " in the mesh");
+        }
+        layout.sizes[a] = vertexLayout.getSize(slots[a]);
+      }
     }
-    IntBuffer indexBuffer = IntBuffer.wrap(primitivesAsArray);
-
-    //create a floatbuffer for all vertex attributes. When we convert an IVertexData
-    //to a bunch of floats, we must remember where each attribute starts, because
-    //we will need to give it to glVertexAttribPointer below
+    layout.computeOffsets();
 
-    int sizeOfOneVertex = 0;
-    Map<String, Integer> offsets = new HashMap<String, Integer>();
+    //the bounds are computed when first asked for, and kept by the mesh
+    this.mesh = mesh;
 
-    for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-      offsets.put(e.getValue(), sizeOfOneVertex);
-      sizeOfOneVertex += vertexDataList.get(0).getData(e.getValue()).length;
-    }
+    /*
+     *Bind the VAO as the current VAO, so that all subsequent commands affect it
+     */
+    gl.glBindVertexArray(vao.get(0));
 
-    int stride;
+    //copy all the data to the vbo[0] in one pass over the vertices
+    upload(gl, shaderLocations, layout, vertexDataList.size(), new VertexWriter() {
+      @Override
+      public void write(FloatBuffer out) {
+        for (IVertexData v : vertexDataList) {
+          for (int a = 0; a < layout.count; a++) {
+            int size = v.getData(slots[a], out);
+            if (size != layout.sizes[a]) {
+              throw new IllegalArgumentException("All vertices must have the same layout, "
+                      + layout.attribNames[a] + " has " + size + " values instead of " + layout.sizes[a]);
+            }
+          }
+        }
+      }
+    });
 
-    if (shaderVarsToAttributeNames.size() > 1)
-      stride = sizeOfOneVertex;
-    else
-      stride = 0;
+    /*
+     *Allocate the VBO for triangle indices and send it to GPU
+     */
+    List<Integer> primitives = mesh.getPrimitives();
+    IntBuffer indices = IntBuffer.allocate(primitives.size());
+    for (Integer index : primitives) {
+      indices.put(index);
+    }
+    indices.flip();
+    uploadIndices(gl, indices, vertexDataList.size());
+    primitiveType = mesh.getPrimitiveType();
+
+    /*
+     *Unbind the VAO to prevent accidental change to all the settings
+     *so at this point, this VAO has two VBOs and two enabled VertexAttribPointers.
+     * It is going to remember all of that!
+     */
+    gl.glBindVertexArray(0);
+  }
 
-    float[] vertexDataAsFloats = new float[sizeOfOneVertex * vertexDataList.size()];
-    i = 0;
-    for (IVertexData v : vertexDataList) {
+  /**
+   * Where each attribute of a vertex goes in the vertex buffer: the shader
+   * variable and mesh attribute names, in the iteration order of the map they
+   * came from, with the number of floats of each and its offset in floats
+   * within a vertex
+   */
+  private static class BufferLayout {
+    final int count;
+    final String[] shaderVars, attribNames;
+    final int[] sizes, offsets;
+    int sizeOfOneVertex;
+
+    BufferLayout(Map<String, String> shaderVarsToAttributeNames) {
+      count = shaderVarsToAttributeNames.size();
+      shaderVars = new String[count];
+      attribNames = new String[count];
+      sizes = new int[count];
+      offsets = new int[count];
+      int a = 0;
       for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-        float[] data = v.getData(e.getValue());
-        for (j = 0; j < data.length; j++, i++) {
-          vertexDataAsFloats[i] = data[j];
-        }
+        shaderVars[a] = e.getKey();
+        attribNames[a] = e.getValue();
+        a++;
       }
     }
 
-    FloatBuffer vertexDataAsBuffer = FloatBuffer.wrap(vertexDataAsFloats);
-
-
-    this.mesh = mesh;
-
-    this.mesh.computeBoundingBox();
+    void computeOffsets() {
+      sizeOfOneVertex = 0;
+      for (int a = 0; a < count; a++) {
+        offsets[a] = sizeOfOneVertex;
+        sizeOfOneVertex += sizes[a];
+      }
+    }
 
+    /**
+     * The layout of the given attributes in a cached mesh, which may have
+     * others in between
+     *
+     * @throws IllegalArgumentException if the cache lacks one of them
+     */
+    static BufferLayout of(MeshCache cache, Map<String, String> shaderVarsToAttributeNames) throws IllegalArgumentException {
+      BufferLayout layout = new BufferLayout(shaderVarsToAttributeNames);
+      for (int a = 0; a < layout.count; a++) {
+        layout.sizes[a] = cache.getAttributeSize(layout.attribNames[a]);
+        layout.offsets[a] = cache.getAttributeOffset(layout.attribNames[a]);
+      }
+      layout.sizeOfOneVertex = cache.getStride();
+      return layout;
+    }
+  }
 
+  /**
+   * Writes all vertices, interleaved, into the vertex buffer
+   */
+  private interface VertexWriter {
+    void write(FloatBuffer out);
+  }
 
-		/*
-         *Bind the VAO as the current VAO, so that all subsequent commands affect it
-		 */
-    gl.glBindVertexArray(vao.get(0));
+  /**
+   * Fill vbo[0] with the vertices and point the shader variables at their
+   * attributes. Expects the VAO to be bound.
+   */
+  private void upload(GL3 gl, util.ShaderLocationsVault shaderLocations, BufferLayout layout, int vertexCount, VertexWriter writer) {
+    fillVertexBuffer(gl, layout, vertexCount, writer);
+    setAttributePointers(gl, shaderLocations, layout);
+  }
 
+  /**
+   * Fill vbo[0] with the vertices. They are written straight into the buffer
+   * mapped with glMapBufferRange if mapped uploads are enabled (see
+   * MAP_UPLOADS) and the driver supports it, and into a direct buffer
+   * otherwise.
+   */
+  private void fillVertexBuffer(GL3 gl, BufferLayout layout, int vertexCount, VertexWriter writer) {
+    long size = (long) layout.sizeOfOneVertex * vertexCount * GLBuffers.SIZEOF_FLOAT;
 
-    //copy all the data to the vbo[0]
     gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo.get(0));
-    gl.glBufferData(GL3.GL_ARRAY_BUFFER, vertexDataAsBuffer.capacity() * GLBuffers.SIZEOF_FLOAT, vertexDataAsBuffer, GL3.GL_STATIC_DRAW);
-
+    ByteBuffer mapped = null;
+    if (MAP_UPLOADS && (size > 0)) {
+      gl.glBufferData(GL3.GL_ARRAY_BUFFER, size, null, GL3.GL_STATIC_DRAW);
+      mapped = gl.glMapBufferRange(GL3.GL_ARRAY_BUFFER, 0, size, GL3.GL_MAP_WRITE_BIT | GL3.GL_MAP_INVALIDATE_BUFFER_BIT);
+    }
+    if (mapped != null) {
+      writer.write(mapped.order(ByteOrder.nativeOrder()).asFloatBuffer());
+      if (!gl.glUnmapBuffer(GL3.GL_ARRAY_BUFFER)) {
+        //the contents were lost while mapped, so send them again below
+        mapped = null;
+      }
+    }
+    if (mapped == null) {
+      FloatBuffer vertexData = GLBuffers.newDirectFloatBuffer(layout.sizeOfOneVertex * vertexCount);
+      writer.write(vertexData);
+      vertexData.rewind();
+      gl.glBufferData(GL3.GL_ARRAY_BUFFER, size, vertexData, GL3.GL_STATIC_DRAW);
+    }
+  }
 
+  /**
+   * Point the shader variables at their attributes in the vertex buffer bound
+   * to GL_ARRAY_BUFFER. Expects the VAO to be bound.
+   */
+  private void setAttributePointers(GL3 gl, util.ShaderLocationsVault shaderLocations, BufferLayout layout) {
     /**
      * go through all variables and enable that
      * attribute.
      */
-
-
-    for (Map.Entry<String, String> e : shaderVarsToAttributeNames.entrySet()) {
-      /**
-       * e.key: the name of the shader variable
-       * e.value: the name of the corresponding vertex attribute in polygon mesh
-       */
-
-
-      int shaderLocation = shaderLocations.getLocation(e.getKey());
+    for (int a = 0; a < layout.count; a++) {
+      int shaderLocation = shaderLocations.getLocation(layout.shaderVars[a]);
 
       if (shaderLocation >= 0) {
         //tell opengl how to interpret the above data
-        gl.glVertexAttribPointer(shaderLocation, vertexDataList.get(0).getData(e.getValue()).length, GL3.GL_FLOAT, false, Float.BYTES * stride, Float.BYTES * offsets.get(e.getValue()));
+        gl.glVertexAttribPointer(shaderLocation, layout.sizes[a], GL3.GL_FLOAT, false, Float.BYTES * layout.sizeOfOneVertex, Float.BYTES * layout.offsets[a]);
         //enable this attribute so that when rendered, this is sent to the vertex shader
         gl.glEnableVertexAttribArray(shaderLocation);
       }
     }
+  }
+
+  /**
+   * Fill vbo[1] with the remaining indices, as 16-bit indices if every vertex
+   * can be reached with them and as 32-bit indices otherwise. Expects the VAO
+   * to be bound.
+   */
+  private void uploadIndices(GL3 gl, IntBuffer indices, int vertexCount) {
+    indexCount = indices.remaining();
+    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
+
+    if (vertexCount <= 0x10000) {
+      indexType = GL.GL_UNSIGNED_SHORT;
+      ShortBuffer shortIndices = GLBuffers.newDirectShortBuffer(indexCount);
+      while (indices.hasRemaining()) {
+        shortIndices.put((short) indices.get());
+      }
+      shortIndices.rewind();
+      gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, indexCount * GLBuffers.SIZEOF_SHORT, shortIndices, GL3.GL_STATIC_DRAW);
+    } else {
+      indexType = GL.GL_UNSIGNED_INT;
+      gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, indexCount * GLBuffers.SIZEOF_INT, indices, GL3.GL_STATIC_DRAW);
+    }
+  }
 
 
 
+  /**
+   * Prepare this object to be drawn many times with a single draw call. Two
+   * per-instance buffers are added to its VAO: one with a 4x4 modelview matrix
+   * for every instance and one with a visibility flag (0 or 1) for every
+   * instance. A matrix occupies 4 consecutive attribute locations in the
+   * shader, starting at transformLocation.
+   *
+   * @param gl                 the GL context within which this object is drawn
+   * @param transformLocation  the location of the per-instance mat4 attribute
+   * @param visibilityLocation the location of the per-instance float
+   *                           attribute
+   * @param maxInstances       the maximum number of instances to be drawn
+   */
+  public void initInstancing(GL3 gl, int transformLocation, int visibilityLocation, int maxInstances) {
+    instanceVbo = IntBuffer.allocate(2);
+    instanceCapacity = maxInstances;
+    gl.glGenBuffers(2, instanceVbo);
 
+    gl.glBindVertexArray(vao.get(0));
 
-		/*
-		 *Allocate the VBO for triangle indices and send it to GPU
-		 */
-    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
-    gl.glBufferData(GL3.GL_ELEMENT_ARRAY_BUFFER, indexBuffer.capacity() * GLBuffers.SIZEOF_INT, indexBuffer, GL3.GL_STATIC_DRAW);
+    //the matrices, one column (vec4) per attribute location
+    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, instanceVbo.get(0));
+    gl.glBufferData(GL3.GL_ARRAY_BUFFER, maxInstances * 16 * GLBuffers.SIZEOF_FLOAT, null, GL3.GL_DYNAMIC_DRAW);
+    for (int i = 0; i < 4; i++) {
+      gl.glVertexAttribPointer(transformLocation + i, 4, GL3.GL_FLOAT, false, 16 * Float.BYTES, 4 * i * Float.BYTES);
+      gl.glEnableVertexAttribArray(transformLocation + i);
+      //advance once per instance instead of once per vertex
+      gl.glVertexAttribDivisor(transformLocation + i, 1);
+    }
 
+    //the visibility flags
+    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, instanceVbo.get(1));
+    gl.glBufferData(GL3.GL_ARRAY_BUFFER, maxInstances * GLBuffers.SIZEOF_FLOAT, null, GL3.GL_DYNAMIC_DRAW);
+    gl.glVertexAttribPointer(visibilityLocation, 1, GL3.GL_FLOAT, false, 0, 0);
+    gl.glEnableVertexAttribArray(visibilityLocation);
+    gl.glVertexAttribDivisor(visibilityLocation, 1);
 
-		/*
-		 *Unbind the VAO to prevent accidental change to all the settings
-		 *so at this point, this VAO has two VBOs and two enabled VertexAttribPointers.
-		 * It is going to remember all of that!
-		 */
     gl.glBindVertexArray(0);
   }
 
+  /**
+   * Upload the modelview matrices of the first count instances, 16 floats per
+   * instance in column-major order, starting at the current position of the
+   * buffer
+   */
+  public void setInstanceTransforms(GL3 gl, FloatBuffer transforms, int count) {
+    if (count > instanceCapacity) {
+      throw new IllegalArgumentException("Too many instances: " + count + ", at most " + instanceCapacity);
+    }
+    bindBuffer(gl, GL3.GL_ARRAY_BUFFER, instanceVbo.get(0));
+    gl.glBufferSubData(GL3.GL_ARRAY_BUFFER, 0, count * 16 * GLBuffers.SIZEOF_FLOAT, transforms);
+  }
+
+  /**
+   * Upload the visibility flags of the first count instances, starting at the
+   * current position of the buffer. An instance is drawn only if its flag is 1.
+   */
+  public void setInstanceVisibility(GL3 gl, FloatBuffer visibility, int count) {
+    if (count > instanceCapacity) {
+      throw new IllegalArgumentException("Too many instances: " + count + ", at most " + instanceCapacity);
+    }
+    bindBuffer(gl, GL3.GL_ARRAY_BUFFER, instanceVbo.get(1));
+    gl.glBufferSubData(GL3.GL_ARRAY_BUFFER, 0, count * GLBuffers.SIZEOF_FLOAT, visibility);
+  }
 
   public void cleanup(GLAutoDrawable gla) {
     GL3 gl = gla.getGL().getGL3();
+    if (arena != null) {
+      //the buffers belong to the arena, see GeometryArena.cleanup
+      return;
+    }
     if (vao.get(0) != 0) {
       //give back the VBO IDs to OpenGL, so that they can be reused
       gl.glDeleteBuffers(2, vbo);
+      if (instanceVbo != null) {
+        gl.glDeleteBuffers(2, instanceVbo);
+      }
       //give back the VAO ID to OpenGL, so that it can be reused
       gl.glDeleteVertexArrays(1, vao);
     }
@@ -393,23 +634,202 @@ public class ObjectInstance {
     GL3 gl = gla.getGL().getGL3();
     //draw the object
 
+    if (arena != null) {
+      //the arena VAO stays bound, so that its other objects can be drawn right after
+      arena.drawRange(gl, primitiveType, indexCount, firstIndex, baseVertex);
+      return;
+    }
+
 
     //1. bind its VAO
-    gl.glBindVertexArray(vao.get(0));
-    gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vbo.get(0));
-    gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
+    bindVertexArray(gl, vao.get(0));
+    bindBuffer(gl, GL3.GL_ARRAY_BUFFER, vbo.get(0));
+    bindBuffer(gl, GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
 
     //2. execute the "superpower" command
     //this effectively reads the index buffer, grabs the vertex data using
     //the indices and sends them to the shader
-    gl.glDrawElements(mesh.getPrimitiveType(), mesh.getPrimitiveCount(), GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
+    gl.glDrawElements(primitiveType, indexCount, indexType, 0);
+    unbindVertexArray(gl);
+  }
+
+  /**
+   * Draw one level of detail of this ObjectInstance. Level 0 is the full mesh.
+   * An object without levels of detail only has level 0.
+   *
+   * @param gla   the context within which this object is to be drawn
+   * @param level the level to draw, between 0 and getLodCount() - 1
+   */
+  public void draw(GLAutoDrawable gla, int level) {
+    if (lodFirstIndex == null) {
+      draw(gla);
+      return;
+    }
+    GL3 gl = gla.getGL().getGL3();
+
+    bindVertexArray(gl, vao.get(0));
+    bindBuffer(gl, GL3.GL_ARRAY_BUFFER, vbo.get(0));
+    bindBuffer(gl, GL3.GL_ELEMENT_ARRAY_BUFFER, vbo.get(1));
+    int indexSize = (indexType == GL.GL_UNSIGNED_SHORT) ? GLBuffers.SIZEOF_SHORT : GLBuffers.SIZEOF_INT;
+    gl.glDrawElements(primitiveType, lodIndexCount[level], indexType, (long) lodFirstIndex[level] * indexSize);
+    unbindVertexArray(gl);
+  }
+
+  /**
+   * Draw this ObjectInstance at the level of detail that suits its size on
+   * screen. See selectLod.
+   *
+   * @param gla                 the context within which this object is to be
+   *                            drawn
+   * @param modelviewProjection the projection times the modelview used to
+   *                            draw this object
+   * @param viewportWidth       the width of the viewport, in pixels
+   * @param viewportHeight      the height of the viewport, in pixels
+   */
+  public void draw(GLAutoDrawable gla, Matrix4fc modelviewProjection, int viewportWidth, int viewportHeight) {
+    draw(gla, selectLod(modelviewProjection, viewportWidth, viewportHeight));
+  }
+
+  /**
+   * Pick the level of detail for the size of this object on screen. The
+   * corners of its bounding box are projected, and the larger side of the
+   * rectangle around them, in pixels, is its size. As the number of triangles
+   * that can be seen grows with the area on screen, the coarsest level that
+   * keeps at least (size / reference size)^2 of the triangles is chosen. If
+   * part of the box is behind the eye, the full mesh is chosen.
+   *
+   * @return the level, 0 for the full mesh
+   */
+  public int selectLod(Matrix4fc modelviewProjection, int viewportWidth, int viewportHeight) {
+    if (lodFirstIndex == null)
+      return 0;
+
+    Vector4f minimum = getMinimumBounds();
+    Vector4f maximum = getMaximumBounds();
+    Vector4f corner = new Vector4f();
+    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < 8; i++) {
+      corner.set(((i & 1) == 0) ? minimum.x : maximum.x,
+              ((i & 2) == 0) ? minimum.y : maximum.y,
+              ((i & 4) == 0) ? minimum.z : maximum.z, 1);
+      modelviewProjection.transform(corner);
+      if (corner.w <= 1e-6f)
+        return 0;
+      minX = java.lang.Math.min(minX, corner.x / corner.w);
+      maxX = java.lang.Math.max(maxX, corner.x / corner.w);
+      minY = java.lang.Math.min(minY, corner.y / corner.w);
+      maxY = java.lang.Math.max(maxY, corner.y / corner.w);
+    }
+
+    //normalized device coordinates span 2 units across the viewport
+    float size = java.lang.Math.max(0.5f * (maxX - minX) * viewportWidth, 0.5f * (maxY - minY) * viewportHeight);
+    float needed = (size / lodReferenceSize) * (size / lodReferenceSize);
+    int level = 0;
+    while ((level + 1 < lodRatios.length) && (lodRatios[level + 1] >= needed)) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * The number of levels of detail, 1 for an object without them
+   */
+  public int getLodCount() {
+    return (lodFirstIndex == null) ? 1 : lodFirstIndex.length;
+  }
+
+  /**
+   * The number of indices drawn for a level of detail
+   */
+  public int getLodIndexCount(int level) {
+    return (lodFirstIndex == null) ? indexCount : lodIndexCount[level];
+  }
+
+  /**
+   * Set the size on screen, in pixels, at and above which this object is drawn
+   * in full detail
+   */
+  public void setLodReferenceSize(float pixels) {
+    lodReferenceSize = pixels;
+  }
+
+  public float getLodReferenceSize() {
+    return lodReferenceSize;
+  }
+
+  /**
+   * Draw the first instanceCount instances of this ObjectInstance with a single
+   * draw call, using the per-instance data uploaded through
+   * setInstanceTransforms and setInstanceVisibility. This assumes that
+   * initInstancing has been called.
+   *
+   * @param gla           the context within which this object is to be drawn
+   * @param instanceCount the number of instances to draw
+   */
+  public void drawInstanced(GLAutoDrawable gla, int instanceCount) {
+    GL3 gl = gla.getGL().getGL3();
+
+    bindVertexArray(gl, vao.get(0));
+    gl.glDrawElementsInstanced(primitiveType, indexCount, indexType, 0, instanceCount);
+    unbindVertexArray(gl);
+  }
+
+  /**
+   * Make all binds needed to draw this object go through the given cache, so
+   * that the ones that would not change anything are skipped. This includes
+   * the final unbinding of the VAO: with a cache, the VAO is left bound, so
+   * drawing the same object again binds nothing at all. Pass null to talk to
+   * OpenGL directly again.
+   */
+  public void setStateCache(GLStateCache stateCache) {
+    this.stateCache = stateCache;
+  }
+
+  public GLStateCache getStateCache() {
+    return stateCache;
+  }
+
+  private void bindVertexArray(GL3 gl, int id) {
+    if (stateCache != null)
+      stateCache.bindVertexArray(gl, id);
+    else
+      gl.glBindVertexArray(id);
+  }
+
+  private void unbindVertexArray(GL3 gl) {
+    //the cache knows which VAO is bound, so the next bind of another one is enough
+    if (stateCache == null)
+      gl.glBindVertexArray(0);
+  }
+
+  private void bindBuffer(GL3 gl, int target, int id) {
+    if (stateCache != null)
+      stateCache.bindBuffer(gl, target, id);
+    else
+      gl.glBindBuffer(target, id);
   }
 
   public PolygonMesh getMesh() {
     return mesh;
   }
 
+  public PackedPolygonMesh getPackedMesh() {
+    return packedMesh;
+  }
+
+  public GeometryArena getArena() {
+    return arena;
+  }
+
+  public int getBaseVertex() {
+    return baseVertex;
+  }
+
+  public int getFirstIndex() {
+    return firstIndex;
+  }
+
 
   /*
    *Set the name of this object
@@ -427,11 +847,11 @@ public class ObjectInstance {
 
 
   public Vector4f getMinimumBounds() {
-    return mesh.getMinimumBounds();
+    return (mesh != null) ? mesh.getMinimumBounds() : new Vector4f(minBounds);
   }
 
   public Vector4f getMaximumBounds() {
-    return mesh.getMaximumBounds();
+    return (mesh != null) ? mesh.getMaximumBounds() : new Vector4f(maxBounds);
   }
 
 }
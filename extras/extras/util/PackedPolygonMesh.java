@@ -0,0 +1,304 @@
+package util;
+
+import org.joml.Vector4f;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A polygon mesh stored as a structure of arrays. Each vertex attribute
+ * (position, normal, ...) is one float array holding a fixed number of floats
+ * per vertex, and the indices are one int array. Nothing is allocated per
+ * vertex, and the arrays are handed out as they are, without copying.
+ *
+ * Otherwise it describes a mesh in the same way as {@link PolygonMesh}: an
+ * indexed list of primitives of a given type and size. Meshes can be converted
+ * in both directions with fromPolygonMesh() and toPolygonMesh().
+ */
+public class PackedPolygonMesh {
+  protected int vertexCount;
+  //attribute name -> floats of all vertices, and the number of floats per vertex
+  protected Map<String, float[]> attributes;
+  protected Map<String, Integer> componentCounts;
+  protected int[] primitives;
+  protected int primitiveType;
+  protected int primitiveSize;
+
+  protected Bounds bounds; //bounding box and sphere, computed when first asked for
+
+  public PackedPolygonMesh(int vertexCount) {
+    this.vertexCount = vertexCount;
+    attributes = new LinkedHashMap<String, float[]>();
+    componentCounts = new LinkedHashMap<String, Integer>();
+    primitives = new int[0];
+    primitiveType = primitiveSize = 0;
+    bounds = null;
+  }
+
+  /**
+   * Copy the vertex attributes and primitives of a PolygonMesh. The number of
+   * floats of each attribute is taken from the first vertex.
+   */
+  public static <K extends IVertexData> PackedPolygonMesh fromPolygonMesh(PolygonMesh<K> mesh) {
+    List<K> vertexData = mesh.getVertexAttributes();
+    PackedPolygonMesh packed = new PackedPolygonMesh(vertexData.size());
+
+    if (vertexData.size() > 0) {
+      VertexLayout layout = vertexData.get(0).getLayout();
+      for (int slot = 0; slot < layout.getAttributeCount(); slot++) {
+        String attribName = layout.getName(slot);
+        if (!vertexData.get(0).hasData(attribName))
+          continue;
+        //every vertex is copied by slot straight into the array
+        int components = layout.getSize(slot);
+        float[] data = new float[components * vertexData.size()];
+        int i = 0;
+        for (K v : vertexData) {
+          v.getData(slot, data, i);
+          i += components;
+        }
+        packed.setAttribute(attribName, components, data);
+      }
+    }
+
+    List<Integer> primitives = mesh.getPrimitives();
+    int[] indices = new int[primitives.size()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = primitives.get(i);
+    }
+    packed.setPrimitives(indices);
+    packed.setPrimitiveType(mesh.getPrimitiveType());
+    packed.setPrimitiveSize(mesh.getPrimitiveSize());
+    return packed;
+  }
+
+  /**
+   * Create a PolygonMesh with the same data, using vertices made by the given
+   * producer. Attributes that the vertex type does not have are left out.
+   */
+  public <K extends IVertexData> PolygonMesh<K> toPolygonMesh(VertexProducer<K> producer) {
+    PolygonMesh<K> mesh = new PolygonMesh<K>();
+    List<K> vertexData = new ArrayList<K>(vertexCount);
+    int i;
+
+    for (i = 0; i < vertexCount; i++) {
+      vertexData.add(producer.produce());
+    }
+    VertexLayout layout = (vertexCount > 0) ? vertexData.get(0).getLayout() : null;
+    for (Map.Entry<String, float[]> e : attributes.entrySet()) {
+      int components = componentCounts.get(e.getKey());
+      if ((vertexCount == 0) || !vertexData.get(0).hasData(e.getKey()))
+        continue;
+      int slot = layout.getSlot(e.getKey());
+      for (i = 0; i < vertexCount; i++) {
+        if (slot >= 0)
+          vertexData.get(i).setData(slot, e.getValue(), i * components, components);
+        else
+          vertexData.get(i).setData(e.getKey(), Arrays.copyOfRange(e.getValue(), i * components, (i + 1) * components));
+      }
+    }
+
+    List<Integer> indices = new ArrayList<Integer>(primitives.length);
+    for (int index : primitives) {
+      indices.add(index);
+    }
+    mesh.setVertexData(vertexData);
+    mesh.setPrimitives(indices);
+    mesh.setPrimitiveType(primitiveType);
+    mesh.setPrimitiveSize(primitiveSize);
+    return mesh;
+  }
+
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * Set the values of an attribute for all vertices. The array is kept, not
+   * copied.
+   *
+   * @param attribName the name of the attribute
+   * @param components the number of floats per vertex
+   * @param data       the values, components floats per vertex
+   */
+  public void setAttribute(String attribName, int components, float[] data) throws IllegalArgumentException {
+    if ((components <= 0) || (data.length != components * vertexCount))
+      throw new IllegalArgumentException("Attribute " + attribName + " needs " + components + " x " + vertexCount
+              + " floats, but has " + data.length);
+    attributes.put(attribName, data);
+    componentCounts.put(attribName, components);
+    if (attribName.equals("position"))
+      bounds = null;
+  }
+
+  /**
+   * Set the values of an attribute for all vertices from the remaining floats
+   * of a buffer, which may be direct
+   */
+  public void setAttribute(String attribName, int components, FloatBuffer data) throws IllegalArgumentException {
+    float[] values = new float[data.remaining()];
+    data.duplicate().get(values);
+    setAttribute(attribName, components, values);
+  }
+
+  public boolean hasAttribute(String attribName) {
+    return attributes.containsKey(attribName);
+  }
+
+  /**
+   * The values of an attribute for all vertices. This is the array held by the
+   * mesh, so changes to it change the mesh. Call invalidateBounds() after
+   * changing positions this way
+   */
+  public float[] getAttribute(String attribName) throws IllegalArgumentException {
+    float[] data = attributes.get(attribName);
+    if (data == null)
+      throw new IllegalArgumentException("No attribute: " + attribName + " found!");
+    return data;
+  }
+
+  /**
+   * The values of an attribute as a buffer over the array held by the mesh
+   */
+  public FloatBuffer getAttributeBuffer(String attribName) throws IllegalArgumentException {
+    return FloatBuffer.wrap(getAttribute(attribName));
+  }
+
+  public int getComponentCount(String attribName) throws IllegalArgumentException {
+    Integer components = componentCounts.get(attribName);
+    if (components == null)
+      throw new IllegalArgumentException("No attribute: " + attribName + " found!");
+    return components;
+  }
+
+  public String[] getAllAttributes() {
+    return attributes.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Set the indices. The array is kept, not copied.
+   */
+  public void setPrimitives(int[] primitives) {
+    this.primitives = primitives;
+  }
+
+  /**
+   * The indices. This is the array held by the mesh, so changes to it change
+   * the mesh
+   */
+  public int[] getPrimitives() {
+    return primitives;
+  }
+
+  public int getPrimitiveCount() {
+    return primitives.length;
+  }
+
+  /**
+   * Set the primitive type, such as GL_TRIANGLES
+   */
+  public void setPrimitiveType(int v) {
+    primitiveType = v;
+  }
+
+  public int getPrimitiveType() {
+    return primitiveType;
+  }
+
+  /**
+   * Sets how many indices make up a primitive.
+   */
+  public void setPrimitiveSize(int s) {
+    primitiveSize = s;
+  }
+
+  public int getPrimitiveSize() {
+    return primitiveSize;
+  }
+
+  /**
+   * Compute the "normal" attribute, 4 floats per vertex, from the positions
+   * using Newell's method. Every polygon counts the same towards the normals of
+   * its vertices.
+   */
+  public void computeNormals() {
+    computeNormals(NormalGenerator.Weighting.UNIFORM);
+  }
+
+  /**
+   * Compute the "normal" attribute, 4 floats per vertex, from the positions,
+   * weighting the polygons around each vertex as given. See
+   * {@link NormalGenerator}.
+   */
+  public void computeNormals(NormalGenerator.Weighting weighting) {
+    if (!hasAttribute("position") || (vertexCount <= 0))
+      return;
+    setAttribute("normal", 4, NormalGenerator.computeNormals(getAttribute("position"), getComponentCount("position"),
+            vertexCount, primitives, primitives.length, primitiveSize, weighting));
+  }
+
+  public Vector4f getMinimumBounds() {
+    return getBounds().getMinimum();
+  }
+
+  public Vector4f getMaximumBounds() {
+    return getBounds().getMaximum();
+  }
+
+  /**
+   * The bounding box and bounding sphere of all vertices. They are computed
+   * once and kept until the positions are set again or invalidateBounds() is
+   * called
+   */
+  public Bounds getBounds() {
+    if (bounds == null)
+      computeBoundingBox();
+    return bounds;
+  }
+
+  /**
+   * The bounds of the vertices used by a range of the primitives, such as one
+   * part of the mesh. These are not kept
+   *
+   * @param firstIndex the first index of the range in the list of primitives
+   * @param indexCount the number of indices in the range
+   */
+  public Bounds getBounds(int firstIndex, int indexCount) {
+    if (!hasAttribute("position"))
+      return Bounds.of(new float[0], 3, 0);
+    return Bounds.of(getAttribute("position"), getComponentCount("position"), primitives, firstIndex, indexCount);
+  }
+
+  /**
+   * Take over the vertices of another mesh, which may have a different number
+   * of vertices, together with indices into them
+   */
+  void replaceVertices(PackedPolygonMesh mesh, int[] primitives) {
+    vertexCount = mesh.vertexCount;
+    attributes = mesh.attributes;
+    componentCounts = mesh.componentCounts;
+    this.primitives = primitives;
+    bounds = null;
+  }
+
+  /**
+   * Forget the bounds, after the positions have been changed in place
+   */
+  public void invalidateBounds() {
+    bounds = null;
+  }
+
+  /**
+   * Compute the bounding box of this mesh, if there is position data
+   */
+  protected void computeBoundingBox() {
+    if (!hasAttribute("position"))
+      bounds = Bounds.of(new float[0], 3, 0);
+    else
+      bounds = Bounds.of(getAttribute("position"), getComponentCount("position"), vertexCount);
+  }
+}
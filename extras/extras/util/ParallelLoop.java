@@ -0,0 +1,51 @@
+package util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A loop over a range of indices whose body runs on the common ForkJoinPool,
+ * split into blocks of at least grain indices. Small ranges, and everything on
+ * a single processor, run on the calling thread. Subclasses implement the body
+ * for one block:
+ *
+ * <pre>
+ *   new ParallelLoop() {
+ *     void run(int from, int to) { ... }
+ *   }.execute(count, grain);
+ * </pre>
+ */
+abstract class ParallelLoop {
+  /**
+   * The body of the loop, for indices from (inclusive) to to (exclusive)
+   */
+  abstract void run(int from, int to);
+
+  void execute(int count, int grain) {
+    if ((count <= grain) || (ForkJoinPool.getCommonPoolParallelism() <= 1)) {
+      run(0, count);
+      return;
+    }
+    ForkJoinPool.commonPool().invoke(new Block(0, count, Math.max(grain, 1)));
+  }
+
+  private class Block extends RecursiveAction {
+    private final int from, to, grain;
+
+    Block(int from, int to, int grain) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        run(from, to);
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Block(from, middle, grain), new Block(middle, to, grain));
+      }
+    }
+  }
+}
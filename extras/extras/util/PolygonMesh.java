@@ -31,14 +31,13 @@ public class PolygonMesh<VertexType extends IVertexData> {
   protected int primitiveType;
   protected int primitiveSize;
 
-  protected Vector4f minBounds, maxBounds; //bounding box
+  protected Bounds bounds; //bounding box and sphere, computed when first asked for
 
   public PolygonMesh() {
     vertexData = new ArrayList<VertexType>();
     primitives = new ArrayList<Integer>();
     primitiveType = primitiveSize = 0;
-    minBounds = new Vector4f();
-    maxBounds = new Vector4f();
+    bounds = null;
   }
 
   /**
@@ -75,11 +74,36 @@ public class PolygonMesh<VertexType extends IVertexData> {
 
 
   public Vector4f getMinimumBounds() {
-    return new Vector4f(minBounds);
+    return getBounds().getMinimum();
   }
 
   public Vector4f getMaximumBounds() {
-    return new Vector4f(maxBounds);
+    return getBounds().getMaximum();
+  }
+
+  /**
+   * The bounding box and bounding sphere of all vertices. They are computed
+   * once and kept until the vertex data is replaced
+   */
+  public Bounds getBounds() {
+    if (bounds == null)
+      computeBoundingBox();
+    return bounds;
+  }
+
+  /**
+   * The bounds of the vertices used by a range of the primitives, such as one
+   * part of the mesh. These are not kept
+   *
+   * @param firstIndex the first index of the range in the list of primitives
+   * @param indexCount the number of indices in the range
+   */
+  public Bounds getBounds(int firstIndex, int indexCount) {
+    int[] indices = new int[indexCount];
+    for (int i = 0; i < indexCount; i++) {
+      indices[i] = primitives.get(firstIndex + i);
+    }
+    return Bounds.of(getPositions(), 3, indices, 0, indexCount);
   }
 
 
@@ -94,7 +118,7 @@ public class PolygonMesh<VertexType extends IVertexData> {
 
   public void setVertexData(List<VertexType> vp) {
     vertexData = new ArrayList<VertexType>(vp);
-    computeBoundingBox();
+    bounds = null;
   }
 
 
@@ -107,72 +131,46 @@ public class PolygonMesh<VertexType extends IVertexData> {
    */
 
   protected void computeBoundingBox() {
-    int j;
-
-    if (vertexData.size() <= 0)
-      return;
-
-    if (!vertexData.get(0).hasData("position")) {
-      return;
-    }
-
-    List<Vector4f> positions = new ArrayList<Vector4f>();
+    float[] positions = getPositions();
+    bounds = Bounds.of(positions, 3, positions.length / 3);
+  }
 
+  /**
+   * The x, y and z of all positions, or nothing if there is no position data
+   */
+  private float[] getPositions() {
+    if ((vertexData.size() <= 0) || (!vertexData.get(0).hasData("position")))
+      return new float[0];
+
+    int slot = vertexData.get(0).getLayout().getSlot("position");
+    float[] data = new float[java.lang.Math.max(vertexData.get(0).getLayout().getSize(slot), 4)];
+    float[] positions = new float[3 * vertexData.size()];
+    int i = 0;
     for (IVertexData v : vertexData) {
-      float[] data = v.getData("position");
-      Vector4f pos = new Vector4f(0, 0, 0, 1);
-      switch (data.length) {
-        case 4:
-          pos.w = data[3];
-        case 3:
-          pos.z = data[2];
-        case 2:
-          pos.y = data[1];
-        case 1:
-          pos.x = data[0];
-      }
-      positions.add(pos);
-    }
-
-    minBounds = new Vector4f(positions.get(0));
-    maxBounds = new Vector4f(positions.get(0));
-
-    for (j = 0; j < positions.size(); j++) {
-      Vector4f p = positions.get(j);
-
-      if (p.x < minBounds.x) {
-        minBounds.x = p.x;
-      }
-
-      if (p.x > maxBounds.x) {
-        maxBounds.x = p.x;
-      }
-
-      if (p.y < minBounds.y) {
-        minBounds.y = p.y;
-      }
-
-      if (p.y > maxBounds.y) {
-        maxBounds.y = p.y;
-      }
-
-      if (p.z < minBounds.z) {
-        minBounds.z = p.z;
-      }
-
-      if (p.z > maxBounds.z) {
-        maxBounds.z = p.z;
-      }
+      int count = v.getData(slot, data, 0);
+      System.arraycopy(data, 0, positions, i, java.lang.Math.min(count, 3));
+      i += 3;
     }
+    return positions;
   }
 
   /**
    * Compute vertex normals in this polygon mesh using Newell's method, if
-   * position data exists
+   * position data exists. Every polygon counts the same towards the normals of
+   * its vertices.
    */
 
   public void computeNormals() {
-    int i, j, k;
+    computeNormals(NormalGenerator.Weighting.UNIFORM);
+  }
+
+  /**
+   * Compute vertex normals in this polygon mesh using Newell's method, if
+   * position data exists, weighting the polygons around each vertex as given.
+   * See {@link NormalGenerator}.
+   */
+  public void computeNormals(NormalGenerator.Weighting weighting) {
+    int i;
 
     if (vertexData.size() <= 0)
       return;
@@ -184,63 +182,19 @@ public class PolygonMesh<VertexType extends IVertexData> {
     if (!vertexData.get(0).hasData("normal"))
       return;
 
-    List<Vector4f> positions = new ArrayList<Vector4f>();
+    float[] positions = getPositions();
 
-    for (IVertexData v : vertexData) {
-      float[] data = v.getData("position");
-      Vector4f pos = new Vector4f(0, 0, 0, 1);
-      switch (data.length) {
-        case 4:
-          pos.w = data[3];
-        case 3:
-          pos.z = data[2];
-        case 2:
-          pos.y = data[1];
-        case 1:
-          pos.x = data[0];
-      }
-      positions.add(pos);
+    int[] indices = new int[primitives.size()];
+    for (i = 0; i < indices.length; i++) {
+      indices[i] = primitives.get(i);
     }
-    List<Vector4f> normals = new ArrayList<Vector4f>();
 
-    for (i = 0; i < positions.size(); i++) {
-      normals.add(new Vector4f(0.0f, 0.0f, 0.0f, 0.0f));
-    }
-
-    for (i = 0; i < primitives.size(); i += primitiveSize) {
-      Vector4f norm = new Vector4f(0.0f, 0.0f, 0.0f, 0.0f);
-
-
-      //compute the normal of this triangle
-      int[] v = new int[primitiveSize];
-
-      for (k = 0; k < primitiveSize; k++) {
-        v[k] = primitives.get(i + k);
-      }
-
-      //the newell's method to calculate normal
+    float[] normals = NormalGenerator.computeNormals(positions, 3, vertexData.size(),
+            indices, indices.length, primitiveSize, weighting);
 
-      for (k = 0; k < primitiveSize; k++) {
-        norm.x += (positions.get(v[k]).y - positions.get(v[(k + 1) % primitiveSize]).y) * (positions.get(v[k]).z + positions.get(v[(k + 1) % primitiveSize]).z);
-        norm.y += (positions.get(v[k]).z - positions.get(v[(k + 1) % primitiveSize]).z) * (positions.get(v[k]).x + positions.get(v[(k + 1) % primitiveSize]).x);
-        norm.z += (positions.get(v[k]).x - positions.get(v[(k + 1) % primitiveSize]).x) * (positions.get(v[k]).y + positions.get(v[(k + 1) % primitiveSize]).y);
-      }
-      norm = norm.normalize();
-
-
-      for (k = 0; k < primitiveSize; k++) {
-        normals.set(v[k], normals.get(v[k]).add(norm));
-      }
-    }
-
-    for (i = 0; i < normals.size(); i++) {
-      normals.set(i, normals.get(i).normalize());
-    }
+    int slot = vertexData.get(0).getLayout().getSlot("normal");
     for (i = 0; i < vertexData.size(); i++) {
-      vertexData.get(i).setData("normal", new float[]{normals.get(i).x,
-              normals.get(i).y,
-              normals.get(i).z,
-              normals.get(i).w});
+      vertexData.get(i).setData(slot, normals, 4 * i, 4);
     }
   }
 }
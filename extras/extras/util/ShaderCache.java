@@ -0,0 +1,307 @@
+package util;
+
+import com.jogamp.opengl.GL3;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A directory of linked shader programs, stored as the driver-specific
+ * binaries of glGetProgramBinary, so that a program does not have to be
+ * compiled and linked again on the next launch. See
+ * {@link ShaderProgram#createProgram(GL3, String, String, ShaderCache)}.
+ *
+ * A program is keyed by a SHA-256 hash of the source of its shaders and of
+ * the vendor, renderer and version strings of the driver, so that editing a
+ * shader or updating the driver simply misses the cache. A driver may still
+ * refuse a binary it wrote itself; the file is then deleted and the program
+ * compiled from source again.
+ *
+ * The format of a file, all little-endian: the magic "SHBN", the format
+ * version, the binary format of the driver and the length of the binary,
+ * followed by the binary itself.
+ *
+ * The cache also keeps the time spent on programs built from source (cold)
+ * and on programs loaded from binaries (warm).
+ */
+public class ShaderCache {
+  public static final int MAGIC = 0x4E424853; //"SHBN"
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+  public static final String EXTENSION = ".progbin";
+
+  private final Path directory;
+  private int coldPrograms, warmPrograms, rejectedBinaries;
+  private long coldNanos, warmNanos;
+
+  /**
+   * @param directory the directory of the cache files. It is created when the
+   *                  first program is stored
+   */
+  public ShaderCache(Path directory) {
+    this.directory = directory;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Read a shader source from the resources of this project in one go,
+   * instead of line by line
+   *
+   * @throws FileNotFoundException if there is no such resource
+   */
+  public static String readSource(String resource) throws IOException {
+    URL url = ShaderCache.class.getClassLoader().getResource(resource);
+    if (url == null)
+      throw new FileNotFoundException("Could not open file " + resource);
+
+    if ("file".equals(url.getProtocol())) {
+      try {
+        return new String(Files.readAllBytes(Paths.get(url.toURI())), StandardCharsets.UTF_8);
+      } catch (URISyntaxException e) {
+        //read it through the stream below
+      }
+    }
+
+    //inside a jar: the stream usually knows its length, so this is one read too
+    URLConnection connection = url.openConnection();
+    int length = connection.getContentLength();
+    ByteBuffer bytes = ByteBuffer.allocate((length > 0) ? length : 4096);
+    InputStream in = connection.getInputStream();
+    try {
+      ReadableByteChannel channel = Channels.newChannel(in);
+      while (channel.read(bytes) >= 0) {
+        if (!bytes.hasRemaining()) {
+          ByteBuffer larger = ByteBuffer.allocate(2 * bytes.capacity());
+          bytes.flip();
+          larger.put(bytes);
+          bytes = larger;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Whether the driver can hand out program binaries at all. Without
+   * OpenGL 4.1 or ARB_get_program_binary, or with no binary format, every
+   * program is compiled from source.
+   */
+  public boolean isSupported(GL3 gl) {
+    if (!gl.isFunctionAvailable("glGetProgramBinary") || !gl.isFunctionAvailable("glProgramBinary"))
+      return false;
+    IntBuffer formats = IntBuffer.allocate(1);
+    gl.glGetIntegerv(GL3.GL_NUM_PROGRAM_BINARY_FORMATS, formats);
+    return formats.get(0) > 0;
+  }
+
+  /**
+   * The key of a program: a SHA-256 hash of the type and source of each of
+   * its shaders, and of the driver
+   */
+  public byte[] key(GL3 gl, int[] types, String[] sources) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+
+    for (int i = 0; i < sources.length; i++) {
+      digest.update(ByteBuffer.allocate(4).putInt(0, types[i]));
+      digest.update(sources[i].getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    int[] driverStrings = {GL3.GL_VENDOR, GL3.GL_RENDERER, GL3.GL_VERSION};
+    for (int name : driverStrings) {
+      digest.update(String.valueOf(gl.glGetString(name)).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Create a program from the binary stored under the given key.
+   *
+   * @return the linked program, or 0 if there is no binary, or the driver
+   * refused it
+   */
+  public int loadProgram(GL3 gl, byte[] key) {
+    Path file = file(key);
+    if (!Files.isRegularFile(file))
+      return 0;
+
+    ByteBuffer binary;
+    int binaryFormat;
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+      try {
+        if ((channel.size() < HEADER_SIZE) || (channel.size() > Integer.MAX_VALUE))
+          throw new IOException("Not a program binary: " + file);
+        //read rather than mapped, so that a refused file can be deleted right away
+        ByteBuffer contents = ByteBuffer.allocateDirect((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        while (contents.hasRemaining() && (channel.read(contents) >= 0)) {
+        }
+        if (contents.hasRemaining() || (contents.getInt(0) != MAGIC) || (contents.getInt(4) != VERSION)
+                || (contents.getInt(12) != channel.size() - HEADER_SIZE))
+          throw new IOException("Not a program binary of this version: " + file);
+        binaryFormat = contents.getInt(8);
+        contents.position(HEADER_SIZE);
+        binary = contents.slice();
+      } finally {
+        channel.close();
+      }
+    } catch (IOException e) {
+      discard(file);
+      return 0;
+    }
+
+    int program = gl.glCreateProgram();
+    gl.glProgramBinary(program, binaryFormat, binary, binary.remaining());
+    IntBuffer linked = IntBuffer.allocate(1);
+    gl.glGetProgramiv(program, GL3.GL_LINK_STATUS, linked);
+    if (linked.get(0) != GL3.GL_TRUE) {
+      //the driver no longer accepts it, e.g. a format it dropped. Clear the
+      //error that glProgramBinary may have raised, and build from source
+      while (gl.glGetError() != GL3.GL_NO_ERROR) {
+      }
+      gl.glDeleteProgram(program);
+      discard(file);
+      rejectedBinaries++;
+      return 0;
+    }
+    return program;
+  }
+
+  /**
+   * Store the binary of a linked program under the given key. The program
+   * should have been linked with GL_PROGRAM_BINARY_RETRIEVABLE_HINT set.
+   *
+   * @return true if the binary was stored, false if the driver gave none or
+   * it could not be written
+   */
+  public boolean storeProgram(GL3 gl, byte[] key, int program) {
+    IntBuffer length = IntBuffer.allocate(1);
+    gl.glGetProgramiv(program, GL3.GL_PROGRAM_BINARY_LENGTH, length);
+    if (length.get(0) <= 0)
+      return false;
+
+    ByteBuffer file = ByteBuffer.allocateDirect(HEADER_SIZE + length.get(0)).order(ByteOrder.LITTLE_ENDIAN);
+    file.position(HEADER_SIZE);
+    ByteBuffer binary = file.slice();
+    IntBuffer binaryFormat = IntBuffer.allocate(1);
+    gl.glGetProgramBinary(program, length.get(0), length, binaryFormat, binary);
+    if (length.get(0) <= 0)
+      return false;
+    file.putInt(0, MAGIC);
+    file.putInt(4, VERSION);
+    file.putInt(8, binaryFormat.get(0));
+    file.putInt(12, length.get(0));
+    file.position(0);
+    file.limit(HEADER_SIZE + length.get(0));
+
+    //write next to it first, so that another instance never reads half a file
+    Path target = file(key);
+    try {
+      Files.createDirectories(directory);
+      Path temporary = Files.createTempFile(directory, "program", ".tmp");
+      try {
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        try {
+          while (file.hasRemaining()) {
+            channel.write(file);
+          }
+        } finally {
+          channel.close();
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Record the time taken by a program compiled and linked from source
+   */
+  public void recordCold(long nanos) {
+    coldPrograms++;
+    coldNanos += nanos;
+  }
+
+  /**
+   * Record the time taken by a program loaded from its binary
+   */
+  public void recordWarm(long nanos) {
+    warmPrograms++;
+    warmNanos += nanos;
+  }
+
+  public int getColdPrograms() {
+    return coldPrograms;
+  }
+
+  public int getWarmPrograms() {
+    return warmPrograms;
+  }
+
+  public int getRejectedBinaries() {
+    return rejectedBinaries;
+  }
+
+  public long getColdNanos() {
+    return coldNanos;
+  }
+
+  public long getWarmNanos() {
+    return warmNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "Shader programs built from source: " + coldPrograms + " in " + coldNanos / 1000000.0 + " ms"
+            + ", loaded from binaries: " + warmPrograms + " in " + warmNanos / 1000000.0 + " ms"
+            + ", binaries rejected: " + rejectedBinaries;
+  }
+
+  private Path file(byte[] key) {
+    StringBuilder name = new StringBuilder(2 * key.length + EXTENSION.length());
+    for (byte b : key) {
+      name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return directory.resolve(name.append(EXTENSION).toString());
+  }
+
+  private static void discard(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      //it will be replaced when the program is stored again
+    }
+  }
+}
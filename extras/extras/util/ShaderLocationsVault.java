@@ -1,25 +1,50 @@
 package util;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * This class represents a table of shader variables and their values. A shader
  * program would put them here, and the rendering code can use them whenever it
  * can
+ *
+ * Names are kept in an open-addressing table of names and primitive int
+ * locations, so a lookup is one hash and a few probes, without boxing. Code
+ * that looks up the same variable every frame should instead resolve it once
+ * with getUniform() or getAttribute(), and keep the handle.
  */
 public class ShaderLocationsVault {
-  private Map<String, Integer> vars;
+  private static final int UNKNOWN = 0, UNIFORM = 1, ATTRIBUTE = 2;
+
+  //open addressing with linear probing, at most half full
+  private String[] names;
+  private int[] locations;
+  private byte[] kinds;
+  private int count;
 
   public ShaderLocationsVault() {
-    vars = new HashMap<String, Integer>();
+    names = new String[16];
+    locations = new int[16];
+    kinds = new byte[16];
+    count = 0;
   }
 
   /**
    * Add a new shader variable and location
    */
   public void add(String var, Integer location) {
-    vars.put(var, location);
+    put(var, location, UNKNOWN);
+  }
+
+  /**
+   * Add a new uniform variable and its location
+   */
+  public void addUniform(String var, int location) {
+    put(var, location, UNIFORM);
+  }
+
+  /**
+   * Add a new vertex attribute and its location
+   */
+  public void addAttribute(String var, int location) {
+    put(var, location, ATTRIBUTE);
   }
 
   /**
@@ -28,10 +53,93 @@ public class ShaderLocationsVault {
    * @param var the shader variable name whose location is being sought
    * @return the location if found, else -1
    */
-  public Integer getLocation(String var) {
-    if (vars.containsKey(var))
-      return vars.get(var);
-    else
-      return -1;
+  public int getLocation(String var) {
+    int slot = find(var);
+    return (names[slot] != null) ? locations[slot] : -1;
+  }
+
+  public boolean contains(String var) {
+    return names[find(var)] != null;
+  }
+
+  /**
+   * The number of shader variables in this table
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Resolve a uniform once, for code that sets it often. A uniform the
+   * program does not have gets location -1, which OpenGL ignores.
+   *
+   * @throws IllegalArgumentException if the name was added as an attribute
+   */
+  public UniformHandle getUniform(String var) throws IllegalArgumentException {
+    int slot = find(var);
+    if (names[slot] == null)
+      return new UniformHandle(var, -1);
+    if (kinds[slot] == ATTRIBUTE)
+      throw new IllegalArgumentException(var + " is a vertex attribute, not a uniform");
+    return new UniformHandle(var, locations[slot]);
+  }
+
+  /**
+   * Resolve a vertex attribute once. An attribute the program does not have
+   * gets location -1.
+   *
+   * @throws IllegalArgumentException if the name was added as a uniform
+   */
+  public AttributeHandle getAttribute(String var) throws IllegalArgumentException {
+    int slot = find(var);
+    if (names[slot] == null)
+      return new AttributeHandle(var, -1);
+    if (kinds[slot] == UNIFORM)
+      throw new IllegalArgumentException(var + " is a uniform, not a vertex attribute");
+    return new AttributeHandle(var, locations[slot]);
+  }
+
+  private void put(String var, int location, int kind) {
+    int slot = find(var);
+    if (names[slot] == null) {
+      if (2 * (count + 1) > names.length) {
+        grow();
+        slot = find(var);
+      }
+      names[slot] = var;
+      count++;
+    }
+    locations[slot] = location;
+    kinds[slot] = (byte) kind;
+  }
+
+  /**
+   * The slot holding the given name, or the empty slot where it would go
+   */
+  private int find(String var) {
+    int mask = names.length - 1;
+    int h = var.hashCode();
+    int slot = (h ^ (h >>> 16)) & mask;
+    while ((names[slot] != null) && !names[slot].equals(var)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    String[] oldNames = names;
+    int[] oldLocations = locations;
+    byte[] oldKinds = kinds;
+    names = new String[2 * oldNames.length];
+    locations = new int[names.length];
+    kinds = new byte[names.length];
+    for (int i = 0; i < oldNames.length; i++) {
+      if (oldNames[i] != null) {
+        int slot = find(oldNames[i]);
+        names[slot] = oldNames[i];
+        locations[slot] = oldLocations[i];
+        kinds[slot] = oldKinds[i];
+      }
+    }
   }
 }
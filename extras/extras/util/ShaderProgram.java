@@ -3,9 +3,9 @@ package util;
 import com.jogamp.opengl.GL3;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.util.Scanner;
 
 /**
  * This class encapsulates in a very basic way, a GLSL shader program Go through
@@ -17,10 +17,22 @@ import java.util.Scanner;
  */
 
 public class ShaderProgram {
+  //GL_COMPLETION_STATUS_KHR of GL_KHR_parallel_shader_compile (and its ARB twin)
+  public static final int GL_COMPLETION_STATUS = 0x91B1;
+
   //the GLSL program id
   private int program;
   private ShaderInfo[] shaders;
   private boolean enabled;
+  private GLStateCache stateCache;
+
+  //a program started by startProgram() and not finished yet
+  private boolean pending, parallelCompile;
+  private ShaderCache pendingCache;
+  private byte[] pendingKey;
+  private long pendingStart;
+  //for isProgramReady(), which is asked every frame until the program is done
+  private IntBuffer completed = IntBuffer.allocate(1);
 
 
   public ShaderProgram() {
@@ -51,6 +63,7 @@ public class ShaderProgram {
    *                       project for portability purposes.
    * @throws FileNotFoundException if one or more files for the shaders cannot
    *                               be found
+   * @throws Exception             if the shaders fail to compile or link
    */
   public void createProgram(GL3 gl, String vertShaderFile, String fragShaderFile) throws FileNotFoundException, Exception {
     releaseShaders(gl);
@@ -58,7 +71,122 @@ public class ShaderProgram {
     shaders[0] = new ShaderInfo(GL3.GL_VERTEX_SHADER, vertShaderFile, -1);
     shaders[1] = new ShaderInfo(GL3.GL_FRAGMENT_SHADER, fragShaderFile, -1);
 
-    program = createShaders(gl);
+    program = createShaders(gl, readSources(), false);
+    if (program == 0)
+      throw failed(vertShaderFile, fragShaderFile);
+  }
+
+  /**
+   * Create a new shader program as above, loading it from the binary in the
+   * given cache if there is one. Otherwise it is compiled and linked from
+   * source, and its binary is stored in the cache for the next time. The
+   * time taken is recorded in the cache either way.
+   *
+   * @param cache the cache of program binaries, or null to always compile
+   * @throws Exception if the shaders fail to compile or link, including
+   *                   after a cached binary was refused
+   */
+  public void createProgram(GL3 gl, String vertShaderFile, String fragShaderFile, ShaderCache cache) throws FileNotFoundException, Exception {
+    if (cache == null) {
+      createProgram(gl, vertShaderFile, fragShaderFile);
+      return;
+    }
+    startProgram(gl, vertShaderFile, ShaderCache.readSource(vertShaderFile),
+            fragShaderFile, ShaderCache.readSource(fragShaderFile), cache);
+    if (!finishProgram(gl))
+      throw failed(vertShaderFile, fragShaderFile);
+  }
+
+  /**
+   * Start creating a shader program from sources that have already been read,
+   * e.g. on another thread, without waiting for the driver to compile and
+   * link it. With GL_KHR_parallel_shader_compile (or the ARB version) the
+   * driver does that on threads of its own, and isProgramReady() tells when
+   * it is done; the driver picks the number of threads, as JOGL does not
+   * expose glMaxShaderCompilerThreadsKHR. Without it, finishProgram() simply
+   * waits for the driver.
+   *
+   * A program found in the cache is ready at once.
+   *
+   * @param gl             the GL context for creating the program
+   * @param vertShaderFile the name of the vertex shader, for error messages
+   * @param vertSource     the source code of the vertex shader
+   * @param fragShaderFile the name of the fragment shader, for error messages
+   * @param fragSource     the source code of the fragment shader
+   * @param cache          the cache of program binaries, or null to always
+   *                       compile
+   */
+  public void startProgram(GL3 gl, String vertShaderFile, String vertSource, String fragShaderFile, String fragSource,
+                           ShaderCache cache) {
+    releaseShaders(gl);
+
+    shaders[0] = new ShaderInfo(GL3.GL_VERTEX_SHADER, vertShaderFile, 0);
+    shaders[1] = new ShaderInfo(GL3.GL_FRAGMENT_SHADER, fragShaderFile, 0);
+    String[] sources = {vertSource, fragSource};
+
+    pendingStart = System.nanoTime();
+    pendingCache = cache;
+    pendingKey = null;
+    if ((cache != null) && cache.isSupported(gl)) {
+      int[] types = new int[shaders.length];
+      for (int i = 0; i < shaders.length; i++) {
+        types[i] = shaders[i].type;
+      }
+      pendingKey = cache.key(gl, types, sources);
+      program = cache.loadProgram(gl, pendingKey);
+      if (program != 0) {
+        cache.recordWarm(System.nanoTime() - pendingStart);
+        pending = false;
+        return;
+      }
+    }
+
+    parallelCompile = hasParallelCompile(gl);
+    program = compileShaders(gl, sources, pendingKey != null);
+    pending = true;
+  }
+
+  /**
+   * Whether the program started by startProgram() can be finished without
+   * waiting for the driver. Always true without parallel shader compilation.
+   */
+  public boolean isProgramReady(GL3 gl) {
+    if (!pending || !parallelCompile)
+      return true;
+    gl.glGetProgramiv(program, GL_COMPLETION_STATUS, completed);
+    return completed.get(0) != 0;
+  }
+
+  /**
+   * Finish the program started by startProgram(), waiting for the driver if
+   * need be: check that it compiled and linked, and store its binary in the
+   * cache
+   *
+   * @return true if the program is ready to be used, false if it failed to
+   * compile or link
+   */
+  public boolean finishProgram(GL3 gl) {
+    if (!pending)
+      return program > 0;
+    pending = false;
+    program = checkShaders(gl, program);
+    if (pendingCache != null) {
+      if ((program != 0) && (pendingKey != null))
+        pendingCache.storeProgram(gl, pendingKey, program);
+      pendingCache.recordCold(System.nanoTime() - pendingStart);
+    }
+    pendingCache = null;
+    pendingKey = null;
+    return program != 0;
+  }
+
+  /**
+   * Whether the driver compiles and links shaders in the background, see
+   * startProgram()
+   */
+  public static boolean hasParallelCompile(GL3 gl) {
+    return gl.isExtensionAvailable("GL_KHR_parallel_shader_compile")
+            || gl.isExtensionAvailable("GL_ARB_parallel_shader_compile");
   }
 
   /**
@@ -82,20 +210,57 @@ public class ShaderProgram {
    * program.
    */
   public void enable(GL3 gl) {
-    gl.glUseProgram(program);
+    if (stateCache != null)
+      stateCache.useProgram(gl, program);
+    else
+      gl.glUseProgram(program);
     enabled = true;
   }
 
   /**
-   * Disable this program.
+   * Disable this program. With a state cache the program is actually left in
+   * use, so that enabling it again costs nothing; the cache issues the switch
+   * once another program is enabled.
    */
   public void disable(GL3 gl) {
-    gl.glUseProgram(0);
+    if (stateCache == null)
+      gl.glUseProgram(0);
     enabled = false;
   }
 
   /**
-   * Returns the table of all shader variables for this shader.
+   * Make enable() and disable() go through the given cache, so that they skip
+   * glUseProgram when it would not change anything. Pass null to talk to
+   * OpenGL directly again.
+   */
+  public void setStateCache(GLStateCache stateCache) {
+    this.stateCache = stateCache;
+  }
+
+  /**
+   * Bind the uniform block of this program with the given name to a uniform
+   * buffer binding point, so that it reads whichever UniformBuffer is attached
+   * to that point.
+   *
+   * @param gl           the GL context for this program
+   * @param blockName    the name of the uniform block in the shader source
+   * @param bindingPoint the uniform buffer binding point
+   * @return true if the program has an active block by that name, false
+   * otherwise
+   */
+  public boolean bindUniformBlock(GL3 gl, String blockName, int bindingPoint) {
+    int index = gl.glGetUniformBlockIndex(program, blockName);
+
+    if (index == GL3.GL_INVALID_INDEX) {
+      return false;
+    }
+    gl.glUniformBlockBinding(program, index, bindingPoint);
+    return true;
+  }
+
+  /**
+   * Returns the table of all shader variables for this shader. The locations
+   * are queried by program, so it does not have to be in use.
    *
    * @return a ShaderLocationsVault object that represents the table of all
    * shader variables
@@ -103,132 +268,104 @@ public class ShaderProgram {
 
   public ShaderLocationsVault getAllShaderVariables(GL3 gl) {
     ShaderLocationsVault vault = new ShaderLocationsVault();
+    //one set of buffers for all the queries, with room for the longest name
     IntBuffer numVars = IntBuffer.allocate(1);
+    IntBuffer length = IntBuffer.allocate(1);
+    IntBuffer size = IntBuffer.allocate(1);
+    IntBuffer type = IntBuffer.allocate(1);
+
+    gl.glGetProgramiv(program, GL3.GL_ACTIVE_UNIFORM_MAX_LENGTH, numVars);
+    int maxLength = numVars.get(0);
+    gl.glGetProgramiv(program, GL3.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, numVars);
+    maxLength = Math.max(Math.max(maxLength, numVars.get(0)), 80);
+    ByteBuffer nameVar = ByteBuffer.allocate(maxLength);
 
     gl.glGetProgramiv(program, GL3.GL_ACTIVE_UNIFORMS, numVars);
     for (int i = 0; i < numVars.get(0); i++) {
-      IntBuffer length = IntBuffer.allocate(1);
-      ByteBuffer nameVar = ByteBuffer.allocate(80);
-      gl.glGetActiveUniformName(program, i, 80, length, nameVar);
+      gl.glGetActiveUniformName(program, i, maxLength, length, nameVar);
       String name = new String(nameVar.array(), 0, length.get(0));
-      int location;
 
-      vault.add(name, getUniformLocation(gl, name));
+      vault.addUniform(name, gl.glGetUniformLocation(program, name));
     }
 
     gl.glGetProgramiv(program, GL3.GL_ACTIVE_ATTRIBUTES, numVars);
     for (int i = 0; i < numVars.get(0); i++) {
-      IntBuffer length = IntBuffer.allocate(1);
-      IntBuffer size = IntBuffer.allocate(1);
-      IntBuffer type = IntBuffer.allocate(1);
-      ByteBuffer nameVar = ByteBuffer.allocate(80);
-      gl.glGetActiveAttrib(program, i, 80, length, size, type, nameVar);
+      gl.glGetActiveAttrib(program, i, maxLength, length, size, type, nameVar);
       String name = new String(nameVar.array(), 0, length.get(0));
 
-      vault.add(name, getAttributeLocation(gl, name));
+      vault.addAttribute(name, gl.glGetAttribLocation(program, name));
     }
     return vault;
 
   }
 
-  private int getUniformLocation(GL3 gl, String name) {
-    boolean enabledStatus = enabled;
-
-    if (!enabledStatus) //if not enabled, enable it
-      enable(gl);
-
-    int id = gl.glGetUniformLocation(program, name);
-
-    if (!enabledStatus) //if it was not enabled, disable it again
-      disable(gl);
-
-    return id;
+  private String[] readSources() throws IOException {
+    String[] sources = new String[shaders.length];
+    for (int i = 0; i < shaders.length; i++) {
+      sources[i] = ShaderCache.readSource(shaders[i].filename);
+    }
+    return sources;
   }
 
-  private int getAttributeLocation(GL3 gl, String name) {
-    boolean enabledStatus = enabled;
-
-    if (!enabledStatus) //if not enabled, enable it
-      enable(gl);
-
-    int id = gl.glGetAttribLocation(program, name);
-
-    if (!enabledStatus) //if it was not enabled, disable it again
-      disable(gl);
-
-    return id;
+  private static Exception failed(String vertShaderFile, String fragShaderFile) {
+    return new Exception("Could not compile and link " + vertShaderFile + " and " + fragShaderFile);
   }
 
-  private int createShaders(GL3 gl) throws FileNotFoundException, Exception {
-    Scanner file;
-    int shaderProgram;
-    IntBuffer linked;
-
-
-    shaderProgram = gl.glCreateProgram();
+  private int createShaders(GL3 gl, String[] sources, boolean retrievable) {
+    return checkShaders(gl, compileShaders(gl, sources, retrievable));
+  }
 
+  /**
+   * Hand the sources to the driver, and ask it to compile and link them.
+   * Nothing here waits for the driver to be done.
+   */
+  private int compileShaders(GL3 gl, String[] sources, boolean retrievable) {
+    int shaderProgram = gl.glCreateProgram();
 
     for (int i = 0; i < shaders.length; i++) {
-      //    try
-      {
-        //file = new Scanner(new FileInputStream(shaders[i].filename));
-        file = new Scanner(getClass().getClassLoader().getResourceAsStream(shaders[i].filename));
-      }
-       /*    catch (FileNotFoundException e)
-            {
-                throw new Exception("Could not open file " + shaders[i].filename);
-            }
-*/
-      IntBuffer compiled = IntBuffer.allocate(1);
-
-
-      String source, line;
-
-      source = "";
-
-      while (file.hasNext()) {
-        line = file.nextLine();
-        source = source + "\n" + line;
-      }
-      file.close();
-
+      shaders[i].shader = gl.glCreateShader(shaders[i].type);
+      gl.glShaderSource(shaders[i].shader, 1, new String[]{sources[i]}, null);
+      gl.glCompileShader(shaders[i].shader);
+      gl.glAttachShader(shaderProgram, shaders[i].shader);
+    }
 
-      //const char *codev = source.c_str();
+    if (retrievable) //so that the driver keeps a binary to hand out
+      gl.glProgramParameteri(shaderProgram, GL3.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL3.GL_TRUE);
+    gl.glLinkProgram(shaderProgram);
+    return shaderProgram;
+  }
 
+  /**
+   * Check that the shaders compiled, printing the log of those that did not,
+   * and that the program linked
+   *
+   * @return the program, or 0 if it cannot be used
+   */
+  private int checkShaders(GL3 gl, int shaderProgram) {
+    IntBuffer compiled = IntBuffer.allocate(1);
+    IntBuffer linked = IntBuffer.allocate(1);
 
-      shaders[i].shader = gl.glCreateShader(shaders[i].type);
-      gl.glShaderSource(shaders[i].shader, 1, new String[]{source}, null);
-      gl.glCompileShader(shaders[i].shader);
+    for (int i = 0; i < shaders.length; i++) {
       gl.glGetShaderiv(shaders[i].shader, GL3.GL_COMPILE_STATUS, compiled);
 
       if (compiled.get(0) != 1) {
-        int infologLen = 0;
-        int charsWritten = 0;
         IntBuffer infoLogLen = IntBuffer.allocate(1);
 
         gl.glGetShaderiv(shaders[i].shader, GL3.GL_INFO_LOG_LENGTH, infoLogLen);
         int size = infoLogLen.get(0);
-        //	printOpenGLError();
         if (size > 0) {
           ByteBuffer infoLog = ByteBuffer.allocate(size);
-          {
-            gl.glGetShaderInfoLog(shaders[i].shader, size, infoLogLen, infoLog);
-            System.err.print(new String(infoLog.array()));
-          }
+          gl.glGetShaderInfoLog(shaders[i].shader, size, infoLogLen, infoLog);
+          System.err.print(shaders[i].filename + ": " + new String(infoLog.array()));
         }
-        releaseShaders(gl);
-
       }
-      gl.glAttachShader(shaderProgram, shaders[i].shader);
     }
 
-    linked = IntBuffer.allocate(1);
-    ;
-    gl.glLinkProgram(shaderProgram);
     gl.glGetProgramiv(shaderProgram, GL3.GL_LINK_STATUS, linked);
 
     if (linked.get(0) != 1) {
-
+      program = shaderProgram;
+      releaseShaders(gl);
       return 0;
     }
 
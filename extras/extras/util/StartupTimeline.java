@@ -0,0 +1,101 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records when each phase of a startup began and ended, and on which thread,
+ * relative to when the timeline was created. Phases may run on several
+ * threads at once, so all methods are synchronized.
+ *
+ * toString() lists the phases in the order they began, one per line.
+ */
+public class StartupTimeline {
+  private final long origin;
+  private final List<Phase> phases;
+
+  public StartupTimeline() {
+    origin = System.nanoTime();
+    phases = new ArrayList<Phase>();
+  }
+
+  /**
+   * Record that the given phase begins now, on the current thread
+   */
+  public synchronized void begin(String phase) {
+    phases.add(new Phase(phase, Thread.currentThread().getName(), System.nanoTime() - origin));
+  }
+
+  /**
+   * Record that the given phase ends now. Ending a phase that has not begun,
+   * or has already ended, does nothing.
+   */
+  public synchronized void end(String phase) {
+    for (int i = phases.size() - 1; i >= 0; i--) {
+      Phase p = phases.get(i);
+      if (p.name.equals(phase) && (p.end < 0)) {
+        p.end = System.nanoTime() - origin;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Record a moment, such as the first frame, as a phase that begins and ends
+   * now
+   */
+  public synchronized void mark(String event) {
+    begin(event);
+    end(event);
+  }
+
+  /**
+   * The time from the creation of the timeline to the end of the given phase,
+   * in nanoseconds, or -1 if it has not ended
+   */
+  public synchronized long getEnd(String phase) {
+    for (Phase p : phases) {
+      if (p.name.equals(phase))
+        return p.end;
+    }
+    return -1;
+  }
+
+  /**
+   * The duration of the given phase in nanoseconds, or -1 if it has not ended
+   */
+  public synchronized long getDuration(String phase) {
+    for (Phase p : phases) {
+      if (p.name.equals(phase))
+        return (p.end < 0) ? -1 : p.end - p.start;
+    }
+    return -1;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder text = new StringBuilder("Startup timeline (ms):");
+    for (Phase p : phases) {
+      text.append(String.format("%n  %-24s %9.3f -> ", p.name, p.start / 1e6));
+      if (p.end < 0)
+        text.append(String.format("%9s", "..."));
+      else
+        text.append(String.format("%9.3f", p.end / 1e6));
+      text.append(" [").append(p.thread).append(']');
+    }
+    return text.toString();
+  }
+
+  private static class Phase {
+    final String name, thread;
+    final long start;
+    long end;
+
+    Phase(String name, String thread, long start) {
+      this.name = name;
+      this.thread = thread;
+      this.start = start;
+      this.end = -1;
+    }
+  }
+}
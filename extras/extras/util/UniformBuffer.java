@@ -0,0 +1,72 @@
+package util;
+
+import com.jogamp.opengl.GL3;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+
+/**
+ * This class represents a uniform buffer object (UBO): a buffer on the GPU that
+ * backs a uniform block of one or more shader programs. The buffer is attached
+ * to a binding point, and a program reads it through any of its uniform blocks
+ * bound to the same point (see ShaderProgram.bindUniformBlock).
+ *
+ * Since a uniform block uses the std140 layout, the data written into it must
+ * follow the std140 alignment rules.
+ */
+public class UniformBuffer {
+  private IntBuffer ubo;
+  private int size;
+  private int bindingPoint;
+
+  /**
+   * Create a uniform buffer of the given size and attach it to a binding point
+   *
+   * @param gl           the GL context within which this buffer is used
+   * @param size         the size of the buffer in bytes
+   * @param bindingPoint the uniform buffer binding point to attach it to
+   */
+  public UniformBuffer(GL3 gl, int size, int bindingPoint) {
+    this.size = size;
+    this.bindingPoint = bindingPoint;
+
+    ubo = IntBuffer.allocate(1);
+    gl.glGenBuffers(1, ubo);
+    gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, ubo.get(0));
+    gl.glBufferData(GL3.GL_UNIFORM_BUFFER, size, null, GL3.GL_DYNAMIC_DRAW);
+    gl.glBindBufferBase(GL3.GL_UNIFORM_BUFFER, bindingPoint, ubo.get(0));
+    gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, 0);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getBindingPoint() {
+    return bindingPoint;
+  }
+
+  /**
+   * Overwrite the contents of this buffer, from its start, with the remaining
+   * contents of the given buffer
+   *
+   * @param gl   the GL context within which this buffer is used
+   * @param data the new contents
+   * @param size the number of bytes to write
+   */
+  public void update(GL3 gl, Buffer data, int size) {
+    if (size > this.size) {
+      throw new IllegalArgumentException("Too much data for the uniform buffer: " + size + " bytes, at most " + this.size);
+    }
+    gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, ubo.get(0));
+    gl.glBufferSubData(GL3.GL_UNIFORM_BUFFER, 0, size, data);
+    gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, 0);
+  }
+
+  public void cleanup(GL3 gl) {
+    if (ubo.get(0) != 0) {
+      gl.glDeleteBuffers(1, ubo);
+      ubo.put(0, 0);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package util;
+
+/**
+ * A uniform of a shader program, resolved once from its name by
+ * {@link ShaderLocationsVault#getUniform}, so that setting it every frame
+ * needs no lookup. The location is -1 if the program has no such uniform,
+ * which OpenGL silently ignores.
+ */
+public final class UniformHandle {
+  private final String name;
+  private final int location;
+
+  UniformHandle(String name, int location) {
+    this.name = name;
+    this.location = location;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLocation() {
+    return location;
+  }
+
+  /**
+   * Whether the program has this uniform
+   */
+  public boolean isActive() {
+    return location >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "uniform " + name + " at " + location;
+  }
+}
@@ -0,0 +1,245 @@
+package util;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes the vertices of a {@link VertexLayout}, so that a mesh of any
+ * combination of attributes needs no vertex class of its own: a
+ * {@link LayoutVertex} keeps all its attributes in one array, and a producer
+ * for it is ready to give to the importers.
+ *
+ * A format also interleaves vertices into one array or buffer of floats, in
+ * the order of its layout, and splits such an array back into vertices.
+ * Vertices of this format, or of an equal one, are copied a whole vertex at a
+ * time. Any other vertex is copied by slot, resolved once by name from the
+ * first vertex; an attribute it does not have is left as in a new vertex.
+ */
+public final class VertexFormat {
+  private final VertexLayout layout;
+  private final float[] defaults;
+  private final VertexProducer<LayoutVertex> producer;
+
+  /**
+   * A format whose attributes start as 0, except the last float of an
+   * attribute of 4, which starts as 1, as for a point or a color
+   */
+  public VertexFormat(VertexLayout layout) {
+    this(layout, homogeneousDefaults(layout));
+  }
+
+  /**
+   * @param defaults the floats of a new vertex, interleaved as in the layout
+   */
+  public VertexFormat(VertexLayout layout, float[] defaults) throws IllegalArgumentException {
+    if (defaults.length != layout.getStride())
+      throw new IllegalArgumentException("Got " + defaults.length + " defaults for a vertex of " + layout.getStride() + " floats");
+    this.layout = layout;
+    this.defaults = defaults.clone();
+    this.producer = new VertexProducer<LayoutVertex>() {
+      @Override
+      public LayoutVertex produce() {
+        return new LayoutVertex(VertexFormat.this);
+      }
+    };
+  }
+
+  public static VertexFormat of(String[] names, int[] sizes) throws IllegalArgumentException {
+    return new VertexFormat(new VertexLayout(names, sizes));
+  }
+
+  public VertexLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * The floats of a new vertex, interleaved as in the layout
+   */
+  public float[] getDefaults() {
+    return defaults.clone();
+  }
+
+  public LayoutVertex create() {
+    return new LayoutVertex(this);
+  }
+
+  /**
+   * A producer of vertices of this format, for the importers
+   */
+  public VertexProducer<LayoutVertex> producer() {
+    return producer;
+  }
+
+  /**
+   * Interleave vertices into an array, getStride() floats per vertex
+   *
+   * @param offset where the first vertex goes in the array
+   */
+  public void interleave(List<? extends IVertexData> vertices, float[] out, int offset) {
+    if (vertices.isEmpty())
+      return;
+    int stride = layout.getStride();
+    int[] slots = sourceSlots(vertices.get(0));
+    float[] scratch = null;
+    for (IVertexData v : vertices) {
+      if (isSameFormat(v)) {
+        System.arraycopy(((LayoutVertex) v).array(), 0, out, offset, stride);
+      } else {
+        if (scratch == null)
+          scratch = new float[scratchSize(vertices.get(0))];
+        copyFrom(v, slots, scratch, out, offset);
+      }
+      offset += stride;
+    }
+  }
+
+  /**
+   * Interleave vertices into a buffer at its position, moving the position
+   * past them
+   */
+  public void interleave(List<? extends IVertexData> vertices, FloatBuffer out) {
+    if (vertices.isEmpty())
+      return;
+    int[] slots = sourceSlots(vertices.get(0));
+    float[] vertex = new float[layout.getStride()];
+    float[] scratch = null;
+    for (IVertexData v : vertices) {
+      if (isSameFormat(v)) {
+        out.put(((LayoutVertex) v).array());
+      } else {
+        if (scratch == null)
+          scratch = new float[scratchSize(vertices.get(0))];
+        copyFrom(v, slots, scratch, vertex, 0);
+        out.put(vertex);
+      }
+    }
+  }
+
+  /**
+   * Interleave vertices into a new array
+   */
+  public float[] interleave(List<? extends IVertexData> vertices) {
+    float[] out = new float[vertices.size() * layout.getStride()];
+    interleave(vertices, out, 0);
+    return out;
+  }
+
+  /**
+   * Split interleaved vertices into new vertices of this format
+   *
+   * @param offset where the first vertex starts in the array
+   * @param count  the number of vertices
+   */
+  public List<LayoutVertex> deinterleave(float[] data, int offset, int count) {
+    int stride = layout.getStride();
+    List<LayoutVertex> vertices = new ArrayList<LayoutVertex>(count);
+    for (int i = 0; i < count; i++) {
+      LayoutVertex v = new LayoutVertex(this);
+      System.arraycopy(data, offset + i * stride, v.array(), 0, stride);
+      vertices.add(v);
+    }
+    return vertices;
+  }
+
+  /**
+   * Split interleaved vertices into existing vertices, one for each vertex
+   * in the list. The attributes of this format that a vertex does not have
+   * are skipped.
+   *
+   * @param offset where the first vertex starts in the array
+   */
+  public void deinterleave(float[] data, int offset, List<? extends IVertexData> vertices) {
+    if (vertices.isEmpty())
+      return;
+    int stride = layout.getStride();
+    int[] slots = sourceSlots(vertices.get(0));
+    for (IVertexData v : vertices) {
+      if (isSameFormat(v)) {
+        System.arraycopy(data, offset, ((LayoutVertex) v).array(), 0, stride);
+      } else {
+        for (int a = 0; a < slots.length; a++) {
+          if (slots[a] >= 0)
+            v.setData(slots[a], data, offset + layout.getOffset(a), layout.getSize(a));
+        }
+      }
+      offset += stride;
+    }
+  }
+
+  public int getStride() {
+    return layout.getStride();
+  }
+
+  @Override
+  public String toString() {
+    return "VertexFormat[" + layout + "]";
+  }
+
+  void copyDefaults(float[] out, int start, int count) {
+    System.arraycopy(defaults, start, out, start, count);
+  }
+
+  /**
+   * Whether a vertex keeps its attributes interleaved exactly as in this
+   * format
+   */
+  private boolean isSameFormat(IVertexData v) {
+    if (!(v instanceof LayoutVertex))
+      return false;
+    VertexLayout other = ((LayoutVertex) v).getLayout();
+    return (other == layout) || other.equals(layout);
+  }
+
+  /**
+   * The slot of each attribute of this format in the layout of a vertex, -1
+   * for those it does not have
+   */
+  private int[] sourceSlots(IVertexData first) {
+    VertexLayout source = first.getLayout();
+    int[] slots = new int[layout.getAttributeCount()];
+    for (int a = 0; a < slots.length; a++) {
+      slots[a] = source.getSlot(layout.getName(a));
+      if ((slots[a] >= 0) && !first.hasData(layout.getName(a)))
+        slots[a] = -1;
+    }
+    return slots;
+  }
+
+  private int scratchSize(IVertexData first) {
+    VertexLayout source = first.getLayout();
+    int size = 4;
+    for (int i = 0; i < source.getAttributeCount(); i++) {
+      size = Math.max(size, source.getSize(i));
+    }
+    for (int i = 0; i < layout.getAttributeCount(); i++) {
+      size = Math.max(size, layout.getSize(i));
+    }
+    return size;
+  }
+
+  /**
+   * Interleave one vertex of another type by slot, taking at most the size
+   * of each attribute and filling the rest from the defaults
+   */
+  private void copyFrom(IVertexData v, int[] slots, float[] scratch, float[] out, int offset) {
+    for (int a = 0; a < slots.length; a++) {
+      int start = layout.getOffset(a), size = layout.getSize(a);
+      int count = 0;
+      if (slots[a] >= 0) {
+        count = Math.min(v.getData(slots[a], scratch, 0), size);
+        System.arraycopy(scratch, 0, out, offset + start, count);
+      }
+      System.arraycopy(defaults, start + count, out, offset + start + count, size - count);
+    }
+  }
+
+  private static float[] homogeneousDefaults(VertexLayout layout) {
+    float[] defaults = new float[layout.getStride()];
+    for (int i = 0; i < layout.getAttributeCount(); i++) {
+      if (layout.getSize(i) == 4)
+        defaults[layout.getOffset(i) + 3] = 1;
+    }
+    return defaults;
+  }
+}
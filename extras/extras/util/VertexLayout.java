@@ -0,0 +1,122 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * The attributes of a vertex type, each in a numbered slot: its name and the
+ * number of floats it has. A slot is resolved once from a name with getSlot(),
+ * after which every vertex of the type can be read and written through the
+ * slot, see {@link IVertexData#getData(int, float[], int)}.
+ *
+ * The layout also gives where each attribute goes when the attributes are
+ * interleaved, in slot order: its offset within a vertex and the size of a
+ * whole vertex, both in floats.
+ */
+public final class VertexLayout {
+  private final String[] names;
+  private final int[] sizes, offsets;
+  private final int stride;
+
+  /**
+   * @param names the attribute names, in slot order
+   * @param sizes the number of floats of each attribute
+   */
+  public VertexLayout(String[] names, int[] sizes) throws IllegalArgumentException {
+    if (names.length != sizes.length)
+      throw new IllegalArgumentException("Got " + names.length + " names but " + sizes.length + " sizes");
+    this.names = names.clone();
+    this.sizes = sizes.clone();
+    offsets = new int[sizes.length];
+    int offset = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      offsets[i] = offset;
+      offset += sizes[i];
+    }
+    stride = offset;
+  }
+
+  /**
+   * The layout of the attributes a vertex has right now, through the string
+   * API: its attributes in the order of getAllAttributes(), with their
+   * current number of floats (0 for those without data)
+   */
+  public static VertexLayout of(IVertexData vertex) {
+    String[] names = vertex.getAllAttributes();
+    int[] sizes = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      sizes[i] = vertex.hasData(names[i]) ? vertex.getData(names[i]).length : 0;
+    }
+    return new VertexLayout(names, sizes);
+  }
+
+  public int getAttributeCount() {
+    return names.length;
+  }
+
+  /**
+   * The slot of the given attribute, or -1 if there is no such attribute
+   */
+  public int getSlot(String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name))
+        return i;
+    }
+    return -1;
+  }
+
+  public boolean hasAttribute(String name) {
+    return getSlot(name) >= 0;
+  }
+
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  /**
+   * The number of floats of the attribute in the given slot
+   */
+  public int getSize(int slot) {
+    return sizes[slot];
+  }
+
+  /**
+   * Where the attribute in the given slot starts within an interleaved
+   * vertex, in floats
+   */
+  public int getOffset(int slot) {
+    return offsets[slot];
+  }
+
+  /**
+   * The number of floats of a whole vertex
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof VertexLayout))
+      return false;
+    VertexLayout other = (VertexLayout) o;
+    return Arrays.equals(names, other.names) && Arrays.equals(sizes, other.sizes);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(names) + Arrays.hashCode(sizes);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("VertexLayout[");
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0)
+        text.append(", ");
+      text.append(i).append(": ").append(names[i]).append(" x").append(sizes[i]);
+    }
+    return text.append(']').toString();
+  }
+}